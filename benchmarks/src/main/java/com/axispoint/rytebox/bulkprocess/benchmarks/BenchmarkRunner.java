@@ -0,0 +1,31 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching the first argument (all of them by default) with the GC profiler, so every result comes
+ * with gc.alloc.rate.norm (bytes allocated per operation) next to its throughput.
+ *
+ * gc.alloc.rate.norm only counts what the benchmark thread allocates. The stream benchmarks do their work on akka's
+ * dispatcher threads, so for those gc.churn.*.norm (collected bytes per operation) is the figure to compare.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackageName() + ".*";
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
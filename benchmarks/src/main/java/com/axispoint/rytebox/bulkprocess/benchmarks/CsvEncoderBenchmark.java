@@ -0,0 +1,106 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.stream.alpakka.csv.javadsl.CsvFormatting;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import io.vertx.mutiny.sqlclient.Row;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.axispoint.rytebox.bulkprocess.common.db.DataRowUtils;
+import com.axispoint.rytebox.bulkprocess.common.db.DqiCsvEncoder;
+
+/**
+ * Rows per second encoded to CSV by alpakka's CsvFormatting (one List of Strings and one ByteString per row) against
+ * DqiCsvEncoder, over pages of synthetic asset rows. Run with the GC profiler (as BenchmarkRunner does) to compare
+ * gc.alloc.rate.norm, the bytes allocated per row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class CsvEncoderBenchmark {
+    static final int ROWS = 10_000;
+    static final int PAGE_SIZE = 500;
+
+    @Param({"0", "10"})
+    public int nestedCount;
+
+    private List<List<Row>> pages;
+    private DataRowUtils.ColumnIndex columns;
+    private DqiCsvEncoder encoder;
+    private ActorSystem system;
+    private Materializer materializer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pages = new ArrayList<>();
+        for (int page = 0; page < ROWS / PAGE_SIZE; page++) {
+            List<Row> rows = new ArrayList<>(PAGE_SIZE);
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                rows.add(SyntheticRows.row(page * PAGE_SIZE + i, nestedCount));
+            }
+            pages.add(rows);
+        }
+        columns = DataRowUtils.of(CsvEncoderBenchmark.class).columns(SyntheticRows.COLUMNS.toArray(new String[0]));
+        encoder = new DqiCsvEncoder(columns);
+        system = ActorSystem.create("CsvEncoderBenchmark");
+        materializer = Materializer.createMaterializer(system);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        system.terminate();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public Long csvFormatting() throws Exception {
+        return Source.from(pages)
+                     .mapConcat(rows -> rows)
+                     .map(this::csvRow)
+                     .via(CsvFormatting.format())
+                     .runWith(Sink.fold(0L, (bytes, chunk) -> bytes + chunk.size()), materializer)
+                     .toCompletableFuture()
+                     .get();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public Long dqiCsvEncoder() throws Exception {
+        return Source.from(pages)
+                     .via(encoder.flow())
+                     .runWith(Sink.fold(0L, (bytes, chunk) -> bytes + chunk.size()), materializer)
+                     .toCompletableFuture()
+                     .get();
+    }
+
+    private List<String> csvRow(Row row) {
+        List<String> fields = new ArrayList<>(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            Object value = row.getValue(columns.of(row, i));
+            fields.add(value == null ? null : value.toString());
+        }
+        return fields;
+    }
+}
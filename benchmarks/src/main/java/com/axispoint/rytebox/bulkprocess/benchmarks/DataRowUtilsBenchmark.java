@@ -0,0 +1,120 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.mutiny.sqlclient.Row;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.axispoint.rytebox.bulkprocess.common.db.DataRowUtils;
+import com.axispoint.rytebox.bulkprocess.common.db.NestedJsonDecoder;
+
+/**
+ * Column index lookups and nested json decoding on synthetic asset rows, against the original implementations in
+ * LegacyDataRowUtils. The lookups are also run from 4 threads at once, which is where the original global lock shows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataRowUtilsBenchmark {
+
+    @Param({"10", "200"})
+    public int nestedCount;
+
+    private Row row;
+    private String fragment;
+    private LegacyDataRowUtils legacy;
+    private DataRowUtils rowUtils;
+    private DataRowUtils.ColumnIndex columns;
+    private NestedJsonDecoder<Right> rights;
+
+    @Setup
+    public void setUp() {
+        row = SyntheticRows.row(42, nestedCount);
+        fragment = SyntheticRows.rightsFragment(42, nestedCount);
+        legacy = new LegacyDataRowUtils(Row.class);
+        rowUtils = DataRowUtils.of(Row.class);
+        columns = rowUtils.columns(SyntheticRows.COLUMNS.toArray(new String[0]));
+        rights = NestedJsonDecoder.of(Right.class);
+    }
+
+    @Benchmark
+    public void legacyIndexOf(Blackhole bh) {
+        for (String column : SyntheticRows.COLUMNS) {
+            bh.consume(legacy.indexOf(row, column));
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void legacyIndexOfContended(Blackhole bh) {
+        legacyIndexOf(bh);
+    }
+
+    @Benchmark
+    public void indexOf(Blackhole bh) {
+        for (String column : SyntheticRows.COLUMNS) {
+            bh.consume(rowUtils.indexOf(row, column));
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void indexOfContended(Blackhole bh) {
+        indexOf(bh);
+    }
+
+    @Benchmark
+    public void columnIndex(Blackhole bh) {
+        for (int i = 0; i < columns.size(); i++) {
+            bh.consume(columns.of(row, i));
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void columnIndexContended(Blackhole bh) {
+        columnIndex(bh);
+    }
+
+    @Benchmark
+    public Optional<List<JsonObject>> legacyNestedJson() {
+        return legacy.extractNestedJson(fragment, o -> o);
+    }
+
+    @Benchmark
+    public Optional<List<JsonObject>> nestedJsonObjects() {
+        return rowUtils.extractNestedJson(fragment, o -> o);
+    }
+
+    @Benchmark
+    public List<Right> nestedJsonTyped() {
+        return rights.decode(fragment);
+    }
+
+    public static class Right {
+        public long rightId;
+        public String territory;
+        public double share;
+        public String startDate;
+        public Map<String, Object> holder;
+    }
+}
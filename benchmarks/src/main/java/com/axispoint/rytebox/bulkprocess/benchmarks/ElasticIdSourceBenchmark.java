@@ -0,0 +1,82 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.axispoint.rytebox.bulkprocess.common.streams.ElasticIdSource;
+
+/**
+ * Ids per second paged out of the stub ES by ElasticIdSource, comparable to ElasticSearchSourceBenchmark with a single
+ * slice and no extra prefetch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ElasticIdSourceBenchmark {
+    static final int TOTAL_DOCS = 50_000;
+
+    @Param({"0", "20"})
+    public long latencyMillis;
+
+    @Param({"1000", "5000"})
+    public int pageSize;
+
+    private StubElasticsearch es;
+    private RestHighLevelClient client;
+    private ActorSystem system;
+    private Materializer materializer;
+    private ObjectNode query;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        es = new StubElasticsearch(TOTAL_DOCS, latencyMillis);
+        client = es.client();
+        system = ActorSystem.create("ElasticIdSourceBenchmark");
+        materializer = Materializer.createMaterializer(system);
+        query = (ObjectNode) new ObjectMapper().readTree("{\"match_all\":{}}");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        es.close();
+        system.terminate();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOTAL_DOCS)
+    public Long ids() throws Exception {
+        ElasticIdSource source = new ElasticIdSource(client.getLowLevelClient(), "stub", query, Optional.empty(), pageSize,
+                                                     Optional.of(ElasticIdSource.DEFAULT_ID_FIELD), Optional.empty());
+
+        return Source.fromGraph(source)
+                     .runWith(Sink.fold(0L, (count, ids) -> count + ids.size()), materializer)
+                     .toCompletableFuture()
+                     .get();
+    }
+}
@@ -0,0 +1,106 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.axispoint.rytebox.bulkprocess.common.streams.ElasticSearchSource;
+import com.axispoint.rytebox.bulkprocess.common.streams.PagingSettings;
+
+/**
+ * Docs per second paged out of the stub ES by ElasticSearchSource, at different response latencies, page sizes, prefetch
+ * depths and slice counts. With latency the source is bound by round trips, which prefetch and slices are there to hide.
+ * Adaptive paging starts at pageSize and grows pages while the stub's took (latency plus MILLIS_PER_DOC for every doc
+ * asked for) stays under TARGET_TOOK.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ElasticSearchSourceBenchmark {
+    static final int TOTAL_DOCS = 50_000;
+    static final double MILLIS_PER_DOC = 0.002;
+    static final Duration TARGET_TOOK = Duration.ofMillis(100);
+
+    @Param({"0", "20"})
+    public long latencyMillis;
+
+    @Param({"1000", "5000"})
+    public int pageSize;
+
+    @Param({"1", "3"})
+    public int prefetchDepth;
+
+    @Param({"1", "4"})
+    public int slices;
+
+    @Param({"false", "true"})
+    public boolean adaptive;
+
+    private StubElasticsearch es;
+    private RestHighLevelClient client;
+    private ActorSystem system;
+    private Materializer materializer;
+    private ObjectNode query;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        es = new StubElasticsearch(TOTAL_DOCS, latencyMillis, MILLIS_PER_DOC);
+        client = es.client();
+        system = ActorSystem.create("ElasticSearchSourceBenchmark");
+        materializer = Materializer.createMaterializer(system);
+        query = (ObjectNode) new ObjectMapper().readTree("{\"match_all\":{}}");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        es.close();
+        system.terminate();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOTAL_DOCS)
+    public Long searchHits() throws Exception {
+        ElasticSearchSource source = new ElasticSearchSource(client, "stub", query,
+                                                             Collections.nCopies(slices, Optional.empty()), pageSize, Optional.empty())
+                .withPaging(paging(adaptive, pageSize, prefetchDepth));
+
+        return Source.fromGraph(source)
+                     .runWith(Sink.fold(0L, (count, hits) -> count + hits.size()), materializer)
+                     .toCompletableFuture()
+                     .get();
+    }
+
+    static PagingSettings paging(boolean adaptive, int pageSize, int prefetchDepth) {
+        PagingSettings paging = adaptive
+                ? PagingSettings.adaptive(pageSize, 100, PagingSettings.MAX_RESULT_WINDOW, TARGET_TOOK)
+                : PagingSettings.fixed(pageSize);
+        return paging.withPrefetchDepth(prefetchDepth);
+    }
+}
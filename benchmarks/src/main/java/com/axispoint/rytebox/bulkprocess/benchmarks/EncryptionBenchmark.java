@@ -0,0 +1,96 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks;
+
+import java.security.GeneralSecurityException;
+import java.security.spec.KeySpec;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.google.common.base.Charsets;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.axispoint.rytebox.bulkprocess.common.config.EncryptionUtil;
+
+/**
+ * Decrypts per second: the key derivation and Cipher creation EncryptionUtil used to do on every call (legacyDecrypt),
+ * against its cached key and per thread Cipher with the cache of decrypted values off (decrypt) and on (cachedDecrypt),
+ * and a batch of BATCH passwords through decryptAll.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class EncryptionBenchmark {
+    static final int BATCH = 16;
+
+    private static final String SECRET_KEY = "benchmark-secret-key";
+    private static final String SALT = "benchmark-salt";
+    private static final String IV = "0123456789abcdef";
+
+    private List<String> encrypted;
+    private EncryptionUtil uncached;
+    private EncryptionUtil cached;
+
+    @Setup(Level.Trial)
+    public void setUp() throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
+        cipher.init(Cipher.ENCRYPT_MODE, deriveKey(), new IvParameterSpec(IV.getBytes(Charsets.UTF_8)));
+        encrypted = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            encrypted.add(Base64.getEncoder().encodeToString(cipher.doFinal(("tenant-password-" + i).getBytes())));
+        }
+        uncached = new EncryptionUtil(SECRET_KEY, SALT, IV, 0, Duration.ZERO);
+        cached = new EncryptionUtil(SECRET_KEY, SALT, IV);
+    }
+
+    @Benchmark
+    public String legacyDecrypt() throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
+        cipher.init(Cipher.DECRYPT_MODE, deriveKey(), new IvParameterSpec(IV.getBytes(Charsets.UTF_8)));
+        return new String(cipher.doFinal(Base64.getDecoder().decode(encrypted.get(0))));
+    }
+
+    @Benchmark
+    public String decrypt() throws GeneralSecurityException {
+        return uncached.decrypt(encrypted.get(0));
+    }
+
+    @Benchmark
+    public String cachedDecrypt() throws GeneralSecurityException {
+        return cached.decrypt(encrypted.get(0));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<String> decryptAll() throws GeneralSecurityException {
+        return uncached.decryptAll(encrypted);
+    }
+
+    private static SecretKeySpec deriveKey() throws GeneralSecurityException {
+        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        KeySpec spec = new PBEKeySpec(SECRET_KEY.toCharArray(), SALT.getBytes(), 65536, 256);
+        SecretKey tmp = factory.generateSecret(spec);
+        return new SecretKeySpec(tmp.getEncoded(), "AES");
+    }
+}
@@ -0,0 +1,87 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.vertx.mutiny.mysqlclient.MySQLPool;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.axispoint.rytebox.bulkprocess.common.db.DataRowUtils;
+import com.axispoint.rytebox.bulkprocess.common.db.DbPoolSettings;
+import com.axispoint.rytebox.bulkprocess.common.db.DqiCsvEncoder;
+import com.axispoint.rytebox.bulkprocess.common.db.MySqlEnrichmentFlow;
+import com.axispoint.rytebox.bulkprocess.common.streams.ElasticSearchSource;
+
+/**
+ * Rows per second through the whole export shape: ids paged from the stub ES, joined to synthetic MySQL rows and
+ * formatted as CSV. Neither ES nor the pool add any latency, so this is the pipeline's own CPU and allocation cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExportPipelineBenchmark {
+    static final int TOTAL_DOCS = 20_000;
+
+    @Param({"10", "100"})
+    public int nestedCount;
+
+    private StubElasticsearch es;
+    private RestHighLevelClient client;
+    private MySQLPool pool;
+    private ActorSystem system;
+    private Materializer materializer;
+    private ObjectNode query;
+    private DqiCsvEncoder encoder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        es = new StubElasticsearch(TOTAL_DOCS, 0);
+        client = es.client();
+        pool = SyntheticRows.pool(nestedCount);
+        system = ActorSystem.create("ExportPipelineBenchmark");
+        materializer = Materializer.createMaterializer(system);
+        query = (ObjectNode) new ObjectMapper().readTree("{\"match_all\":{}}");
+        encoder = new DqiCsvEncoder(DataRowUtils.of(ExportPipelineBenchmark.class).columns(SyntheticRows.COLUMNS.toArray(new String[0])));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        es.close();
+        system.terminate();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOTAL_DOCS)
+    public Long idsToRowsToCsv() throws Exception {
+        return Source.fromGraph(new ElasticSearchSource(client, "stub", query, Optional.empty(), 1000, Optional.empty()))
+                     .via(new MySqlEnrichmentFlow(pool, "select * from asset where id in (:ids)", "id", DbPoolSettings.DEFAULTS.getMaxSize()).flow())
+                     .via(encoder.flow())
+                     .runWith(Sink.fold(0L, (bytes, chunk) -> bytes + chunk.size()), materializer)
+                     .toCompletableFuture()
+                     .get();
+    }
+}
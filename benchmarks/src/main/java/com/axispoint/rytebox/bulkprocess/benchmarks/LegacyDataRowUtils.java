@@ -0,0 +1,53 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks;
+
+import static java.util.stream.Collectors.toList;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import io.vavr.Function2;
+import io.vavr.Function3;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.mutiny.sqlclient.Row;
+import lombok.Synchronized;
+
+/**
+ * The column index and nested json lookups as DataRowUtils originally had them (a global lock over a HashMap, and
+ * nested json wrapped in a string and parsed to a JsonArray tree), kept as the baseline to compare against.
+ */
+public class LegacyDataRowUtils {
+    private static Map<Class, Map<String, Integer>> positionMaps = new HashMap<>();
+
+    private final Function2<Function<String, Integer>, String, Integer> cachedColumnIndex;
+
+    public LegacyDataRowUtils(Class clazz) {
+        cachedColumnIndex = Function3.of(this::getColumnIndex).apply(clazz);
+    }
+
+    public Integer indexOf(Row row, String colName) {
+        return cachedColumnIndex.apply(row::getColumnIndex, colName);
+    }
+
+    @Synchronized
+    public Integer getColumnIndex(Class clazz, Function<String, Integer> sourceColIndex, String name) {
+        return
+                positionMaps.computeIfAbsent(clazz, k -> new HashMap<>())
+                            .computeIfAbsent(name, n -> sourceColIndex.apply(n));
+    }
+
+    public <T> Optional<List<T>> extractNestedJson(String jsonFragment, Function<JsonObject, T> constructor) {
+        return
+                Optional.ofNullable(jsonFragment)
+                .map(s -> "["+s+"]")
+                .map(JsonArray::new)
+                .map(a -> a.stream()
+                           .map(o -> (JsonObject) o)
+                           .map(constructor)
+                           .collect(toList())
+                );
+    }
+}
@@ -0,0 +1,79 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import io.vertx.mutiny.mysqlclient.MySQLPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.axispoint.rytebox.bulkprocess.common.streams.KeyRange;
+import com.axispoint.rytebox.bulkprocess.common.streams.MySqlKeysetSource;
+
+/**
+ * Rows per second paged out of a synthetic keyset pool by MySqlKeysetSource, at different query latencies, page sizes
+ * and numbers of key ranges read at once. With latency the source is bound by round trips, which the ranges are there
+ * to overlap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MySqlKeysetSourceBenchmark {
+    static final int TOTAL_ROWS = 50_000;
+    static final String SQL = "select * from asset where " + MySqlKeysetSource.KEYSET;
+
+    @Param({"0", "5"})
+    public long latencyMillis;
+
+    @Param({"1000", "5000"})
+    public int pageSize;
+
+    @Param({"1", "4"})
+    public int ranges;
+
+    private MySQLPool pool;
+    private ActorSystem system;
+    private Materializer materializer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = SyntheticRows.keysetPool(TOTAL_ROWS, 0, latencyMillis);
+        system = ActorSystem.create("MySqlKeysetSourceBenchmark");
+        materializer = Materializer.createMaterializer(system);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        system.terminate();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOTAL_ROWS)
+    public Long rows() throws Exception {
+        MySqlKeysetSource source = new MySqlKeysetSource(pool, SQL, "id", List.of(), KeyRange.split(1, TOTAL_ROWS, ranges), pageSize);
+
+        return Source.fromGraph(source)
+                     .runWith(Sink.fold(0L, (count, rows) -> count + rows.size()), materializer)
+                     .toCompletableFuture()
+                     .get();
+    }
+}
@@ -0,0 +1,198 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+
+/**
+ * An in-JVM stand-in for Elasticsearch, serving totalDocs documents with ids 1..totalDocs sorted by id to real clients
+ * over HTTP (the high level client can't be stubbed in-process, its methods are final), after latencyMillis per request.
+ * A search also costs millisPerDoc for every doc of the size asked for, which it reports as part of its took, so bigger
+ * pages take longer but pay the per-request latency less often, as with a real cluster.
+ *
+ * Understands just enough of the search API for the sources: size, search_after on the id, slice, docvalue_fields and
+ * opening/searching/closing a point in time, and reports VERSION as its version. For the ShardPlanner it also honors a
+ * range on the id anywhere in the query (wrapper queries included) and answers min, max and percentiles aggregations on
+ * the id.
+ */
+public class StubElasticsearch implements AutoCloseable {
+    public static final String VERSION = "7.17.0";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String PIT_ID = "c3R1Yi1waXQ=";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final long totalDocs;
+    private final long latencyMillis;
+    private final double millisPerDoc;
+
+    public StubElasticsearch(long totalDocs, long latencyMillis) throws IOException {
+        this(totalDocs, latencyMillis, 0);
+    }
+
+    public StubElasticsearch(long totalDocs, long latencyMillis, double millisPerDoc) throws IOException {
+        this.totalDocs = totalDocs;
+        this.latencyMillis = latencyMillis;
+        this.millisPerDoc = millisPerDoc;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public RestHighLevelClient client() {
+        return new RestHighLevelClient(RestClient.builder(new HttpHost("127.0.0.1", server.getAddress().getPort(), "http")));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            byte[] response;
+            long tookNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+            if (path.endsWith("/_pit")) {
+                response = "DELETE".equals(exchange.getRequestMethod())
+                        ? "{\"succeeded\":true,\"num_freed\":1}".getBytes(StandardCharsets.UTF_8)
+                        : ("{\"id\":\"" + PIT_ID + "\"}").getBytes(StandardCharsets.UTF_8);
+            } else if ("/".equals(path)) {
+                response = ("{\"version\":{\"number\":\"" + VERSION + "\"}}").getBytes(StandardCharsets.UTF_8);
+            } else if (path.endsWith("/_search")) {
+                JsonNode request = readBody(exchange.getRequestBody());
+                tookNanos += Math.round(request.path("size").asInt(10) * millisPerDoc * 1_000_000);
+                response = search(request, TimeUnit.NANOSECONDS.toMillis(tookNanos));
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            if (tookNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(tookNanos);
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private JsonNode readBody(InputStream in) throws IOException {
+        byte[] body = in.readAllBytes();
+        return body.length == 0 ? MAPPER.createObjectNode() : MAPPER.readTree(body);
+    }
+
+    private byte[] search(JsonNode request, long tookMillis) throws IOException {
+        int size = request.path("size").asInt(10);
+        long after = request.path("search_after").path(0).asLong(0);
+        int sliceId = request.path("slice").path("id").asInt(0);
+        int sliceMax = request.path("slice").path("max").asInt(1);
+        boolean docValues = request.has("docvalue_fields");
+
+        // ids in [from, to)
+        long from = 1;
+        long to = totalDocs + 1;
+        JsonNode range = findRange(request.path("query"));
+        if (range != null) {
+            from = Math.max(from, range.path("gte").asLong(from));
+            to = Math.min(to, range.path("lt").asLong(to));
+        }
+        long hits = Math.max(0, to - from);
+
+        StringBuilder json = new StringBuilder(128 + size * 96);
+        json.append("{\"took\":").append(tookMillis)
+            .append(",\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0}");
+        if (request.has("pit")) {
+            json.append(",\"pit_id\":\"").append(PIT_ID).append('"');
+        }
+        json.append(",\"hits\":{\"total\":{\"value\":").append(hits).append(",\"relation\":\"eq\"},\"max_score\":null,\"hits\":[");
+
+        int emitted = 0;
+        for (long id = Math.max(after + 1, from); id < to && emitted < size; id++) {
+            if (id % sliceMax != sliceId) {
+                continue;
+            }
+            if (emitted++ > 0) {
+                json.append(',');
+            }
+            json.append("{\"_index\":\"stub\",\"_type\":\"_doc\",\"_id\":\"").append(id).append("\",\"_score\":null");
+            if (docValues) {
+                json.append(",\"fields\":{\"id\":[").append(id).append("]}");
+            }
+            json.append(",\"sort\":[").append(id).append("]}");
+        }
+        json.append("]}");
+        if (request.has("aggregations")) {
+            appendAggregations(json, request.get("aggregations"), from, to);
+        }
+        json.append('}');
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * the ids are consecutive, so the min, max and percentiles of those in [from, to) are a matter of arithmetic. Names
+     * are prefixed with their type as the client asks for (typed_keys) to parse them.
+     */
+    private void appendAggregations(StringBuilder json, JsonNode aggregations, long from, long to) {
+        StringJoiner results = new StringJoiner(",", ",\"aggregations\":{", "}");
+        aggregations.fields().forEachRemaining(aggregation -> {
+            String name = aggregation.getKey();
+            JsonNode definition = aggregation.getValue();
+            if (definition.has("min")) {
+                results.add("\"min#" + name + "\":{\"value\":" + (to > from ? (double) from : null) + "}");
+            } else if (definition.has("max")) {
+                results.add("\"max#" + name + "\":{\"value\":" + (to > from ? (double) (to - 1) : null) + "}");
+            } else if (definition.has("percentiles")) {
+                StringJoiner values = new StringJoiner(",", "\"tdigest_percentiles#" + name + "\":{\"values\":{", "}}");
+                for (JsonNode percent : definition.path("percentiles").path("percents")) {
+                    values.add("\"" + percent.asDouble() + "\":" + (to > from ? from + percent.asDouble() / 100 * (to - 1 - from) : null));
+                }
+                results.add(values.toString());
+            }
+        });
+        json.append(results);
+    }
+
+    /**
+     * the bounds of the first range on the id in the query, decoding wrapper queries along the way
+     */
+    private JsonNode findRange(JsonNode query) throws IOException {
+        if (query.path("range").has("id")) {
+            return query.get("range").get("id");
+        }
+        if (query.has("wrapper")) {
+            return findRange(MAPPER.readTree(Base64.getDecoder().decode(query.get("wrapper").path("query").asText())));
+        }
+        for (JsonNode child : query) {
+            JsonNode range = findRange(child);
+            if (range != null) {
+                return range;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,209 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.mutiny.mysqlclient.MySQLPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.sqlclient.PreparedQuery;
+import io.vertx.sqlclient.RowIterator;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.Tuple;
+
+/**
+ * Rows shaped like a DQI asset row (scalar columns plus the JSON_OBJECT concats of its nested rows) without a database.
+ *
+ * The vert.x sql client types are interfaces, so rows, row sets and pools that answer any id IN (...) query instantly
+ * or keyset queries over a range of ids are dynamic proxies wrapped in the same mutiny types the real client hands out.
+ */
+public final class SyntheticRows {
+    public static final List<String> COLUMNS = List.of("id", "title", "isrc", "duration", "release_date", "updated_at", "rights", "contributors");
+
+    private static final Pattern LIMIT = Pattern.compile("limit (\\d+)");
+
+    private SyntheticRows() {
+    }
+
+    public static Row row(long id, int nestedCount) {
+        return Row.newInstance(rowDelegate(id, nestedCount));
+    }
+
+    /**
+     * nested rights as maria concats them: comma separated objects, no enclosing array
+     */
+    public static String rightsFragment(long id, int count) {
+        StringBuilder json = new StringBuilder(count * 160);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"rightId\":").append(id * 1000 + i)
+                .append(",\"territory\":\"").append(i % 2 == 0 ? "US" : "GB")
+                .append("\",\"share\":").append(100.0 / count)
+                .append(",\"startDate\":\"2020-01-").append(String.format("%02d", i % 28 + 1))
+                .append("\",\"holder\":{\"id\":").append(i)
+                .append(",\"name\":\"Rights Holder ").append(i).append("\"}}");
+        }
+        return json.toString();
+    }
+
+    /**
+     * a pool answering every prepared query with one row per distinct id in its parameters
+     */
+    public static MySQLPool pool(int nestedCount) {
+        io.vertx.mysqlclient.MySQLPool delegate = proxy(io.vertx.mysqlclient.MySQLPool.class, (method, args) -> {
+            if ("preparedQuery".equals(method.getName())) {
+                return preparedQuery(nestedCount);
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+        return MySQLPool.newInstance(delegate);
+    }
+
+    /**
+     * a pool answering keyset queries as MySqlKeysetSource runs them (with no parameters after the keyset's) over the ids
+     * 1..totalRows: the last two parameters bound the ids and the page size is the statement's limit. Each page is
+     * answered after latencyMillis, off the calling thread as the real client would.
+     */
+    public static MySQLPool keysetPool(long totalRows, int nestedCount, long latencyMillis) {
+        Executor responder = CompletableFuture.delayedExecutor(latencyMillis, TimeUnit.MILLISECONDS);
+        io.vertx.mysqlclient.MySQLPool delegate = proxy(io.vertx.mysqlclient.MySQLPool.class, (method, args) -> {
+            if ("preparedQuery".equals(method.getName())) {
+                Matcher limit = LIMIT.matcher((String) args[0]);
+                if (!limit.find()) {
+                    throw new IllegalArgumentException("not a keyset query: " + args[0]);
+                }
+                return keysetQuery(totalRows, nestedCount, Integer.parseInt(limit.group(1)), responder);
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+        return MySQLPool.newInstance(delegate);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PreparedQuery<RowSet<io.vertx.sqlclient.Row>> keysetQuery(long totalRows, int nestedCount, int limit, Executor responder) {
+        return proxy(PreparedQuery.class, (method, args) -> {
+            if ("execute".equals(method.getName()) && args != null && args.length == 2) {
+                Tuple params = (Tuple) args[0];
+                long after = params.getLong(params.size() - 2);
+                long upTo = Math.min(totalRows, params.getLong(params.size() - 1));
+                List<io.vertx.sqlclient.Row> rows = new ArrayList<>(limit);
+                for (long id = Math.max(after, 0) + 1; id <= upTo && rows.size() < limit; id++) {
+                    rows.add(rowDelegate(id, nestedCount));
+                }
+                responder.execute(() -> ((Handler<AsyncResult<RowSet<io.vertx.sqlclient.Row>>>) args[1]).handle(Future.succeededFuture(rowSet(rows))));
+                return null;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PreparedQuery<RowSet<io.vertx.sqlclient.Row>> preparedQuery(int nestedCount) {
+        return proxy(PreparedQuery.class, (method, args) -> {
+            if ("execute".equals(method.getName()) && args != null && args.length == 2) {
+                Tuple params = (Tuple) args[0];
+                Set<Long> ids = new LinkedHashSet<>();
+                for (int i = 0; i < params.size(); i++) {
+                    ids.add(Long.valueOf(String.valueOf(params.getValue(i))));
+                }
+                List<io.vertx.sqlclient.Row> rows = new ArrayList<>(ids.size());
+                ids.forEach(id -> rows.add(rowDelegate(id, nestedCount)));
+                ((Handler<AsyncResult<RowSet<io.vertx.sqlclient.Row>>>) args[1]).handle(Future.succeededFuture(rowSet(rows)));
+                return null;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RowSet<io.vertx.sqlclient.Row> rowSet(List<io.vertx.sqlclient.Row> rows) {
+        return proxy(RowSet.class, (method, args) -> {
+            switch (method.getName()) {
+                case "iterator":
+                    Iterator<io.vertx.sqlclient.Row> iterator = rows.iterator();
+                    return proxy(RowIterator.class, (m, a) -> {
+                        switch (m.getName()) {
+                            case "hasNext":
+                                return iterator.hasNext();
+                            case "next":
+                                return iterator.next();
+                            default:
+                                throw new UnsupportedOperationException(m.getName());
+                        }
+                    });
+                case "size":
+                case "rowCount":
+                    return rows.size();
+                case "columnsNames":
+                    return COLUMNS;
+                case "next":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static io.vertx.sqlclient.Row rowDelegate(long id, int nestedCount) {
+        Object[] values = {id,
+                           "Title " + id,
+                           "USRC1" + id,
+                           (int) (id % 600),
+                           LocalDate.of(1990 + (int) (id % 30), 1 + (int) (id % 12), 1 + (int) (id % 28)),
+                           LocalDateTime.of(2020, 6, 1, 12, 0).plusSeconds(id * 7).plusNanos(id % 3 * 1_000_000),
+                           rightsFragment(id, nestedCount),
+                           null};
+        return proxy(io.vertx.sqlclient.Row.class, (method, args) -> {
+            String name = method.getName();
+            if ("getColumnIndex".equals(name)) {
+                return COLUMNS.indexOf((String) args[0]);
+            }
+            if ("getColumnName".equals(name)) {
+                return COLUMNS.get((Integer) args[0]);
+            }
+            if ("size".equals(name)) {
+                return values.length;
+            }
+            if (name.startsWith("get") && args != null && args.length == 1) {
+                return args[0] instanceof Integer ? values[(Integer) args[0]] : values[COLUMNS.indexOf((String) args[0])];
+            }
+            if ("toString".equals(name)) {
+                return "SyntheticRow" + id;
+            }
+            if ("hashCode".equals(name)) {
+                return Long.hashCode(id);
+            }
+            if ("equals".equals(name)) {
+                return false;
+            }
+            throw new UnsupportedOperationException(name);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Invocation invocation) {
+        return (T) Proxy.newProxyInstance(SyntheticRows.class.getClassLoader(), new Class<?>[]{type},
+                                          (p, method, args) -> invocation.invoke(method, args));
+    }
+
+    @FunctionalInterface
+    private interface Invocation {
+        Object invoke(Method method, Object[] args) throws Throwable;
+    }
+}
@@ -0,0 +1,72 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import akka.Done;
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.axispoint.rytebox.bulkprocess.common.streams.TimeBoundFlow;
+
+/**
+ * The per-element cost of TimeBoundFlow, against a stream of the same length through a plain map stage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeBoundFlowBenchmark {
+    static final int ELEMENTS = 100_000;
+
+    private ActorSystem system;
+    private Materializer materializer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        system = ActorSystem.create("TimeBoundFlowBenchmark");
+        materializer = Materializer.createMaterializer(system);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        system.terminate();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public Done baseline() throws Exception {
+        return Source.range(1, ELEMENTS)
+                     .map(i -> i)
+                     .runWith(Sink.ignore(), materializer)
+                     .toCompletableFuture()
+                     .get();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public Done timeBound() throws Exception {
+        return Source.range(1, ELEMENTS)
+                     .via(new TimeBoundFlow<>(() -> Integer.MAX_VALUE, Duration.ofSeconds(30)))
+                     .runWith(Sink.ignore(), materializer)
+                     .toCompletableFuture()
+                     .get();
+    }
+}
@@ -0,0 +1,96 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks.emulator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The Lambda context of one emulated invocation, counting its remaining time down from the (compressed) timeout.
+ */
+@Slf4j
+class EmulatedContext implements Context {
+    private final String functionName;
+    private final String requestId = UUID.randomUUID().toString();
+    private final long deadlineNanos;
+    private final int memoryLimitMb;
+
+    EmulatedContext(String functionName, EmulatorSettings settings) {
+        this.functionName = functionName;
+        this.deadlineNanos = System.nanoTime() + settings.getEffectiveTimeout().toNanos();
+        this.memoryLimitMb = settings.getMemoryLimitMb();
+    }
+
+    long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    @Override
+    public int getRemainingTimeInMillis() {
+        return (int) Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000);
+    }
+
+    @Override
+    public String getAwsRequestId() {
+        return requestId;
+    }
+
+    @Override
+    public String getLogGroupName() {
+        return "/aws/lambda/" + functionName;
+    }
+
+    @Override
+    public String getLogStreamName() {
+        return "emulator/" + requestId;
+    }
+
+    @Override
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    @Override
+    public String getFunctionVersion() {
+        return "$LATEST";
+    }
+
+    @Override
+    public String getInvokedFunctionArn() {
+        return "arn:aws:lambda:local:000000000000:function:" + functionName + ":$LATEST";
+    }
+
+    @Override
+    public CognitoIdentity getIdentity() {
+        return null;
+    }
+
+    @Override
+    public ClientContext getClientContext() {
+        return null;
+    }
+
+    @Override
+    public int getMemoryLimitInMB() {
+        return memoryLimitMb;
+    }
+
+    @Override
+    public LambdaLogger getLogger() {
+        return new LambdaLogger() {
+            @Override
+            public void log(String message) {
+                log.info("[{}] {}", functionName, message);
+            }
+
+            @Override
+            public void log(byte[] message) {
+                log(new String(message, StandardCharsets.UTF_8));
+            }
+        };
+    }
+}
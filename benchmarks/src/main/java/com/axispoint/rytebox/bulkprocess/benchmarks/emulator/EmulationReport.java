@@ -0,0 +1,71 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks.emulator;
+
+import java.time.Duration;
+import java.util.List;
+
+import lombok.Value;
+
+/**
+ * What a LambdaLoopEmulator run did. wallTime covers the whole loop including cold start penalties and the payload
+ * round trips, so docsPerSecond is the end to end rate the state machine would see (less the real Lambda's invoke
+ * overhead).
+ *
+ * failure is null when the process completed, otherwise the Step Functions error the run failed with (e.g.
+ * States.Timeout), as well as when it was stopped at maxIterations.
+ */
+@Value
+public class EmulationReport {
+    private String processId;
+    private Duration wallTime;
+    private int iterations;
+    private int coldStarts;
+    private long docs;
+    private long peakHeapBytes;
+    private String failure;
+    private List<Invocation> invocations;
+
+    public double getDocsPerSecond() {
+        return wallTime.isZero() ? 0 : docs * 1000.0 / wallTime.toMillis();
+    }
+
+    public boolean isComplete() {
+        return failure == null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("process %s %s after %d iterations (%d cold) in %.1fs: %d docs, %.0f docs/s, peak heap %dMB%n",
+                                    processId,
+                                    isComplete() ? "completed" : "failed with " + failure,
+                                    iterations,
+                                    coldStarts,
+                                    wallTime.toMillis() / 1000.0,
+                                    docs,
+                                    getDocsPerSecond(),
+                                    peakHeapBytes / (1024 * 1024)));
+        for (Invocation invocation : invocations) {
+            report.append(String.format("  #%-4d %s %7dms %9d docs %7dms left %6dKB payload %5dMB heap%n",
+                                        invocation.getIteration(),
+                                        invocation.isColdStart() ? "cold" : "warm",
+                                        invocation.getDuration().toMillis(),
+                                        invocation.getDocs(),
+                                        invocation.getRemainingMillis(),
+                                        invocation.getPayloadBytes() / 1024,
+                                        invocation.getPeakHeapBytes() / (1024 * 1024)));
+        }
+        return report.toString();
+    }
+
+    @Value
+    public static class Invocation {
+        private int iteration;
+        private boolean coldStart;
+        private Duration duration;
+        private long docs;
+        // the emulated time the handler had left when it returned
+        private long remainingMillis;
+        private long payloadBytes;
+        private long peakHeapBytes;
+    }
+}
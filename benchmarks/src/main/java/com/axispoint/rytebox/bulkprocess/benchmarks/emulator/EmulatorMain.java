@@ -0,0 +1,79 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks.emulator;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.vertx.mutiny.mysqlclient.MySQLPool;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import com.axispoint.rytebox.bulkprocess.benchmarks.StubElasticsearch;
+import com.axispoint.rytebox.bulkprocess.benchmarks.SyntheticRows;
+import com.axispoint.rytebox.bulkprocess.common.dto.Compression;
+import com.axispoint.rytebox.bulkprocess.common.dto.DqiInput;
+import com.axispoint.rytebox.bulkprocess.common.streams.S3StreamUtils;
+
+/**
+ * Runs the SampleExportHandler through the emulated state machine against the stub ES, synthetic MySQL rows and an
+ * S3 in a temp directory, then prints the report:
+ *
+ *     java -Xmx2g -cp benchmarks/target/benchmarks.jar \
+ *         com.axispoint.rytebox.bulkprocess.benchmarks.emulator.EmulatorMain [docs] [clockCompression] [esLatencyMillis] [nestedCount] [coldStartEvery] [compression]
+ *
+ * which defaults to 1,000,000 docs with the clock compressed 60 times (15s invocations), no ES latency, 10 nested rows
+ * per asset, a cold start every 10 invocations and uncompressed output (or NONE, GZIP or ZSTD).
+ */
+public class EmulatorMain {
+    // the 30s a real export keeps back for flushing its upload and completing the iteration
+    static final Duration FINALIZATION_WINDOW = Duration.ofSeconds(30);
+    static final String BUCKET = "bulkdata.local.rytebox.net";
+
+    public static void main(String[] args) throws Exception {
+        long docs = arg(args, 0, 1_000_000);
+        double clockCompression = args.length > 1 ? Double.parseDouble(args[1]) : 60;
+        long esLatencyMillis = arg(args, 2, 0);
+        int nestedCount = (int) arg(args, 3, 10);
+        int coldStartEvery = (int) arg(args, 4, 10);
+        Compression compression = args.length > 5 ? Compression.valueOf(args[5]) : Compression.NONE;
+
+        EmulatorSettings settings = EmulatorSettings.DEFAULTS
+                .withClockCompression(clockCompression)
+                .withColdStarts(coldStartEvery, Duration.ofMillis(500));
+        Duration finalizationWindow = Duration.ofNanos((long) (FINALIZATION_WINDOW.toNanos() / clockCompression));
+
+        ActorSystem system = ActorSystem.create("EmulatorMain");
+        EmulationReport report;
+        try (StubElasticsearch es = new StubElasticsearch(docs, esLatencyMillis);
+             RestHighLevelClient esClient = es.client();
+             LocalS3 s3 = LocalS3.temporary()) {
+            Materializer materializer = Materializer.createMaterializer(system);
+            MySQLPool pool = SyntheticRows.pool(nestedCount);
+            S3StreamUtils s3StreamUtils = new S3StreamUtils(s3, materializer);
+
+            LambdaLoopEmulator<DqiInput> emulator = new LambdaLoopEmulator<>(
+                    () -> new SampleExportHandler(esClient, pool, s3StreamUtils, materializer, finalizationWindow),
+                    DqiInput.class,
+                    SampleExportHandler::docsOf,
+                    settings);
+
+            ObjectNode query = (ObjectNode) new ObjectMapper().readTree("{\"match_all\":{}}");
+            DqiInput input = DqiInput.of(BUCKET, UUID.randomUUID().toString(), "stub", query, Map.of());
+            input.setCompression(compression);
+            report = emulator.run(input);
+
+            System.out.print(report);
+            System.out.printf("wrote %dMB to S3%n", s3.totalBytes() / (1024 * 1024));
+        } finally {
+            system.terminate();
+        }
+        System.exit(report.isComplete() ? 0 : 1);
+    }
+
+    static long arg(String[] args, int index, long orElse) {
+        return args.length > index ? Long.parseLong(args[index]) : orElse;
+    }
+}
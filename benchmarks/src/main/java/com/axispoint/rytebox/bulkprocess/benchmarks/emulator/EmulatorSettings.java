@@ -0,0 +1,64 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks.emulator;
+
+import java.time.Duration;
+
+import lombok.Value;
+
+/**
+ * How the LambdaLoopEmulator runs each invocation.
+ *
+ * timeout is the Lambda's configured timeout (900s in rytebox-lambdas.cfn.yml) and clockCompression how many times
+ * faster than that the emulated clock runs out: with the default of 1 an invocation gets the full 900s, with 60 it gets
+ * 15s. Throughput is still real, so a compressed run goes through many more iterations to export the same data, which
+ * is what exercises the resume path.
+ *
+ * memoryLimitMb is the Lambda's MemorySize. The JVM can't be capped from inside itself, so run the emulator with
+ * -Xmx at or below the limit for the cap to bite; the emulator warns when it isn't.
+ *
+ * A cold start (a new handler instance, as if the Lambda had been scaled in and out again) happens on the first
+ * invocation and then every coldStartEvery invocations, 0 meaning never again. coldStartPenalty is slept before a
+ * cold invocation to stand in for the runtime's init time.
+ */
+@Value
+public class EmulatorSettings {
+    public static final EmulatorSettings DEFAULTS = new EmulatorSettings(Duration.ofSeconds(900), 1, 2048, 0, Duration.ZERO, 10_000);
+
+    private Duration timeout;
+    private double clockCompression;
+    private int memoryLimitMb;
+    private int coldStartEvery;
+    private Duration coldStartPenalty;
+    private int maxIterations;
+
+    public EmulatorSettings withClockCompression(double clockCompression) {
+        return new EmulatorSettings(timeout, clockCompression, memoryLimitMb, coldStartEvery, coldStartPenalty, maxIterations);
+    }
+
+    public EmulatorSettings withMemoryLimitMb(int memoryLimitMb) {
+        return new EmulatorSettings(timeout, clockCompression, memoryLimitMb, coldStartEvery, coldStartPenalty, maxIterations);
+    }
+
+    public EmulatorSettings withColdStarts(int coldStartEvery, Duration coldStartPenalty) {
+        return new EmulatorSettings(timeout, clockCompression, memoryLimitMb, coldStartEvery, coldStartPenalty, maxIterations);
+    }
+
+    public EmulatorSettings withMaxIterations(int maxIterations) {
+        return new EmulatorSettings(timeout, clockCompression, memoryLimitMb, coldStartEvery, coldStartPenalty, maxIterations);
+    }
+
+    /**
+     * the real time an invocation is allowed once the clock is compressed
+     */
+    public Duration getEffectiveTimeout() {
+        return Duration.ofNanos((long) (timeout.toNanos() / clockCompression));
+    }
+
+    void validate() {
+        if (clockCompression < 1) {
+            throw new IllegalArgumentException("clockCompression (" + clockCompression + ") must be at least 1");
+        }
+        if (maxIterations <= 0) {
+            throw new IllegalArgumentException("maxIterations (" + maxIterations + ") must be at least 1");
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks.emulator;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import com.axispoint.rytebox.bulkprocess.common.dto.Reentrant;
+import com.axispoint.rytebox.bulkprocess.common.runtime.ContainerRuntime;
+
+/**
+ * Replays the BulkProcessStateMachine in cloudformation/rytebox-lambdas.cfn.yml in-process:
+ *
+ *  - "Create Process In DynamoDB" starts the process in a ProcessTable, failing if the process id was used before, and
+ *    puts the result under $.dynamo
+ *  - "Invoke Lambda function" passes the whole state as the payload and replaces the state with the handler's output
+ *  - "Is Complete" loops back while $.done is false
+ *  - "Complete Process In DynamoDB" completes the process
+ *
+ * Every payload goes through JSON both ways, as it would between the state machine and the Lambda, so whatever the
+ * handler forgets to serialize is lost here too and oversized payloads fail with States.DataLimitExceeded.
+ *
+ * Invocations run on their own thread against an EmulatedContext. One that overruns its timeout is abandoned and fails
+ * the run with States.Timeout, as the state machine has no retry, and likewise an OutOfMemoryError fails it with
+ * Runtime.OutOfMemory. See EmulatorSettings for the clock, memory and cold start settings.
+ */
+@Slf4j
+public class LambdaLoopEmulator<I extends Reentrant<?>> {
+    static final int MAX_PAYLOAD_BYTES = 256 * 1024;
+    static final String FUNCTION_NAME = "local-DqiExport";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Supplier<? extends RequestHandler<I, I>> handlerFactory;
+    private final Class<I> inputType;
+    private final ToLongFunction<I> docsOf;
+    private final EmulatorSettings settings;
+    private final ProcessTable processTable;
+
+    /**
+     * @param handlerFactory creates the handler, once per cold start
+     * @param docsOf how many docs an iteration's output says it processed
+     */
+    public LambdaLoopEmulator(Supplier<? extends RequestHandler<I, I>> handlerFactory,
+                              Class<I> inputType,
+                              ToLongFunction<I> docsOf,
+                              EmulatorSettings settings) {
+        this(handlerFactory, inputType, docsOf, settings, new ProcessTable());
+    }
+
+    public LambdaLoopEmulator(Supplier<? extends RequestHandler<I, I>> handlerFactory,
+                              Class<I> inputType,
+                              ToLongFunction<I> docsOf,
+                              EmulatorSettings settings,
+                              ProcessTable processTable) {
+        settings.validate();
+        this.handlerFactory = handlerFactory;
+        this.inputType = inputType;
+        this.docsOf = docsOf;
+        this.settings = settings;
+        this.processTable = processTable;
+    }
+
+    public EmulationReport run(I input) {
+        long maxHeapMb = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+        if (maxHeapMb > settings.getMemoryLimitMb()) {
+            log.warn("max heap is {}MB, more than the {}MB memory limit, run with -Xmx{}m or lower to enforce it",
+                     maxHeapMb, settings.getMemoryLimitMb(), settings.getMemoryLimitMb());
+        }
+
+        ExecutorService invoker = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, FUNCTION_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            return loop(input, invoker);
+        } finally {
+            invoker.shutdownNow();
+        }
+    }
+
+    private EmulationReport loop(I input, ExecutorService invoker) {
+        long started = System.nanoTime();
+        List<EmulationReport.Invocation> invocations = new ArrayList<>();
+        int coldStarts = 0;
+        long docs = 0;
+        long peakHeap = 0;
+        String failure = null;
+
+        processTable.start(input.getProcessId(), Instant.now());
+        ObjectNode state = MAPPER.valueToTree(input);
+        state.putObject("dynamo").putObject("SdkHttpMetadata").put("HttpStatusCode", 200);
+
+        RequestHandler<I, I> handler = null;
+        for (int i = 0; ; i++) {
+            if (i == settings.getMaxIterations()) {
+                failure = "MaxIterations";
+                break;
+            }
+
+            boolean cold = handler == null || (settings.getColdStartEvery() > 0 && i % settings.getColdStartEvery() == 0);
+            if (cold) {
+                handler = coldStart(handler);
+                coldStarts++;
+            }
+
+            byte[] payload;
+            I output;
+            EmulatedContext context;
+            long invoked;
+            try {
+                payload = MAPPER.writeValueAsBytes(state);
+                if (payload.length > MAX_PAYLOAD_BYTES) {
+                    failure = "States.DataLimitExceeded";
+                    break;
+                }
+                I request = MAPPER.readValue(payload, inputType);
+
+                resetPeakHeap();
+                context = new EmulatedContext(FUNCTION_NAME, settings);
+                invoked = System.nanoTime();
+                RequestHandler<I, I> invoking = handler;
+                Future<I> invocation = invoker.submit(() -> invoking.handleRequest(request, context));
+                output = invocation.get(context.getDeadlineNanos() - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                failure = "States.Timeout";
+                break;
+            } catch (ExecutionException e) {
+                failure = e.getCause() instanceof OutOfMemoryError ? "Runtime.OutOfMemory" : e.getCause().getClass().getName();
+                log.error("iteration {} failed", i, e.getCause());
+                break;
+            } catch (Exception e) {
+                throw new IllegalStateException("unable to invoke iteration " + i, e);
+            }
+
+            long iterationDocs = docsOf.applyAsLong(output);
+            long iterationHeap = peakHeap();
+            docs += iterationDocs;
+            peakHeap = Math.max(peakHeap, iterationHeap);
+            invocations.add(new EmulationReport.Invocation(i,
+                                                           cold,
+                                                           Duration.ofNanos(System.nanoTime() - invoked),
+                                                           iterationDocs,
+                                                           context.getRemainingTimeInMillis(),
+                                                           payload.length,
+                                                           iterationHeap));
+
+            state = MAPPER.valueToTree(output);
+            if (output.isDone()) {
+                processTable.complete(input.getProcessId(), Instant.now());
+                break;
+            }
+        }
+
+        return new EmulationReport(input.getProcessId(),
+                                   Duration.ofNanos(System.nanoTime() - started),
+                                   invocations.size(),
+                                   coldStarts,
+                                   docs,
+                                   peakHeap,
+                                   failure,
+                                   invocations);
+    }
+
+    /**
+     * a new execution environment: a new handler, and none of the pools or runtimes a warm one would have kept in static
+     * state
+     */
+    private RequestHandler<I, I> coldStart(RequestHandler<I, I> previous) {
+        if (previous != null) {
+            ContainerRuntime.closeAll();
+        }
+        if (!settings.getColdStartPenalty().isZero()) {
+            try {
+                Thread.sleep(settings.getColdStartPenalty().toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return handlerFactory.get();
+    }
+
+    private static void resetPeakHeap() {
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    private static long peakHeap() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                                .sum();
+    }
+}
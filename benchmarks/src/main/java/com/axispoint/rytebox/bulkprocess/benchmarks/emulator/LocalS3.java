@@ -0,0 +1,401 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks.emulator;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+/**
+ * Stands in for S3 with a local directory, covering the calls S3StreamUtils makes: plain objects, ranged reads,
+ * listing, and multipart uploads including part copies and part listings. Objects are kept on disk rather than in memory so a large export
+ * doesn't count against the heap the emulator is measuring. Like S3, every part but the last has to be at least 5MB.
+ *
+ * Objects live at root/bucket/key and the parts of an upload in progress under root/.uploads/uploadId.
+ */
+public class LocalS3 extends AbstractAmazonS3 implements AutoCloseable {
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final String UPLOADS = ".uploads";
+    private static final int MAX_LISTED_PARTS = 1000;
+
+    private final Path root;
+
+    public LocalS3(Path root) {
+        this.root = root;
+    }
+
+    public static LocalS3 temporary() {
+        try {
+            return new LocalS3(Files.createTempDirectory("local-s3"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public long totalBytes() {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile)
+                        .filter(file -> !root.relativize(file).startsWith(UPLOADS))
+                        .mapToLong(file -> file.toFile().length())
+                        .sum();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        delete(root);
+    }
+
+    @Override
+    public PutObjectResult putObject(String bucketName, String key, InputStream input, ObjectMetadata metadata) {
+        write(object(bucketName, key), input);
+        return new PutObjectResult();
+    }
+
+    @Override
+    public PutObjectResult putObject(String bucketName, String key, String content) {
+        write(object(bucketName, key), new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        return new PutObjectResult();
+    }
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest request) {
+        return putObject(request.getBucketName(), request.getKey(), request.getInputStream(), request.getMetadata());
+    }
+
+    @Override
+    public S3Object getObject(String bucketName, String key) {
+        return getObject(new GetObjectRequest(bucketName, key));
+    }
+
+    @Override
+    public S3Object getObject(GetObjectRequest request) {
+        Path file = existing(request.getBucketName(), request.getKey());
+        try {
+            long size = Files.size(file);
+            long[] range = Optional.ofNullable(request.getRange()).orElse(new long[]{0, size - 1});
+            long length = Math.max(0, Math.min(size, range[1] + 1) - range[0]);
+
+            InputStream content = Channels.newInputStream(FileChannel.open(file).position(range[0]));
+            S3Object object = new S3Object();
+            object.setBucketName(request.getBucketName());
+            object.setKey(request.getKey());
+            object.getObjectMetadata().setContentLength(length);
+            object.setObjectContent(new BoundedInputStream(content, length));
+            return object;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+        Path file = existing(request.getBucketName(), request.getKey());
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(file.toFile().length());
+        metadata.setHeader("ETag", etag(file));
+        return metadata;
+    }
+
+    @Override
+    public void deleteObject(String bucketName, String key) {
+        try {
+            Files.deleteIfExists(object(bucketName, key));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request) {
+        Path bucket = root.resolve(request.getBucketName());
+        String prefix = Optional.ofNullable(request.getPrefix()).orElse("");
+        int maxKeys = Optional.ofNullable(request.getMaxKeys()).orElse(1000);
+        String from = Optional.ofNullable(request.getContinuationToken()).orElse("");
+
+        List<String> keys;
+        try (Stream<Path> files = Files.exists(bucket) ? Files.walk(bucket) : Stream.empty()) {
+            keys = files.filter(Files::isRegularFile)
+                        .map(file -> bucket.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"))
+                        .filter(key -> key.startsWith(prefix) && key.compareTo(from) >= 0)
+                        .sorted()
+                        .limit(maxKeys + 1L)
+                        .collect(toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        ListObjectsV2Result result = new ListObjectsV2Result();
+        result.setBucketName(request.getBucketName());
+        if (keys.size() > maxKeys) {
+            result.setTruncated(true);
+            result.setNextContinuationToken(keys.remove(maxKeys));
+        }
+        for (String key : keys) {
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setBucketName(request.getBucketName());
+            summary.setKey(key);
+            summary.setSize(object(request.getBucketName(), key).toFile().length());
+            result.getObjectSummaries().add(summary);
+        }
+        result.setKeyCount(keys.size());
+        return result;
+    }
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+        String uploadId = UUID.randomUUID().toString();
+        try {
+            Files.createDirectories(root.resolve(UPLOADS).resolve(uploadId));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest request) {
+        Path part = part(request.getUploadId(), request.getPartNumber());
+        write(part, request.getInputStream());
+
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(etag(part));
+        return result;
+    }
+
+    @Override
+    public CopyPartResult copyPart(CopyPartRequest request) {
+        Path part = part(request.getUploadId(), request.getPartNumber());
+        write(part, getObject(new GetObjectRequest(request.getSourceBucketName(), request.getSourceKey())
+                                      .withRange(request.getFirstByte(), request.getLastByte()))
+                .getObjectContent());
+
+        CopyPartResult result = new CopyPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(etag(part));
+        return result;
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        Path target = object(request.getBucketName(), request.getKey());
+        Path assembling = upload(request.getUploadId()).resolve("object");
+        try (FileChannel out = FileChannel.open(assembling, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            int last = request.getPartETags().size() - 1;
+            for (int i = 0; i <= last; i++) {
+                PartETag etag = request.getPartETags().get(i);
+                Path part = part(request.getUploadId(), etag.getPartNumber());
+                if (!Files.isRegularFile(part) || !etag(part).equals(etag.getETag())) {
+                    throw badRequest("InvalidPart", "part " + etag.getPartNumber() + " wasn't uploaded or its ETag doesn't match");
+                }
+                long size = Files.size(part);
+                if (i < last && size < MIN_PART_SIZE) {
+                    throw badRequest("EntityTooSmall", "part " + etag.getPartNumber() + " is only " + size + " bytes");
+                }
+                try (FileChannel in = FileChannel.open(part)) {
+                    for (long copied = 0; copied < size; ) {
+                        copied += in.transferTo(copied, size - copied, out);
+                    }
+                }
+            }
+            Files.createDirectories(target.getParent());
+            Files.move(assembling, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        delete(upload(request.getUploadId()));
+
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        return result;
+    }
+
+    @Override
+    public PartListing listParts(ListPartsRequest request) {
+        int marker = Optional.ofNullable(request.getPartNumberMarker()).orElse(0);
+        int maxParts = Optional.ofNullable(request.getMaxParts()).orElse(MAX_LISTED_PARTS);
+        List<Integer> partNumbers;
+        try (Stream<Path> files = Files.list(upload(request.getUploadId()))) {
+            partNumbers = files.map(file -> file.getFileName().toString())
+                               .filter(name -> name.chars().allMatch(Character::isDigit))
+                               .map(Integer::valueOf)
+                               .filter(partNumber -> partNumber > marker)
+                               .sorted()
+                               .collect(toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        PartListing listing = new PartListing();
+        listing.setBucketName(request.getBucketName());
+        listing.setKey(request.getKey());
+        listing.setUploadId(request.getUploadId());
+        for (int partNumber : partNumbers.subList(0, Math.min(maxParts, partNumbers.size()))) {
+            Path part = part(request.getUploadId(), partNumber);
+            PartSummary summary = new PartSummary();
+            summary.setPartNumber(partNumber);
+            summary.setETag(etag(part));
+            summary.setSize(part.toFile().length());
+            listing.getParts().add(summary);
+            listing.setNextPartNumberMarker(partNumber);
+        }
+        listing.setTruncated(partNumbers.size() > maxParts);
+        return listing;
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+        delete(upload(request.getUploadId()));
+    }
+
+    private Path object(String bucketName, String key) {
+        return root.resolve(bucketName).resolve(key);
+    }
+
+    private Path upload(String uploadId) {
+        Path upload = root.resolve(UPLOADS).resolve(uploadId);
+        if (!Files.isDirectory(upload)) {
+            throw badRequest("NoSuchUpload", "no upload " + uploadId);
+        }
+        return upload;
+    }
+
+    private Path part(String uploadId, int partNumber) {
+        return upload(uploadId).resolve(String.valueOf(partNumber));
+    }
+
+    private Path existing(String bucketName, String key) {
+        Path file = object(bucketName, key);
+        if (!Files.isRegularFile(file)) {
+            AmazonS3Exception notFound = new AmazonS3Exception("The specified key does not exist: " + key);
+            notFound.setStatusCode(404);
+            notFound.setErrorCode("NoSuchKey");
+            throw notFound;
+        }
+        return file;
+    }
+
+    /**
+     * not an MD5 like S3's, but it changes whenever the part is rewritten, which is what completing an upload checks
+     */
+    private static String etag(Path part) {
+        File file = part.toFile();
+        return Long.toHexString(file.length()) + "-" + Long.toHexString(file.lastModified());
+    }
+
+    private static void write(Path file, InputStream input) {
+        try (input) {
+            Files.createDirectories(file.getParent());
+            Files.copy(input, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void delete(Path path) {
+        try (Stream<Path> files = Files.exists(path) ? Files.walk(path) : Stream.empty()) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static AmazonS3Exception badRequest(String code, String message) {
+        AmazonS3Exception e = new AmazonS3Exception(message);
+        e.setStatusCode(400);
+        e.setErrorCode(code);
+        return e;
+    }
+
+    /**
+     * the rest of a ranged read is never read, so the stream just stops at the end of the range
+     */
+    private static class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long remaining) {
+            this.in = in;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks.emulator;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Value;
+
+/**
+ * Stands in for the ${EnvironmentName}_bulk_process DynamoDB table the state machine records each process in.
+ */
+public class ProcessTable {
+    public static final String STARTED = "Started";
+    public static final String COMPLETE = "Complete";
+
+    private final Map<String, Process> processes = new ConcurrentHashMap<>();
+
+    /**
+     * like the "Create Process In DynamoDB" state's attribute_not_exists(process_id) condition, a process id can only
+     * ever be started once
+     */
+    public void start(String processId, Instant now) {
+        if (processes.putIfAbsent(processId, new Process(processId, STARTED, now, null)) != null) {
+            throw new IllegalStateException("DynamoDB.ConditionalCheckFailedException: process " + processId + " already exists");
+        }
+    }
+
+    public void complete(String processId, Instant now) {
+        processes.compute(processId, (id, process) -> new Process(id,
+                                                                  COMPLETE,
+                                                                  process == null ? null : process.getStartTime(),
+                                                                  now));
+    }
+
+    public Optional<Process> get(String processId) {
+        return Optional.ofNullable(processes.get(processId));
+    }
+
+    @Value
+    public static class Process {
+        private String processId;
+        private String processState;
+        private Instant startTime;
+        private Instant endTime;
+    }
+}
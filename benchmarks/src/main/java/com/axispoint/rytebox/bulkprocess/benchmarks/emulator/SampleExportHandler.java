@@ -0,0 +1,183 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks.emulator;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import akka.japi.Pair;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Source;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import io.vertx.mutiny.mysqlclient.MySQLPool;
+import lombok.SneakyThrows;
+import lombok.Value;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHit;
+
+import com.axispoint.rytebox.bulkprocess.benchmarks.SyntheticRows;
+import com.axispoint.rytebox.bulkprocess.common.db.DataRowUtils;
+import com.axispoint.rytebox.bulkprocess.common.db.DbPoolSettings;
+import com.axispoint.rytebox.bulkprocess.common.db.DqiCsvEncoder;
+import com.axispoint.rytebox.bulkprocess.common.db.MySqlEnrichmentFlow;
+import com.axispoint.rytebox.bulkprocess.common.dto.DqiInput;
+import com.axispoint.rytebox.bulkprocess.common.dto.ExportManifest;
+import com.axispoint.rytebox.bulkprocess.common.dto.IterationMetrics;
+import com.axispoint.rytebox.bulkprocess.common.dto.MultipartUploadState;
+import com.axispoint.rytebox.bulkprocess.common.dto.TimeBudget;
+import com.axispoint.rytebox.bulkprocess.common.metrics.PipelineMetrics;
+import com.axispoint.rytebox.bulkprocess.common.streams.ElasticSearchSource;
+import com.axispoint.rytebox.bulkprocess.common.streams.S3StreamUtils;
+import com.axispoint.rytebox.bulkprocess.common.streams.SearchCursor;
+import com.axispoint.rytebox.bulkprocess.common.streams.SearchHitsCodec;
+import com.axispoint.rytebox.bulkprocess.common.streams.SpillingBuffer;
+import com.axispoint.rytebox.bulkprocess.common.streams.TimeBoundFlow;
+
+/**
+ * A DQI-shaped export for the emulator to drive: ids paged from ES, joined to MySQL rows, formatted as CSV, compressed
+ * with the input's codec and written into a single file uploaded across iterations, with the time budget, metrics, search cursor and upload carried over
+ * from one iteration to the next. The export's manifest is written once it completes, and a delta export picks up from
+ * its base's. Pages are buffered between the search and MySQL, spilling to disk, and whatever's left in the buffer when an
+ * iteration runs out of time is carried over to the next one.
+ */
+public class SampleExportHandler implements RequestHandler<DqiInput, DqiInput> {
+    static final int PAGE_SIZE = 1000;
+    static final int BUFFERED_PAGES = 4;
+    static final SearchHitsCodec HITS_CODEC = new SearchHitsCodec();
+    static final String SQL = "select * from asset where id in (" + MySqlEnrichmentFlow.IDS + ")";
+
+    private final RestHighLevelClient esClient;
+    private final MySQLPool pool;
+    private final S3StreamUtils s3StreamUtils;
+    private final Materializer materializer;
+    private final Duration finalizationWindow;
+    private final DqiCsvEncoder csvEncoder;
+
+    public SampleExportHandler(RestHighLevelClient esClient,
+                               MySQLPool pool,
+                               S3StreamUtils s3StreamUtils,
+                               Materializer materializer,
+                               Duration finalizationWindow) {
+        this.esClient = esClient;
+        this.pool = pool;
+        this.s3StreamUtils = s3StreamUtils;
+        this.materializer = materializer;
+        this.finalizationWindow = finalizationWindow;
+        this.csvEncoder = new DqiCsvEncoder(DataRowUtils.of(SampleExportHandler.class).columns(SyntheticRows.COLUMNS.toArray(new String[0])));
+    }
+
+    public static long docsOf(DqiInput output) {
+        return Optional.ofNullable(output.getMetrics())
+                       .map(IterationMetrics::getCounters)
+                       .map(counters -> counters.getOrDefault(PipelineMetrics.DOCS, 0L))
+                       .orElse(0L);
+    }
+
+    @Override
+    @SneakyThrows
+    public DqiInput handleRequest(DqiInput input, Context context) {
+        PipelineMetrics metrics = new PipelineMetrics();
+        if (input.getIteration() == 0) {
+            Optional<ExportManifest> base = input.isDelta()
+                    ? s3StreamUtils.readManifest(input.getOutputBucket(), input.getBaseProcessId()).toCompletableFuture().get()
+                    : Optional.empty();
+            input.begin(Instant.now(), base);
+        }
+
+        ElasticSearchSource search = new ElasticSearchSource(esClient,
+                                                             input.getIndexName(),
+                                                             input.getSearchQuery(),
+                                                             input.getSliceContinuations(),
+                                                             PAGE_SIZE,
+                                                             Optional.empty())
+                .withMetrics(metrics);
+        if (input.isUsePointInTime() || input.getSlices() > 1) {
+            search = search.withPointInTime(Optional.ofNullable(input.getPointInTime()));
+        }
+
+        Source<List<SearchHit>, CompletionStage<S3StreamUtils.Replayed>> carriedOver =
+                Optional.ofNullable(input.getCarryOverKey())
+                        .map(carryOverKey -> s3StreamUtils.readCarryOver(input.getOutputBucket(), carryOverKey, HITS_CODEC))
+                        .orElseGet(() -> Source.<List<SearchHit>>empty()
+                                               .mapMaterializedValue(notUsed -> CompletableFuture.completedStage(S3StreamUtils.Replayed.NONE)));
+
+        String key = input.getProcessId() + "/export.csv" + input.getCompression().getExtension();
+        SpillingBuffer<List<SearchHit>> buffer = new SpillingBuffer<>(HITS_CODEC, BUFFERED_PAGES).withMetrics(metrics);
+        Pair<Pair<Read, CompletionStage<TimeBudget>>, CompletionStage<MultipartUploadState>> stages =
+                carriedOver.concatMat(Source.fromGraph(search), Keep.both())
+                           .viaMat(buffer, (read, remainder) -> new Read(read.first(), read.second(), remainder))
+                           .viaMat(new TimeBoundFlow<List<SearchHit>>(context::getRemainingTimeInMillis,
+                                                                      finalizationWindow,
+                                                                      Optional.ofNullable(input.getTimeBudget()))
+                                           .withPendingBytes(buffer::getBufferedBytes, TimeBoundFlow.DEFAULT_PENDING_BYTES_PER_SECOND),
+                                   Keep.both())
+                           .via(new MySqlEnrichmentFlow(pool, SQL, "id", DbPoolSettings.DEFAULTS.getMaxSize()).withMetrics(metrics).flow())
+                           .via(csvEncoder.flow())
+                           .via(s3StreamUtils.compress(input.getCompression()))
+                           .via(metrics.countBytes(PipelineMetrics.BYTES_WRITTEN))
+                           .toMat(s3StreamUtils.resumableUpload(Optional.ofNullable(input.getUpload()),
+                                                                input.getOutputBucket(),
+                                                                key),
+                                  Keep.both())
+                           .run(materializer);
+
+        Read read = stages.first().first();
+        CompletableFuture<Long> streamFinished = stages.first().second().thenApply(budget -> System.nanoTime()).toCompletableFuture();
+        SpillingBuffer.Remainder remainder = read.getRemainder().toCompletableFuture().get();
+        SearchCursor cursor;
+        TimeBudget budget;
+        MultipartUploadState upload;
+        try {
+            cursor = read.getCursor().toCompletableFuture().get();
+            budget = stages.first().second().toCompletableFuture().get();
+            upload = stages.second().toCompletableFuture().get();
+        } catch (Exception e) {
+            // the iteration is rerun from its input, so nothing it buffered is carried over
+            remainder.discard();
+            throw e;
+        }
+
+        metrics.increment(PipelineMetrics.BUFFER_CARRIED_OVER, remainder.getElements());
+        Optional<String> carryOverKey = s3StreamUtils.writeCarryOver(remainder,
+                                                                     Optional.ofNullable(input.getCarryOverKey()),
+                                                                     read.getReplayed().toCompletableFuture().get(),
+                                                                     input.getOutputBucket(),
+                                                                     input.getProcessId(),
+                                                                     input.getIteration())
+                                                     .toCompletableFuture()
+                                                     .get();
+        input.setCarryOverKey(carryOverKey.orElse(null));
+
+        boolean done = cursor.isExhausted() && carryOverKey.isEmpty();
+        if (done) {
+            s3StreamUtils.completeUpload(upload).toCompletableFuture().get();
+            s3StreamUtils.writeManifest(input.getOutputBucket(), ExportManifest.of(input, List.of(key))).toCompletableFuture().get();
+            input.setUpload(null);
+        } else {
+            input.setUpload(upload);
+        }
+
+        IterationMetrics iterationMetrics = metrics.summarize(input.getIteration());
+        s3StreamUtils.writeMetrics(input.getOutputBucket(), input.getProcessId(), iterationMetrics).toCompletableFuture().get();
+        budget.setFinalizationMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - streamFinished.get()));
+        input.setTimeBudget(budget);
+        input.setMetrics(iterationMetrics);
+        input.completeSlicedIteration(done, cursor.getSearchAfter(), cursor.getPointInTime().orElse(null), null);
+        return input;
+    }
+
+    /**
+     * the materialized values of reading an iteration's pages: the carry-over replayed, the search and the buffer
+     */
+    @Value
+    private static class Read {
+        private CompletionStage<S3StreamUtils.Replayed> replayed;
+        private CompletionStage<SearchCursor> cursor;
+        private CompletionStage<SpillingBuffer.Remainder> remainder;
+    }
+}
@@ -0,0 +1,117 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks.emulator;
+
+import static java.util.stream.Collectors.toList;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Source;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.vertx.mutiny.mysqlclient.MySQLPool;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import com.axispoint.rytebox.bulkprocess.benchmarks.StubElasticsearch;
+import com.axispoint.rytebox.bulkprocess.benchmarks.SyntheticRows;
+import com.axispoint.rytebox.bulkprocess.common.dto.Compression;
+import com.axispoint.rytebox.bulkprocess.common.dto.DqiInput;
+import com.axispoint.rytebox.bulkprocess.common.dto.ExportManifest;
+import com.axispoint.rytebox.bulkprocess.common.streams.S3StreamUtils;
+import com.axispoint.rytebox.bulkprocess.common.streams.ShardPlan;
+import com.axispoint.rytebox.bulkprocess.common.streams.ShardPlanner;
+
+/**
+ * Runs an export split by the ShardPlanner: each shard goes through an emulated state machine of its own, all of them
+ * at once as a Map state would run them, and their outputs are then merged in shard order into processId/export.csv
+ * with a manifest of its own:
+ *
+ *     java -Xmx2g -cp benchmarks/target/benchmarks.jar \
+ *         com.axispoint.rytebox.bulkprocess.benchmarks.emulator.ShardedEmulatorMain [docs] [shards] [clockCompression] [esLatencyMillis] [nestedCount] [coldStartEvery] [compression]
+ *
+ * with the same defaults as EmulatorMain and 4 shards. The shards share this JVM, so the peak heap each one reports is
+ * that of all of them.
+ */
+public class ShardedEmulatorMain {
+    static final String FILE_NAME = "export.csv";
+
+    public static void main(String[] args) throws Exception {
+        long docs = EmulatorMain.arg(args, 0, 1_000_000);
+        int shards = (int) EmulatorMain.arg(args, 1, 4);
+        double clockCompression = args.length > 2 ? Double.parseDouble(args[2]) : 60;
+        long esLatencyMillis = EmulatorMain.arg(args, 3, 0);
+        int nestedCount = (int) EmulatorMain.arg(args, 4, 10);
+        int coldStartEvery = (int) EmulatorMain.arg(args, 5, 10);
+        Compression compression = args.length > 6 ? Compression.valueOf(args[6]) : Compression.NONE;
+
+        EmulatorSettings settings = EmulatorSettings.DEFAULTS
+                .withClockCompression(clockCompression)
+                .withColdStarts(coldStartEvery, Duration.ofMillis(500));
+        Duration finalizationWindow = Duration.ofNanos((long) (EmulatorMain.FINALIZATION_WINDOW.toNanos() / clockCompression));
+
+        ActorSystem system = ActorSystem.create("ShardedEmulatorMain");
+        ExecutorService executor = Executors.newFixedThreadPool(shards);
+        boolean complete;
+        try (StubElasticsearch es = new StubElasticsearch(docs, esLatencyMillis);
+             RestHighLevelClient esClient = es.client();
+             LocalS3 s3 = LocalS3.temporary()) {
+            Materializer materializer = Materializer.createMaterializer(system);
+            MySQLPool pool = SyntheticRows.pool(nestedCount);
+            S3StreamUtils s3StreamUtils = new S3StreamUtils(s3, materializer);
+            ProcessTable processTable = new ProcessTable();
+
+            ObjectNode query = (ObjectNode) new ObjectMapper().readTree("{\"match_all\":{}}");
+            DqiInput export = DqiInput.of(EmulatorMain.BUCKET, UUID.randomUUID().toString(), "stub", query, Map.of());
+            export.setCompression(compression);
+
+            long started = System.nanoTime();
+            export.begin(Instant.now(), Optional.empty());
+            ShardPlan plan = new ShardPlanner(esClient).plan(export, shards).toCompletableFuture().get();
+            System.out.printf("planned %d shards of %d docs split at %s%n", plan.getShards().size(), plan.getTotalHits(), plan.getBoundaries());
+
+            List<CompletableFuture<EmulationReport>> runs = plan.getShards().stream().map(shard -> CompletableFuture.supplyAsync(() -> {
+                LambdaLoopEmulator<DqiInput> emulator = new LambdaLoopEmulator<>(
+                        () -> new SampleExportHandler(esClient, pool, s3StreamUtils, materializer, finalizationWindow),
+                        DqiInput.class,
+                        SampleExportHandler::docsOf,
+                        settings,
+                        processTable);
+                return emulator.run(shard);
+            }, executor)).collect(toList());
+            List<EmulationReport> reports = runs.stream().map(CompletableFuture::join).collect(toList());
+            reports.forEach(System.out::print);
+
+            complete = reports.stream().allMatch(EmulationReport::isComplete);
+            if (complete) {
+                String extension = compression.getExtension();
+                String key = export.getProcessId() + "/" + FILE_NAME + extension;
+                s3StreamUtils.mergeObjectsInPlace(Source.empty(), EmulatorMain.BUCKET, plan.getOutputKeys(FILE_NAME + extension), key, compression)
+                             .thenCompose(done -> s3StreamUtils.writeManifest(EmulatorMain.BUCKET, ExportManifest.of(export, List.of(key))))
+                             .toCompletableFuture()
+                             .get();
+            }
+
+            Duration wallTime = Duration.ofNanos(System.nanoTime() - started);
+            long exported = reports.stream().mapToLong(EmulationReport::getDocs).sum();
+            System.out.printf("%s %d docs in %s over %d shards (%.0f docs/s), wrote %dMB to S3%n",
+                              complete ? "merged" : "FAILED after",
+                              exported,
+                              wallTime,
+                              reports.size(),
+                              exported / (wallTime.toNanos() / 1e9),
+                              s3.totalBytes() / (1024 * 1024));
+        } finally {
+            executor.shutdown();
+            system.terminate();
+        }
+        System.exit(complete ? 0 : 1);
+    }
+}
@@ -0,0 +1,95 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks.emulator;
+
+import static java.util.stream.Collectors.toList;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.vertx.mutiny.mysqlclient.MySQLPool;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import com.axispoint.rytebox.bulkprocess.benchmarks.StubElasticsearch;
+import com.axispoint.rytebox.bulkprocess.benchmarks.SyntheticRows;
+import com.axispoint.rytebox.bulkprocess.common.dto.Compression;
+import com.axispoint.rytebox.bulkprocess.common.dto.DqiInput;
+import com.axispoint.rytebox.bulkprocess.common.streams.S3StreamUtils;
+import com.axispoint.rytebox.bulkprocess.common.worker.InMemoryJobQueue;
+import com.axispoint.rytebox.bulkprocess.common.worker.ReentrantWorker;
+
+/**
+ * Runs the SampleExportHandler in a ReentrantWorker instead of the emulated Lambda: jobs are submitted to an in-memory
+ * queue and run concurrently on one materializer, ES client and db pool, against the same stubs as EmulatorMain:
+ *
+ *     java -Xmx2g -cp benchmarks/target/benchmarks.jar \
+ *         com.axispoint.rytebox.bulkprocess.benchmarks.emulator.WorkerMain [jobs] [docs] [concurrency] [checkpointSeconds] [esLatencyMillis] [nestedCount] [compression]
+ *
+ * which defaults to 4 jobs of 1,000,000 docs each, run 2 at a time and only checkpointed on close (checkpointSeconds 0),
+ * with no ES latency, 10 nested rows per asset and uncompressed output.
+ */
+public class WorkerMain {
+
+    public static void main(String[] args) throws Exception {
+        int jobs = (int) EmulatorMain.arg(args, 0, 4);
+        long docs = EmulatorMain.arg(args, 1, 1_000_000);
+        int concurrency = (int) EmulatorMain.arg(args, 2, 2);
+        long checkpointSeconds = EmulatorMain.arg(args, 3, 0);
+        Duration checkpointInterval = checkpointSeconds > 0 ? Duration.ofSeconds(checkpointSeconds) : ReentrantWorker.UNBOUNDED;
+        long esLatencyMillis = EmulatorMain.arg(args, 4, 0);
+        int nestedCount = (int) EmulatorMain.arg(args, 5, 10);
+        Compression compression = args.length > 6 ? Compression.valueOf(args[6]) : Compression.NONE;
+
+        ActorSystem system = ActorSystem.create("WorkerMain");
+        boolean complete;
+        try (StubElasticsearch es = new StubElasticsearch(docs, esLatencyMillis);
+             RestHighLevelClient esClient = es.client();
+             LocalS3 s3 = LocalS3.temporary()) {
+            Materializer materializer = Materializer.createMaterializer(system);
+            MySQLPool pool = SyntheticRows.pool(nestedCount);
+            S3StreamUtils s3StreamUtils = new S3StreamUtils(s3, materializer);
+            InMemoryJobQueue<DqiInput> queue = new InMemoryJobQueue<>();
+
+            ObjectNode query = (ObjectNode) new ObjectMapper().readTree("{\"match_all\":{}}");
+            long started = System.nanoTime();
+            List<CompletableFuture<DqiInput>> results = IntStream.range(0, jobs).mapToObj(i -> {
+                DqiInput input = DqiInput.of(EmulatorMain.BUCKET, UUID.randomUUID().toString(), "stub", query, Map.of());
+                input.setCompression(compression);
+                return queue.submit(input).toCompletableFuture();
+            }).collect(toList());
+
+            try (ReentrantWorker<DqiInput> worker = new ReentrantWorker<>(
+                    queue,
+                    () -> new SampleExportHandler(esClient, pool, s3StreamUtils, materializer, EmulatorMain.FINALIZATION_WINDOW),
+                    concurrency,
+                    checkpointInterval)) {
+                worker.start();
+                CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+            }
+
+            Duration wallTime = Duration.ofNanos(System.nanoTime() - started);
+            for (CompletableFuture<DqiInput> result : results) {
+                System.out.println(result.isCompletedExceptionally()
+                        ? "FAILED " + result.handle((output, e) -> e.getMessage()).join()
+                        : "process " + result.join().getProcessId() + " done in " + result.join().getIteration() + " iterations");
+            }
+            complete = results.stream().noneMatch(CompletableFuture::isCompletedExceptionally);
+            System.out.printf("%d jobs of %d docs in %s, %d at a time (%.0f docs/s), wrote %dMB to S3%n",
+                              jobs,
+                              docs,
+                              wallTime,
+                              concurrency,
+                              jobs * docs / (wallTime.toNanos() / 1e9),
+                              s3.totalBytes() / (1024 * 1024));
+        } finally {
+            system.terminate();
+        }
+        System.exit(complete ? 0 : 1);
+    }
+}
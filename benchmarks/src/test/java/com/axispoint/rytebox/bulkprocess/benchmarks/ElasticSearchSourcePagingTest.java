@@ -0,0 +1,104 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorSystem;
+import akka.japi.Pair;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.axispoint.rytebox.bulkprocess.common.streams.ElasticSearchSource;
+import com.axispoint.rytebox.bulkprocess.common.streams.PagingSettings;
+import com.axispoint.rytebox.bulkprocess.common.streams.PagingStats;
+import com.axispoint.rytebox.bulkprocess.common.streams.SearchCursor;
+
+/**
+ * Pages every doc out of a StubElasticsearch whose searches cost a round trip plus a little per doc, with downstream
+ * taking a while over each page, the way the pipeline enriches them: adaptive pages read ahead should beat fixed
+ * 1000-doc pages with one page prefetched on docs/sec.
+ */
+class ElasticSearchSourcePagingTest {
+    static final int TOTAL_DOCS = 60_000;
+    static final long LATENCY_MILLIS = 20;
+    static final double DOWNSTREAM_MILLIS_PER_DOC = 0.002;
+
+    static StubElasticsearch es;
+    static RestHighLevelClient client;
+    static ActorSystem system;
+    static Materializer materializer;
+    static ObjectNode query;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        es = new StubElasticsearch(TOTAL_DOCS, LATENCY_MILLIS, ElasticSearchSourceBenchmark.MILLIS_PER_DOC);
+        client = es.client();
+        system = ActorSystem.create("ElasticSearchSourcePagingTest");
+        materializer = Materializer.createMaterializer(system);
+        query = (ObjectNode) new ObjectMapper().readTree("{\"match_all\":{}}");
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        client.close();
+        es.close();
+        system.terminate();
+    }
+
+    @Test
+    void adaptivePagesReadAheadOutpaceFixedPages() throws Exception {
+        PagingSettings fixed = ElasticSearchSourceBenchmark.paging(false, 1000, 1);
+        PagingSettings adaptive = ElasticSearchSourceBenchmark.paging(true, 1000, 3);
+        // once each first, so neither pays for the JIT or the first connections
+        run(fixed);
+        run(adaptive);
+
+        Pair<PagingStats, Double> fixedRun = run(fixed);
+        Pair<PagingStats, Double> adaptiveRun = run(adaptive);
+
+        assertEquals(1000, fixedRun.first().getMaxPageSize());
+        assertTrue(adaptiveRun.first().getMaxPageSize() > 1000, "pages grew to " + adaptiveRun.first().getMaxPageSize());
+        assertTrue(adaptiveRun.second() > fixedRun.second(),
+                   String.format("adaptive %.0f docs/sec, fixed %.0f docs/sec", adaptiveRun.second(), fixedRun.second()));
+    }
+
+    /**
+     * reads every doc with the paging given, returning the source's paging stats and the docs/sec it managed
+     */
+    private static Pair<PagingStats, Double> run(PagingSettings paging) throws Exception {
+        ElasticSearchSource source = new ElasticSearchSource(client, "stub", query, Optional.empty(), paging.getInitialPageSize(), Optional.empty())
+                .withPaging(paging);
+
+        long start = System.nanoTime();
+        Pair<CompletionStage<SearchCursor>, CompletionStage<Long>> run =
+                Source.fromGraph(source)
+                      .async()
+                      .map(hits -> {
+                          TimeUnit.MICROSECONDS.sleep(Math.round(hits.size() * DOWNSTREAM_MILLIS_PER_DOC * 1000));
+                          return (long) hits.size();
+                      })
+                      .toMat(Sink.fold(0L, Long::sum), Keep.both())
+                      .run(materializer);
+
+        long docs = run.second().toCompletableFuture().get(1, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        SearchCursor cursor = run.first().toCompletableFuture().get(1, TimeUnit.MINUTES);
+
+        assertEquals(TOTAL_DOCS, docs);
+        assertTrue(cursor.isExhausted());
+        return Pair.create(cursor.getStats(), docs / seconds);
+    }
+}
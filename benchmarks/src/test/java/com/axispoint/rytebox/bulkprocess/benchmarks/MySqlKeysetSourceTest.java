@@ -0,0 +1,148 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorSystem;
+import akka.japi.Pair;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import io.vertx.mutiny.mysqlclient.MySQLPool;
+import io.vertx.mutiny.sqlclient.Row;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.axispoint.rytebox.bulkprocess.common.streams.KeyRange;
+import com.axispoint.rytebox.bulkprocess.common.streams.KeysetCursor;
+import com.axispoint.rytebox.bulkprocess.common.streams.MySqlKeysetSource;
+
+/**
+ * Pages through SyntheticRows.keysetPool, whose rows have the ids 1..TOTAL_ROWS, checking every id comes out exactly
+ * once however the keys are split into ranges and however many times the export stops and resumes from its cursor.
+ */
+class MySqlKeysetSourceTest {
+    static final int TOTAL_ROWS = 10_007;
+    static final int PAGE_SIZE = 250;
+    static final String SQL = "select * from asset where " + MySqlKeysetSource.KEYSET;
+
+    static ActorSystem system;
+    static Materializer materializer;
+
+    private final MySQLPool pool = SyntheticRows.keysetPool(TOTAL_ROWS, 0, 1);
+
+    @BeforeAll
+    static void setUp() {
+        system = ActorSystem.create("MySqlKeysetSourceTest");
+        materializer = Materializer.createMaterializer(system);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        system.terminate();
+    }
+
+    @Test
+    void readsEveryRowExactlyOnce() throws Exception {
+        for (int ranges : new int[]{1, 4, 7}) {
+            List<Long> ids = new ArrayList<>();
+            KeysetCursor cursor = read(source(SQL, "id", KeyRange.split(1, TOTAL_ROWS, ranges)), Integer.MAX_VALUE, ids);
+
+            assertExactlyOnce(ids);
+            assertTrue(cursor.isExhausted());
+            assertEquals(TOTAL_ROWS, cursor.getRows());
+        }
+    }
+
+    @Test
+    void resumesFromTheCursorWithoutSkippingOrRepeatingRows() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        List<KeyRange> ranges = KeyRange.split(1, TOTAL_ROWS, 4);
+        int iterations = 0;
+        while (!ranges.isEmpty()) {
+            // a page or few each time, stopping mid-range and with the next pages already read ahead
+            KeysetCursor cursor = read(source(SQL, "id", ranges), 1 + iterations % 5, ids);
+            ranges = cursor.getRanges();
+            iterations++;
+        }
+
+        assertExactlyOnce(ids);
+        assertTrue(iterations > 10, "stopped and resumed " + iterations + " times");
+    }
+
+    @Test
+    void readsTheKeyOfAQualifiedKeyColumn() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        MySqlKeysetSource source = new MySqlKeysetSource(pool, "select a.* from asset a where " + MySqlKeysetSource.KEYSET,
+                                                         "a.id", List.of(), KeyRange.split(1, TOTAL_ROWS, 2), PAGE_SIZE);
+        read(source, Integer.MAX_VALUE, ids);
+
+        assertExactlyOnce(ids);
+    }
+
+    @Test
+    void readsTheKeyFromTheResultColumnGiven() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        read(source("select a.asset_id as id from asset a where " + MySqlKeysetSource.KEYSET, "a.asset_id", List.of(KeyRange.ALL))
+                     .withKeyResultColumn("id"),
+             Integer.MAX_VALUE,
+             ids);
+
+        assertExactlyOnce(ids);
+    }
+
+    @Test
+    void rejectsTemplatesEndingInWhatItAdds() {
+        for (String sql : List.of(SQL + " order by id",
+                                  SQL + " ORDER  BY title desc",
+                                  SQL + " limit 10",
+                                  SQL + "\nLIMIT 10, 20",
+                                  SQL + ";",
+                                  SQL + " ; ")) {
+            assertThrows(IllegalArgumentException.class, () -> source(sql, "id", List.of(KeyRange.ALL)), sql);
+        }
+    }
+
+    @Test
+    void acceptsAnOrderOrLimitInASubquery() {
+        source("select * from asset where " + MySqlKeysetSource.KEYSET + " and catalog_id in (select id from catalog order by id limit 5)",
+               "id",
+               List.of(KeyRange.ALL));
+        source("select * from asset_limits where " + MySqlKeysetSource.KEYSET, "id", List.of(KeyRange.ALL));
+    }
+
+    private MySqlKeysetSource source(String sql, String keyColumn, List<KeyRange> ranges) {
+        return new MySqlKeysetSource(pool, sql, keyColumn, List.of(), ranges, PAGE_SIZE);
+    }
+
+    /**
+     * reads up to pages pages, adding the ids of their rows to ids, and returns where the source left off
+     */
+    private static KeysetCursor read(MySqlKeysetSource source, int pages, List<Long> ids) throws Exception {
+        Pair<CompletionStage<KeysetCursor>, CompletionStage<List<List<Row>>>> run =
+                Source.fromGraph(source)
+                      .take(pages)
+                      .toMat(Sink.seq(), Keep.both())
+                      .run(materializer);
+
+        run.second().toCompletableFuture().get(30, TimeUnit.SECONDS).forEach(page -> page.forEach(row -> ids.add(row.getLong("id"))));
+        return run.first().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+
+    private static void assertExactlyOnce(List<Long> ids) {
+        TreeSet<Long> distinct = new TreeSet<>(ids);
+        assertEquals(ids.size(), distinct.size(), "no row is read twice");
+        assertEquals(TOTAL_ROWS, distinct.size(), "every row is read");
+        assertEquals(1L, distinct.first().longValue());
+        assertEquals(TOTAL_ROWS, distinct.last().longValue());
+    }
+}
@@ -0,0 +1,119 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks.emulator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.axispoint.rytebox.bulkprocess.common.streams.S3StreamUtils;
+
+/**
+ * Merges against a LocalS3 that answers UploadPartCopy with a 501, as some S3-compatible stores do, so every byte of the
+ * fallback has to go through the injected client (anything going to the real S3 would fail).
+ */
+class S3StreamUtilsFallbackTest {
+    static final String BUCKET = "exports";
+    static final String HEADER = "id,title\n";
+
+    private final AtomicInteger copies = new AtomicInteger();
+    private final LocalS3 s3 = new LocalS3(temporaryDirectory()) {
+        @Override
+        public CopyPartResult copyPart(CopyPartRequest request) {
+            copies.incrementAndGet();
+            AmazonS3Exception notImplemented = new AmazonS3Exception("UploadPartCopy isn't supported");
+            notImplemented.setStatusCode(501);
+            notImplemented.setErrorCode("NotImplemented");
+            throw notImplemented;
+        }
+    };
+    private final ActorSystem system = ActorSystem.create("S3StreamUtilsFallbackTest");
+    private final Materializer materializer = Materializer.createMaterializer(system);
+    private final S3StreamUtils s3Utils = new S3StreamUtils(s3, materializer);
+
+    @AfterEach
+    void tearDown() {
+        system.terminate();
+        s3.close();
+    }
+
+    @Test
+    void streamsTheMergeThroughTheClientWhenPartCopiesAreNotImplemented() throws Exception {
+        // big enough for the server-side merge to copy a part, and for the fallback to upload more than one
+        byte[] first = put("job/iteration-0.csv", 12 * 1024 * 1024, 0);
+        byte[] second = put("job/iteration-1.csv", 3 * 1024 * 1024, 1);
+        byte[] last = put("job/iteration-10.csv", 1024, 10);
+        s3.putObject(BUCKET, "job/metrics-0.json", "{}");
+
+        s3Utils.mergeFilePartsInPlace(Source.single(HEADER), BUCKET, "job", "job/merged.csv")
+               .toCompletableFuture()
+               .get();
+
+        assertEquals(1, copies.get());
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(HEADER.getBytes(StandardCharsets.UTF_8));
+        expected.write(first);
+        expected.write(second);
+        expected.write(last);
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(s3.getRoot().resolve(BUCKET).resolve("job/merged.csv")));
+        assertTrue(noUploadsLeft(), "the server-side attempt is aborted and the streamed upload completed");
+    }
+
+    @Test
+    void streamsIterationFilesInIterationOrder() throws Exception {
+        byte[] first = put("job/iteration-2.csv", 100, 2);
+        byte[] last = put("job/iteration-10.csv", 100, 10);
+
+        ByteString merged = s3Utils.mergeFileParts(Source.single(HEADER), BUCKET, "job")
+                                   .runWith(Sink.fold(ByteString.emptyByteString(), ByteString::concat), materializer)
+                                   .toCompletableFuture()
+                                   .get();
+
+        assertArrayEquals(ByteString.fromString(HEADER).concat(ByteString.fromArray(first)).concat(ByteString.fromArray(last)).toArray(),
+                          merged.toArray());
+    }
+
+    private byte[] put(String key, int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(size);
+        s3.putObject(BUCKET, key, new ByteArrayInputStream(bytes), metadata);
+        return bytes;
+    }
+
+    private boolean noUploadsLeft() throws IOException {
+        try (Stream<Path> uploads = Files.list(s3.getRoot().resolve(".uploads"))) {
+            return uploads.findAny().isEmpty();
+        }
+    }
+
+    private static Path temporaryDirectory() {
+        try {
+            return Files.createTempDirectory("local-s3");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
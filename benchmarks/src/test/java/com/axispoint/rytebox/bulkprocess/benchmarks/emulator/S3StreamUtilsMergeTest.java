@@ -0,0 +1,159 @@
+package com.axispoint.rytebox.bulkprocess.benchmarks.emulator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.axispoint.rytebox.bulkprocess.common.streams.S3StreamUtils;
+
+/**
+ * Merges iteration files against a LocalS3, which copies parts server-side like S3 does and holds every part but the
+ * last to the 5MB minimum, checking the merged object byte for byte. Sizes are around the minimum part size, where the
+ * server-side merge decides between copying a file and buffering it into a part of its own.
+ */
+class S3StreamUtilsMergeTest {
+    static final String BUCKET = "exports";
+    static final String HEADER = "id,title\n";
+    static final int MB = 1024 * 1024;
+    static final int MIN_PART_SIZE = (int) S3StreamUtils.MIN_PART_SIZE;
+
+    private final AtomicInteger copies = new AtomicInteger();
+    private final LocalS3 s3 = new LocalS3(temporaryDirectory()) {
+        @Override
+        public CopyPartResult copyPart(CopyPartRequest request) {
+            copies.incrementAndGet();
+            return super.copyPart(request);
+        }
+    };
+    private final ActorSystem system = ActorSystem.create("S3StreamUtilsMergeTest");
+    private final Materializer materializer = Materializer.createMaterializer(system);
+    private final S3StreamUtils s3Utils = new S3StreamUtils(s3, materializer);
+    private int merges;
+
+    @AfterEach
+    void tearDown() {
+        system.terminate();
+        s3.close();
+    }
+
+    @Test
+    void copiesWhatItCanAndBuffersTheRest() throws Exception {
+        // header + 1KB + 2MB + all of 7MB as one part, as what's left of the 7MB after topping up couldn't be a part itself;
+        // then 3MB + 2MB of the 12MB as another, its last 10MB copied, and the last 100 bytes uploaded on their own
+        assertMerged(Source.single(HEADER), 1, 1024, 2 * MB, 7 * MB, 3 * MB, 12 * MB, 100);
+    }
+
+    @Test
+    void topsTheHeaderUpToAPartBeforeCopying() throws Exception {
+        assertMerged(Source.single(HEADER), 2, 12 * MB, 6 * MB);
+        // exactly a part left of the first file after topping the header up, so it's copied
+        assertMerged(Source.single(HEADER), 2, 2 * MIN_PART_SIZE - HEADER.length(), MIN_PART_SIZE);
+        // a byte short of that, so all of it goes in the buffer
+        assertMerged(Source.single(HEADER), 1, 2 * MIN_PART_SIZE - HEADER.length() - 1, MIN_PART_SIZE);
+    }
+
+    @Test
+    void copiesWholeFilesWhenNothingIsBuffered() throws Exception {
+        assertMerged(Source.empty(), 3, 6 * MB, MIN_PART_SIZE, 8 * MB);
+    }
+
+    @Test
+    void coalescesFilesUnderTheMinimumPartSize() throws Exception {
+        assertMerged(Source.single(HEADER), 0, MB, MB, MB, MB, MB, MB, MB, MB, 10, MIN_PART_SIZE - 1, 0, MB);
+        assertMerged(Source.single(HEADER), 0, 0);
+        assertMerged(Source.empty(), 0);
+    }
+
+    @Test
+    void leavesOutTheIterationsOfNestedShards() throws Exception {
+        byte[] first = put("job/iteration-0.csv", 100, 0);
+        byte[] second = put("job/iteration-1.csv", 100, 1);
+        byte[] shard = put("job/shard-0000/iteration-0.csv", 100, 2);
+        put("job/shard-0001/iteration-0.csv", 100, 3);
+        put("job/shard-0001/iteration-1.csv", 100, 4);
+        put("job-2/iteration-0.csv", 100, 5);
+
+        byte[] expected = concat(HEADER.getBytes(StandardCharsets.UTF_8), first, second);
+        assertArrayEquals(expected, streamed("job"));
+        s3Utils.mergeFilePartsInPlace(Source.single(HEADER), BUCKET, "job", "job/merged.csv").toCompletableFuture().get();
+        assertArrayEquals(expected, get("job/merged.csv"));
+
+        assertArrayEquals(concat(HEADER.getBytes(StandardCharsets.UTF_8), shard), streamed("job/shard-0000"));
+    }
+
+    /**
+     * merges header + iteration files of the sizes given, checking the result and how many parts were copied for it
+     */
+    private void assertMerged(Source<String, NotUsed> header, int partCopies, int... sizes) throws Exception {
+        String dirPrefix = "merge-" + merges++;
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        header.runForeach(h -> expected.write(h.getBytes(StandardCharsets.UTF_8)), materializer).toCompletableFuture().get();
+        for (int i = 0; i < sizes.length; i++) {
+            expected.write(put(dirPrefix + "/iteration-" + i + ".csv", sizes[i], i));
+        }
+        copies.set(0);
+
+        s3Utils.mergeFilePartsInPlace(header, BUCKET, dirPrefix, dirPrefix + ".csv").toCompletableFuture().get();
+
+        assertArrayEquals(expected.toByteArray(), get(dirPrefix + ".csv"), dirPrefix);
+        assertEquals(partCopies, copies.get(), dirPrefix + " parts copied");
+    }
+
+    private byte[] put(String key, int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(size);
+        s3.putObject(BUCKET, key, new ByteArrayInputStream(bytes), metadata);
+        return bytes;
+    }
+
+    private byte[] get(String key) throws IOException {
+        return Files.readAllBytes(s3.getRoot().resolve(BUCKET).resolve(key));
+    }
+
+    private byte[] streamed(String dirPrefix) throws Exception {
+        return s3Utils.mergeFileParts(Source.single(HEADER), BUCKET, dirPrefix)
+                      .runWith(Sink.fold(ByteString.emptyByteString(), ByteString::concat), materializer)
+                      .toCompletableFuture()
+                      .get()
+                      .toArray();
+    }
+
+    private static byte[] concat(byte[]... parts) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            bytes.write(part);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Path temporaryDirectory() {
+        try {
+            return Files.createTempDirectory("local-s3");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
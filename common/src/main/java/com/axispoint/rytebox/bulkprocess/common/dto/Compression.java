@@ -0,0 +1,25 @@
+package com.axispoint.rytebox.bulkprocess.common.dto;
+
+/**
+ * How an export's output files are compressed. Both codecs are written as a series of independently compressed blocks
+ * (gzip members, zstd frames), which the standard tools read as a single stream and which can be concatenated byte-wise,
+ * so iteration files can still be merged as they are.
+ */
+public enum Compression {
+    NONE(""),
+    GZIP(".gz"),
+    ZSTD(".zst");
+
+    private final String extension;
+
+    Compression(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * the file extension to append to output keys, empty for NONE
+     */
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -1,11 +1,20 @@
 package com.axispoint.rytebox.bulkprocess.common.dto;
 
+import static java.util.stream.Collectors.toList;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.Data;
 
@@ -13,16 +22,36 @@ import lombok.Data;
 public class DqiInput implements Reentrant<List<Object>> {
     public static final String DB_CONFIG = "db";
     // TODO: probably need to add ES config as well, but could possibly just be picked up via AWS param store
+    public static final String DEFAULT_CHANGED_FIELD = "updated_at";
+    // how far the high-water mark is set back from the start of the export, to cover docs that were changed just before
+    // it but weren't searchable yet (ES refreshes every second by default) and clock differences with the writers
+    public static final Duration HIGH_WATER_MARK_LAG = Duration.ofMinutes(1);
 
     private String processId = UUID.randomUUID().toString();
     private String outputBucket = "bulkdata.dev.rytebox.net";
     private String indexName;
     private ObjectNode esQuery;
+    // more than one slice needs Elasticsearch 7.15+, the first to slice a search under a point in time
+    private int slices = 1;
+    private boolean usePointInTime = false;
+    private Compression compression = Compression.NONE;
+    // a delta export only exports the docs whose changedField is at or after the high-water mark of its base export
+    private String baseProcessId;
+    private String changedField = DEFAULT_CHANGED_FIELD;
+    private String changedSince;
+    private String highWaterMark;
 
     private int iteration = 0;
     private boolean isDone = false;
     private List<Object> continuation;
+    private PointInTime pointInTime;
+    // the output file's upload when the export writes a single file across iterations, rather than one per iteration
+    private MultipartUploadState upload;
+    // what was read but not processed when the last iteration stopped, to be replayed ahead of the search
+    private String carryOverKey;
+    private TimeBudget timeBudget;
     private String exceptionMessage;
+    private IterationMetrics metrics;
     private Map<String, ObjectNode> config;
 
     public static DqiInput of(String outputBucket, String processId, String indexName, ObjectNode esQuery, Map<String, ObjectNode> config) {
@@ -35,6 +64,41 @@ public class DqiInput implements Reentrant<List<Object>> {
         return input;
     }
 
+    @JsonIgnore
+    public boolean isDelta() {
+        return baseProcessId != null;
+    }
+
+    /**
+     * called by the first iteration before it searches: sets the high-water mark this export will leave for a delta
+     * based on it, and has a delta export pick up from its base's (as read from the base's manifest)
+     */
+    public void begin(Instant startedAt, Optional<ExportManifest> base) {
+        if (isDelta()) {
+            ExportManifest manifest = base.orElseThrow(() -> new IllegalStateException("delta export " + processId + " has no manifest of its base " + baseProcessId));
+            if (manifest.getHighWaterMark() == null) {
+                throw new IllegalStateException("base export " + baseProcessId + " left no high-water mark to pick up from");
+            }
+            changedSince = manifest.getHighWaterMark();
+        }
+        highWaterMark = startedAt.minus(HIGH_WATER_MARK_LAG).truncatedTo(ChronoUnit.MILLIS).toString();
+    }
+
+    /**
+     * the esQuery, restricted to the docs changed since the base's high-water mark for a delta export
+     */
+    @JsonIgnore
+    public ObjectNode getSearchQuery() {
+        if (changedSince == null) {
+            return esQuery;
+        }
+        ObjectNode query = JsonNodeFactory.instance.objectNode();
+        ObjectNode bool = query.putObject("bool");
+        bool.putArray("must").add(esQuery);
+        bool.putArray("filter").addObject().putObject("range").putObject(changedField).put("gte", changedSince);
+        return query;
+    }
+
     @Override
     public boolean isDone() {
         return isDone;
@@ -54,6 +118,44 @@ public class DqiInput implements Reentrant<List<Object>> {
         return this;
     }
 
+    /**
+     * an unsliced export keeps the searchAfter terms as its continuation, while a sliced export keeps a list holding the
+     * searchAfter terms of each slice (null for a slice that hasn't emitted anything yet)
+     */
+    @JsonIgnore
+    public List<Optional<Object[]>> getSliceContinuations() {
+        if (continuation == null) {
+            return Collections.nCopies(Math.max(slices, 1), Optional.empty());
+        }
+        if (slices <= 1) {
+            return List.of(Optional.of(continuation.toArray()));
+        }
+        return continuation.stream()
+                           .map(c -> Optional.ofNullable((List<?>) c).map(List::toArray))
+                           .collect(toList());
+    }
+
+    public Reentrant<List<Object>> completeSlicedIteration(boolean isDone, List<Object[]> sliceSearchAfter, String exceptionMessage) {
+        return completeSlicedIteration(isDone, sliceSearchAfter, null, exceptionMessage);
+    }
+
+    /**
+     * completes the iteration along with the point in time the export is paging through, which must be passed back in to
+     * the next iteration's search. Once the export is done the PIT is closed and no longer kept.
+     */
+    public Reentrant<List<Object>> completeSlicedIteration(boolean isDone,
+                                                           List<Object[]> sliceSearchAfter,
+                                                           PointInTime pointInTime,
+                                                           String exceptionMessage) {
+        this.pointInTime = isDone ? null : pointInTime;
+        List<Object> continuation = slices <= 1
+                ? Optional.ofNullable(sliceSearchAfter.get(0)).map(Arrays::asList).orElse(null)
+                : sliceSearchAfter.stream()
+                                  .map(a -> a == null ? null : Arrays.<Object>asList(a))
+                                  .collect(toList());
+        return completeIteration(isDone, continuation, exceptionMessage);
+    }
+
     @JsonIgnore
     public JsonNode getDbConfig() {
         return getConfig().get(DB_CONFIG);
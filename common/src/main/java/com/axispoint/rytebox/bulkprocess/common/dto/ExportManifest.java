@@ -0,0 +1,54 @@
+package com.axispoint.rytebox.bulkprocess.common.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Written as processId/manifest.json once an export completes, telling consumers what the export's files hold and how to
+ * apply them, and telling a later delta export where to pick up from.
+ *
+ *  - a FULL export holds every asset its query matched and replaces whatever a consumer had
+ *  - a DELTA export holds the current rows of every asset changed at or after changedSince (its base's highWaterMark),
+ *    each of which replaces all the rows of that asset from the base and anything applied before it. Deletions aren't
+ *    carried, since a deleted asset is no longer in the index to be exported, so consumers that need them have to take a
+ *    full export now and then.
+ *
+ * Deltas chain: a delta's own highWaterMark is where the next delta based on it picks up, so consumers apply a FULL
+ * export followed by its deltas in baseProcessId order. An asset changing while an export runs can end up in two
+ * consecutive exports, which applying them in order takes care of.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportManifest {
+    public static final String FILE_NAME = "manifest.json";
+
+    public enum Kind {
+        FULL, DELTA
+    }
+
+    private String processId;
+    private Kind kind;
+    private String baseProcessId;
+    private String indexName;
+    private String changedField;
+    private String changedSince;
+    private String highWaterMark;
+    private Compression compression;
+    private List<String> files;
+
+    public static ExportManifest of(DqiInput export, List<String> files) {
+        return new ExportManifest(export.getProcessId(),
+                                  export.isDelta() ? Kind.DELTA : Kind.FULL,
+                                  export.getBaseProcessId(),
+                                  export.getIndexName(),
+                                  export.isDelta() ? export.getChangedField() : null,
+                                  export.getChangedSince(),
+                                  export.getHighWaterMark(),
+                                  export.getCompression(),
+                                  files);
+    }
+}
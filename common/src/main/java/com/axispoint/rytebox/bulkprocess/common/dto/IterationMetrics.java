@@ -0,0 +1,42 @@
+package com.axispoint.rytebox.bulkprocess.common.dto;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A summary of what one iteration did and how long it spent doing it, returned with the iteration and written to S3 next
+ * to its output so memory and page sizes can be tuned from real runs.
+ *
+ * Metric names carry their unit (e.g. es.took.millis). gc and heap figures are for the whole JVM over the iteration,
+ * heapPeakBytes being the highest heap usage sampled while the iteration was recording metrics.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IterationMetrics {
+    private int iteration;
+    private long elapsedMillis;
+    private double docsPerSecond;
+    private Map<String, Long> counters;
+    private Map<String, Latency> latencies;
+    private long gcCount;
+    private long gcMillis;
+    private long heapUsedBytes;
+    private long heapPeakBytes;
+    private long heapMaxBytes;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Latency {
+        private long count;
+        private double mean;
+        private long p50;
+        private long p90;
+        private long p99;
+        private long max;
+    }
+}
@@ -0,0 +1,37 @@
+package com.axispoint.rytebox.bulkprocess.common.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An S3 multipart upload that is kept open across iterations, so an export can write straight to its final file instead
+ * of merging iteration files at the end.
+ *
+ * Every part but the last has to be at least 5MB, so whatever an iteration has left over that's too small for a part of
+ * its own is written to the tailKey object, and prepended to the data of the next iteration (or uploaded as the last
+ * part once the export is done). Tail keys are never reused, so an iteration that times out can be rerun from the same
+ * state: it uploads the same part numbers again, which S3 simply replaces.
+ *
+ * Only the number of the next part is kept, not the parts themselves, so the state stays the same size however big the
+ * upload gets. The parts are listed from S3 when the upload is completed.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MultipartUploadState {
+    private String bucket;
+    private String key;
+    private String uploadId;
+    private int nextPartNumber = 1;
+    private String tailKey;
+
+    /**
+     * nothing has been written to the upload yet
+     */
+    @JsonIgnore
+    public boolean isEmpty() {
+        return nextPartNumber == 1 && tailKey == null;
+    }
+}
@@ -0,0 +1,18 @@
+package com.axispoint.rytebox.bulkprocess.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An open ES point in time that an export pages through, carried between iterations so every iteration searches the
+ * same snapshot of the index. keepAlive is an ES time value (e.g. 5m) and only needs to cover the gap between two
+ * consecutive page requests, since ES extends it on every search.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PointInTime {
+    private String id;
+    private String keepAlive;
+}
@@ -0,0 +1,25 @@
+package com.axispoint.rytebox.bulkprocess.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * What an iteration learned about its timing, carried to the next iteration so it can budget its time from the start.
+ *
+ * An element's time is the full cycle from one pull to the next, so it covers fetching a page as well as everything
+ * downstream does with it, and is tracked as an exponentially weighted mean and mean deviation. finalizationMillis is
+ * how long the work after the stream (flushing, uploading, completing the iteration) took, which only the caller can
+ * measure and set.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimeBudget {
+    private long elements;
+    private double elementMillis;
+    private double elementMillisDeviation;
+    private long maxElementMillis;
+    private long finalizationMillis;
+    private boolean timedOut;
+}
@@ -1,23 +1,43 @@
 package com.axispoint.rytebox.bulkprocess.common.config;
 
-import static java.util.Comparator.comparing;
-import static java.util.stream.Collectors.collectingAndThen;
-import static java.util.stream.Collectors.toCollection;
+import static java.util.stream.Collectors.toList;
 
-import java.util.Collection;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.TreeSet;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement;
 import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagementClientBuilder;
 import com.amazonaws.services.simplesystemsmanagement.model.GetParametersByPathRequest;
 import com.amazonaws.services.simplesystemsmanagement.model.GetParametersByPathResult;
-import com.amazonaws.services.simplesystemsmanagement.model.Parameter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.microprofile.config.spi.ConfigSource;
 
@@ -27,6 +47,15 @@ import org.eclipse.microprofile.config.spi.ConfigSource;
     We can't use the spring cloud lib in quarkus, but this class mimics the behavior of prioritizing application_uat/ configs over application/ configs
     and dqi-export_uat/ configs over application_uat/ configs
 
+    The paths are fetched concurrently (the pages of a path have to be fetched one after the other, each needing the
+    previous page's token), and what was fetched is kept as a snapshot in /tmp. A container that's re-initialized within
+    snapshotTtl, or a second config source in the same container, reads the snapshot instead of calling SSM. The snapshot
+    keeps each param's version, so a refresh logs which params changed.
+
+    The snapshot holds decrypted values, so it's kept in a directory of its own that only this user can access, and
+    neither is used unless it's owned by this user, accessible by nobody else and not a symlink. Anything else in their
+    place (e.g. planted by another user of a shared /tmp) means SSM is called every time.
+
     TODO: look into config-dependent vars... e.g. /config/application/auth0.audience = https://${ENVIRONMENT_NAME}.rytebox.net requires evaluation of ENVIRONMENT_NAME
     TODO: (related to above) look into smallrye ConfigSourceFactory to inject config arguments into a config source
           https://github.com/smallrye/smallrye-config/blob/47ffb8e626d9c5122cab4c4fe46c0b85b28d2052/doc/modules/ROOT/pages/config-sources/config-sources.adoc#config-source-factory
@@ -35,14 +64,45 @@ import org.eclipse.microprofile.config.spi.ConfigSource;
 
 @Slf4j
 public class AwsParamStoreConfig implements ConfigSource {
-    private final String AWS_REGION =  Optional.ofNullable(System.getenv("AWS_REGION")).orElse("us-east-1");
-    private final List<String> ssmPaths= List.of("/config/application", "/config/application_" +
-            Optional.ofNullable(System.getenv("ENVIRONMENT_NAME")).orElse("dev"));
+    public static final Duration DEFAULT_SNAPSHOT_TTL = Duration.ofMinutes(15);
 
-    public final Map<String, String> ssm = fetchSsmProperties();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Set<PosixFilePermission> OTHERS_ACCESS = Set.of(PosixFilePermission.GROUP_READ,
+                                                                         PosixFilePermission.GROUP_WRITE,
+                                                                         PosixFilePermission.GROUP_EXECUTE,
+                                                                         PosixFilePermission.OTHERS_READ,
+                                                                         PosixFilePermission.OTHERS_WRITE,
+                                                                         PosixFilePermission.OTHERS_EXECUTE);
 
+    private final List<String> ssmPaths;
+    private final Path snapshotFile;
+    private final Duration snapshotTtl;
     private AWSSimpleSystemsManagement ssmClient;
 
+    public final Map<String, String> ssm;
+
+    public AwsParamStoreConfig() {
+        this(null,
+             List.of("/config/application",
+                     "/config/application_" + Optional.ofNullable(System.getenv("ENVIRONMENT_NAME")).orElse("dev")),
+             Paths.get(System.getProperty("java.io.tmpdir")),
+             DEFAULT_SNAPSHOT_TTL);
+    }
+
+    /**
+     * @param ssmClient   the client to fetch with, or null to build one for AWS_REGION if SSM has to be called
+     * @param snapshotDir where the snapshot's own directory is made
+     * @param snapshotTtl how long a snapshot is used for, ZERO to always fetch from SSM
+     */
+    public AwsParamStoreConfig(AWSSimpleSystemsManagement ssmClient, List<String> ssmPaths, Path snapshotDir, Duration snapshotTtl) {
+        this.ssmClient = ssmClient;
+        this.ssmPaths = ssmPaths;
+        this.snapshotFile = snapshotDir.resolve("aws-paramstore-" + System.getProperty("user.name"))
+                                       .resolve(Integer.toHexString(ssmPaths.hashCode()) + ".json");
+        this.snapshotTtl = snapshotTtl;
+        this.ssm = loadSsmProperties();
+    }
+
     @Override
     public Map<String, String> getProperties() {
         return ssm;
@@ -58,54 +118,160 @@ public class AwsParamStoreConfig implements ConfigSource {
         return "aws-paramstore-source";
     }
 
-    private Map<String, String> fetchSsmProperties() {
-        System.out.println("getting ssmPaths = " +  ssmPaths);
-        if (ssm != null) {
-            return ssm;
+    private Map<String, String> loadSsmProperties() {
+        Optional<Snapshot> snapshot = readSnapshot();
+        if (snapshot.isPresent() && System.currentTimeMillis() - snapshot.get().getFetchedAt() < snapshotTtl.toMillis()) {
+            log.info("using AWS parameter store snapshot {} of {}", snapshotFile, ssmPaths);
+            return Collections.unmodifiableMap(snapshot.get().getProperties());
         }
 
+        Snapshot fetched = fetchSsmProperties();
+        snapshot.ifPresent(previous -> logChanges(previous, fetched));
+        writeSnapshot(fetched);
+        return Collections.unmodifiableMap(fetched.getProperties());
+    }
+
+    private Snapshot fetchSsmProperties() {
         if (ssmClient == null) {
             ssmClient = AWSSimpleSystemsManagementClientBuilder
                     .standard()
                     .withCredentials(new DefaultAWSCredentialsProviderChain())
-                    .withRegion(AWS_REGION)
+                    .withRegion(Optional.ofNullable(System.getenv("AWS_REGION")).orElse("us-east-1"))
                     .build();
         }
 
-        log.info("fetching AWS parameter store properties...");
+        log.info("fetching AWS parameter store properties in {}...", ssmPaths);
+        long startedAt = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(ssmPaths.size());
+        try {
+            List<CompletableFuture<List<RankedParam>>> fetches = ssmPaths.stream()
+                                                                         .map(path -> CompletableFuture.supplyAsync(() -> getParameters(path), executor))
+                                                                         .collect(toList());
 
-        return filterByPriority(
-                ssmPaths.stream()
-                    .map(this::buildConfigRequest)
-                    .flatMap(this::getParameters)
-                    .map(RankedParam::of)
-                )
-                .collect(Collectors.toMap(RankedParam::getParamName, RankedParam::getValue));
+            // a param's value is that of its highest priority (lowest number) path, the first path listed winning a tie
+            Map<String, RankedParam> merged = new HashMap<>();
+            for (CompletableFuture<List<RankedParam>> fetch : fetches) {
+                for (RankedParam param : fetch.join()) {
+                    merged.merge(param.getParamName(), param, (kept, other) -> other.getPriority() < kept.getPriority() ? other : kept);
+                }
+            }
+
+            Map<String, String> properties = new HashMap<>();
+            Map<String, Long> versions = new HashMap<>();
+            merged.values().forEach(param -> {
+                properties.put(param.getParamName(), param.getValue());
+                versions.put(param.getName(), param.getVersion());
+            });
+            log.info("fetched {} AWS parameter store properties in {}ms", properties.size(), System.currentTimeMillis() - startedAt);
+            return new Snapshot(startedAt, ssmPaths, properties, versions);
+        } finally {
+            executor.shutdown();
+        }
     }
 
-    private GetParametersByPathRequest buildConfigRequest(String path) {
+    private List<RankedParam> getParameters(String path) {
         log.info("fetching SSM parameters in: {}", path);
-        return new GetParametersByPathRequest()
-                    .withPath(path)
-                    .withRecursive(true)
-                    .withWithDecryption(true);
+        GetParametersByPathRequest request = new GetParametersByPathRequest()
+                .withPath(path)
+                .withRecursive(true)
+                .withWithDecryption(true);
+
+        List<RankedParam> params = new ArrayList<>();
+        String nextToken = null;
+        do {
+            GetParametersByPathResult result = ssmClient.getParametersByPath(request.withNextToken(nextToken));
+            result.getParameters().stream().map(RankedParam::of).forEach(params::add);
+            nextToken = result.getNextToken();
+        } while (nextToken != null);
+        return params;
     }
 
-    private Stream<Parameter> getParameters(GetParametersByPathRequest request) {
-        GetParametersByPathResult result = ssmClient.getParametersByPath(request);
-        Stream<Parameter> params = result.getParameters().stream();
+    private Optional<Snapshot> readSnapshot() {
+        if (snapshotTtl.isZero() || !Files.exists(snapshotFile, LinkOption.NOFOLLOW_LINKS)) {
+            return Optional.empty();
+        }
+        if (!isPrivate(snapshotFile.getParent(), true) || !isPrivate(snapshotFile, false)) {
+            log.warn("ignoring AWS parameter store snapshot {}, which isn't private to this user", snapshotFile);
+            return Optional.empty();
+        }
+        try (InputStream in = Files.newInputStream(snapshotFile, LinkOption.NOFOLLOW_LINKS)) {
+            Snapshot snapshot = MAPPER.readValue(in, Snapshot.class);
+            return Optional.of(snapshot).filter(s -> ssmPaths.equals(s.getPaths()));
+        } catch (IOException e) {
+            log.warn("ignoring unreadable AWS parameter store snapshot {}: {}", snapshotFile, e.getMessage());
+            return Optional.empty();
+        }
+    }
 
-        if (result.getNextToken() != null) {
-            Stream.concat(params, getParameters(request.withNextToken(result.getNextToken())));
+    /**
+     * written to a temp file and moved into place, so a snapshot being written is never read half way
+     */
+    private void writeSnapshot(Snapshot snapshot) {
+        if (snapshotTtl.isZero()) {
+            return;
+        }
+        Path dir = snapshotFile.getParent();
+        try {
+            try {
+                Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } catch (FileAlreadyExistsException e) {
+                // made by an earlier snapshot, if it's ours
+            }
+            if (!isPrivate(dir, true)) {
+                log.warn("not writing AWS parameter store snapshot, {} isn't private to this user", dir);
+                return;
+            }
+            Path temp = Files.createTempFile(dir,
+                                             snapshotFile.getFileName().toString(),
+                                             ".tmp",
+                                             PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            MAPPER.writeValue(temp.toFile(), snapshot);
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("failed to write AWS parameter store snapshot {}, SSM will be called again next time: {}", snapshotFile, e.getMessage());
         }
+    }
 
-        return params;
+    /**
+     * whether path is a directory (or a regular file) that's not a symlink, owned by this user and not accessible by
+     * anyone else
+     */
+    static boolean isPrivate(Path path, boolean directory) {
+        try {
+            PosixFileAttributes attributes = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            UserPrincipal user = FileSystems.getDefault()
+                                            .getUserPrincipalLookupService()
+                                            .lookupPrincipalByName(System.getProperty("user.name"));
+            return (directory ? attributes.isDirectory() : attributes.isRegularFile())
+                    && attributes.owner().equals(user)
+                    && Collections.disjoint(attributes.permissions(), OTHERS_ACCESS);
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
     }
 
-    private Stream<RankedParam> filterByPriority(Stream<RankedParam> params) {
-        return params
-                .sorted(comparing(RankedParam::getPriority))
-                .collect(collectingAndThen(toCollection(() -> new TreeSet<>(comparing(RankedParam::getParamName))), Collection::stream));
+    private void logChanges(Snapshot previous, Snapshot fetched) {
+        Map<String, Long> changed = new LinkedHashMap<>();
+        fetched.getVersions().forEach((name, version) -> {
+            if (!Objects.equals(previous.getVersions().get(name), version)) {
+                changed.put(name, version);
+            }
+        });
+        if (!changed.isEmpty()) {
+            log.info("AWS parameter store params changed since the last snapshot: {}", changed);
+        }
     }
 
-}
\ No newline at end of file
+    /**
+     * the merged properties as of fetchedAt (epoch millis), with the version of every param that went into them
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Snapshot {
+        private long fetchedAt;
+        private List<String> paths;
+        private Map<String, String> properties;
+        private Map<String, Long> versions;
+    }
+}
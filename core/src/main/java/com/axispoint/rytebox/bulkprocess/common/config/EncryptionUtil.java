@@ -2,7 +2,12 @@ package com.axispoint.rytebox.bulkprocess.common.config;
 
 import java.security.GeneralSecurityException;
 import java.security.spec.KeySpec;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
@@ -11,29 +16,112 @@ import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 
 import com.google.common.base.Charsets;
-import lombok.RequiredArgsConstructor;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.Value;
 
-@RequiredArgsConstructor
+/**
+ * Decrypts the AES/CBC encrypted secrets (e.g. tenant db passwords) with a key derived from secretKey and salt.
+ *
+ * Deriving the key (PBKDF2, 65536 iterations) is what a decrypt used to spend its time on, so keys are derived once per
+ * (secretKey, salt) and cached for the life of the container, like the db pools, and each thread keeps its own Cipher
+ * initialized with that key. Decrypted values are cached for up to cacheTtl, at most cacheSize of them, a cacheSize of
+ * 0 turning that off.
+ */
 public class EncryptionUtil {
+    public static final int DEFAULT_CACHE_SIZE = 256;
+    public static final Duration DEFAULT_CACHE_TTL = Duration.ofMinutes(15);
+
+    private static final String KEY_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String CIPHER_TRANSFORMATION = "AES/CBC/PKCS5PADDING";
+    private static final int KEY_ITERATIONS = 65536;
+    private static final int KEY_LENGTH = 256;
+
+    private static final Map<KeyId, SecretKeySpec> KEYS = new ConcurrentHashMap<>();
 
     private final String secretKey;
     private final String salt;
-    private final  String ivString;
+    private final String ivString;
+    private final ThreadLocal<Cipher> ciphers = new ThreadLocal<>();
+    private final Cache<String, String> decrypted;
+
+    public EncryptionUtil(String secretKey, String salt, String ivString) {
+        this(secretKey, salt, ivString, DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL);
+    }
 
+    public EncryptionUtil(String secretKey, String salt, String ivString, int cacheSize, Duration cacheTtl) {
+        this.secretKey = secretKey;
+        this.salt = salt;
+        this.ivString = ivString;
+        this.decrypted = CacheBuilder.newBuilder()
+                                     .maximumSize(cacheSize)
+                                     .expireAfterWrite(cacheTtl)
+                                     .build();
+    }
 
     public String decrypt(String strToDecrypt) throws GeneralSecurityException {
-        //try
-        {
-            byte[] iv = ivString.getBytes(Charsets.UTF_8);
-            IvParameterSpec ivspec = new IvParameterSpec(iv);
+        String cached = decrypted.getIfPresent(strToDecrypt);
+        if (cached != null) {
+            return cached;
+        }
+
+        byte[] encrypted = Base64.getDecoder().decode(strToDecrypt);
+        Cipher cipher = cipher();
+        byte[] plain;
+        try {
+            plain = cipher.doFinal(encrypted);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            // a failed doFinal can leave the cipher part way through, the next decrypt on this thread gets a fresh one
+            ciphers.remove();
+            throw e;
+        }
+        String value = new String(plain);
+        decrypted.put(strToDecrypt, value);
+        return value;
+    }
+
+    /**
+     * decrypts each of the values in turn with this thread's cipher, in the order given
+     */
+    public List<String> decryptAll(List<String> strsToDecrypt) throws GeneralSecurityException {
+        List<String> values = new ArrayList<>(strsToDecrypt.size());
+        for (String str : strsToDecrypt) {
+            values.add(decrypt(str));
+        }
+        return values;
+    }
 
-            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-            KeySpec spec = new PBEKeySpec(secretKey.toCharArray(), salt.getBytes(), 65536, 256);
+    /**
+     * the cipher is left initialized for decrypting: doFinal resets it to that state when it's done, so it's only
+     * initialized once per thread
+     */
+    private Cipher cipher() throws GeneralSecurityException {
+        Cipher cipher = ciphers.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key(), new IvParameterSpec(ivString.getBytes(Charsets.UTF_8)));
+            ciphers.set(cipher);
+        }
+        return cipher;
+    }
+
+    private SecretKeySpec key() throws GeneralSecurityException {
+        KeyId id = new KeyId(secretKey, salt);
+        SecretKeySpec key = KEYS.get(id);
+        if (key == null) {
+            // derived outside computeIfAbsent, which can't throw a GeneralSecurityException, so two threads may both
+            // derive it the first time
+            SecretKeyFactory factory = SecretKeyFactory.getInstance(KEY_ALGORITHM);
+            KeySpec spec = new PBEKeySpec(secretKey.toCharArray(), salt.getBytes(), KEY_ITERATIONS, KEY_LENGTH);
             SecretKey tmp = factory.generateSecret(spec);
-            SecretKeySpec secretKey = new SecretKeySpec(tmp.getEncoded(), "AES");
+            key = KEYS.computeIfAbsent(id, k -> new SecretKeySpec(tmp.getEncoded(), "AES"));
+        }
+        return key;
+    }
 
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, ivspec);
-            return new String(cipher.doFinal(Base64.getDecoder().decode(strToDecrypt)));        }
+    @Value
+    private static class KeyId {
+        private String secretKey;
+        private String salt;
     }
 }
@@ -10,10 +10,11 @@ import org.apache.commons.lang3.StringUtils;
 public class RankedParam {
     private String name;
     private String value;
+    private Long version;
 
     static RankedParam of(Parameter ssmParam) {
         log.debug("creating param: {} = {}", ssmParam.getName(), ssmParam.getValue());
-        return new RankedParam(ssmParam.getName(), ssmParam.getValue());
+        return new RankedParam(ssmParam.getName(), ssmParam.getValue(), ssmParam.getVersion());
     }
 
     public String getParamName() {
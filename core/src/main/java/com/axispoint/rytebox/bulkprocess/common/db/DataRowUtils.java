@@ -1,30 +1,24 @@
 package com.axispoint.rytebox.bulkprocess.common.db;
 
-import static java.util.stream.Collectors.toList;
-
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
-import io.vavr.Function2;
-import io.vavr.Function3;
-import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.mutiny.sqlclient.Row;
-import lombok.Synchronized;
 import lombok.extern.slf4j.Slf4j;
 
 //import com.axispoint.rytebox.bulkprocess.dqi.models.Asset;
 
 @Slf4j
 public class DataRowUtils {
-    private static Map<Class, Map<String, Integer>> positionMaps = new HashMap<>();
+    private static final Map<Class, Map<String, Integer>> positionMaps = new ConcurrentHashMap<>();
 
     private final Class clazz;
-    private final Function2<Function<String, Integer>, String, Integer> cachedColumnIndex;
+    private final Map<String, Integer> positions;
 
     public static DataRowUtils of(Class clazz) {
         return new DataRowUtils(clazz);
@@ -32,18 +26,32 @@ public class DataRowUtils {
 
     private DataRowUtils(Class clazz) {
         this.clazz = clazz;
-        cachedColumnIndex = Function3.of(this::getColumnIndex).apply(this.clazz);
+        this.positions = positionMaps.computeIfAbsent(clazz, k -> new ConcurrentHashMap<>());
     }
 
     public Integer indexOf(Row row, String colName) {
-        return cachedColumnIndex.apply(row::getColumnIndex, colName);
+        Integer position = positions.get(colName);
+        return position != null ? position : positions.computeIfAbsent(colName, row::getColumnIndex);
     }
 
-    @Synchronized
     public Integer getColumnIndex(Class clazz, Function<String, Integer> sourceColIndex, String name) {
-        return
-                positionMaps.computeIfAbsent(clazz, k -> new HashMap<>())
-                            .computeIfAbsent(name, n -> sourceColIndex.apply(n));
+        Map<String, Integer> classPositions = clazz == this.clazz ? positions : positionMaps.computeIfAbsent(clazz, k -> new ConcurrentHashMap<>());
+        Integer position = classPositions.get(name);
+        return position != null ? position : classPositions.computeIfAbsent(name, sourceColIndex);
+    }
+
+    /**
+     * an index over a fixed set of columns, resolved to their positions from the first row it sees. Rows are then read
+     * by column number (the position of its name here) with a plain array lookup, e.g.
+     *
+     *   ColumnIndex columns = DataRowUtils.of(Asset.class).columns("id", "title");
+     *   ...
+     *   row.getLong(columns.of(row, 0));
+     *
+     * All rows read through one index must come from the same query, so they share the same column layout.
+     */
+    public ColumnIndex columns(String... names) {
+        return new ColumnIndex(this, names);
     }
 
     public  <T> List<T> extractNestedJson(Row row, String colName, Function<JsonObject, T> constructor) {
@@ -57,13 +65,47 @@ public class DataRowUtils {
     public <T> Optional<List<T>> extractNestedJson(String jsonFragment, Function<JsonObject, T> constructor) {
         return
                 Optional.ofNullable(jsonFragment)
-                .map(s -> "["+s+"]")    // unfortunately maria 10.3 only can concat json objects, but can't create a json array
-                .map(JsonArray::new)
-                .map(a -> a.stream()
-                           .map(o -> (JsonObject) o)
-                           .map(constructor)
-                           .collect(toList())
-                );
+                .map(s -> NestedJsonDecoder.decodeJsonObjects(s, constructor));
+    }
+
+    /**
+     * binds the nested objects straight to type with Jackson, skipping the vert.x JsonObject altogether
+     */
+    public <T> List<T> extractNestedJson(Row row, String colName, NestedJsonDecoder<T> decoder) {
+        return decoder.decode(row.getString(indexOf(row, colName)));
+    }
+
+    public static final class ColumnIndex {
+        private final DataRowUtils rowUtils;
+        private final String[] names;
+        // resolving twice is harmless, so racing threads can each publish their own (identical) copy
+        private volatile int[] positions;
+
+        private ColumnIndex(DataRowUtils rowUtils, String[] names) {
+            this.rowUtils = rowUtils;
+            this.names = names.clone();
+        }
+
+        public int of(Row row, int column) {
+            int[] resolved = positions;
+            if (resolved == null) {
+                resolved = resolve(row);
+            }
+            return resolved[column];
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        private int[] resolve(Row row) {
+            int[] resolved = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                resolved[i] = rowUtils.indexOf(row, names[i]);
+            }
+            positions = resolved;
+            return resolved;
+        }
     }
 
     public static <T> Function<JsonObject, T> compose(Function<JsonObject, T> constructor, Consumer<T> setter) {
@@ -1,39 +1,89 @@
 package com.axispoint.rytebox.bulkprocess.common.db;
 
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.vertx.mutiny.mysqlclient.MySQLPool;
+import io.vertx.mutiny.sqlclient.SqlConnection;
 import io.vertx.mysqlclient.MySQLConnectOptions;
 import io.vertx.sqlclient.PoolOptions;
 import lombok.SneakyThrows;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
 import com.axispoint.rytebox.bulkprocess.common.config.EncryptionUtil;
 import com.axispoint.rytebox.bulkprocess.common.dto.DbCredentials;
 
+/**
+ * Holds the MySQL pool for a set of credentials.
+ *
+ * Pools are cached for the life of the container rather than the holder, so the iterations of an export running in the
+ * same warm Lambda container share one pool (and its open connections) instead of each opening their own. A pool is
+ * only cached once it has opened its warm-up connections, and all cached pools are closed when the JVM shuts down.
+ */
 @Slf4j
 public class DbClientHolder {
+    private static final long WARM_UP_TIMEOUT_SECONDS = 10;
+
+    private static final Map<PoolKey, MySQLPool> POOLS = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(DbClientHolder::closeAll, "db-pool-shutdown"));
+    }
 
     private final EncryptionUtil encryptionUtil;
     private final ObjectMapper mapper;
     private final String dbHost;
     private final String dbPort;
+    private final DbPoolSettings poolSettings;
 
     MySQLPool _client = null;
 
     public DbClientHolder(EncryptionUtil encryptionUtil, ObjectMapper mapper, String dbHost, String dbPort) {
+        this(encryptionUtil, mapper, dbHost, dbPort, DbPoolSettings.DEFAULTS);
+    }
+
+    public DbClientHolder(EncryptionUtil encryptionUtil, ObjectMapper mapper, String dbHost, String dbPort, DbPoolSettings poolSettings) {
         this.encryptionUtil = encryptionUtil;
         this.mapper = mapper;
         this.dbHost = dbHost;
         this.dbPort = dbPort;
+        this.poolSettings = poolSettings;
     }
 
     @SneakyThrows
     public void init(JsonNode credentialsJson) {
         DbCredentials credentials = mapper.convertValue(credentialsJson, DbCredentials.class);
-        _client = openPool(credentials);
+        PoolKey key = new PoolKey(dbHost, dbPort, credentials, poolSettings);
+
+        MySQLPool cached = POOLS.get(key);
+        if (cached != null) {
+            log.debug("reusing pool for {}@{}", credentials.getUsername(), dbHost);
+            _client = cached;
+            return;
+        }
+
+        // opened and warmed up outside the map, so a slow connect doesn't hold up the pools of other credentials
+        MySQLPool opened;
+        try {
+            opened = warmUp(openPool(credentials));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("unable to decrypt password for " + credentials.getUsername(), e);
+        }
+        MySQLPool raced = POOLS.putIfAbsent(key, opened);
+        if (raced != null) {
+            opened.close();
+        }
+        _client = raced != null ? raced : opened;
     }
 
     @SneakyThrows
@@ -41,15 +91,75 @@ public class DbClientHolder {
         return _client;
     }
 
+    public DbPoolSettings getPoolSettings() {
+        return poolSettings;
+    }
+
+    public static void closeAll() {
+        POOLS.values().forEach(pool -> {
+            try {
+                pool.close();
+            } catch (RuntimeException e) {
+                log.warn("failed to close pool", e);
+            }
+        });
+        POOLS.clear();
+    }
+
     private MySQLPool openPool(DbCredentials credentials) throws GeneralSecurityException {
         MySQLConnectOptions connectOptions = new MySQLConnectOptions()
                   .setHost(dbHost)
                   .setPort(Integer.valueOf(dbPort))
                   .setDatabase(credentials.getDatabase())
                   .setUser(credentials.getUsername())
-                  .setPassword(encryptionUtil.decrypt(credentials.getEncryptedPassword()));
+                  .setPassword(encryptionUtil.decrypt(credentials.getEncryptedPassword()))
+                  .setCachePreparedStatements(poolSettings.getPreparedStatementCacheSize() > 0)
+                  .setPreparedStatementCacheMaxSize(poolSettings.getPreparedStatementCacheSize())
+                  .setPreparedStatementCacheSqlLimit(poolSettings.getPreparedStatementCacheSqlLimit());
+        connectOptions.setIdleTimeoutUnit(TimeUnit.MILLISECONDS)
+                      .setIdleTimeout((int) poolSettings.getIdleTimeout().toMillis());
 
-        PoolOptions poolOptions = new PoolOptions().setMaxSize(5);
+        PoolOptions poolOptions = new PoolOptions().setMaxSize(poolSettings.getMaxSize())
+                                                   .setMaxWaitQueueSize(poolSettings.getMaxWaitQueueSize());
+        log.info("opening pool of {} connections to {}", poolSettings.getMaxSize(), dbHost);
         return  MySQLPool.pool(connectOptions, poolOptions);
     }
+
+    /**
+     * opens warmUpConnections connections at once and hands them straight back to the pool. A pool that can't open them
+     * is closed rather than cached, so the next invocation tries again instead of inheriting it
+     */
+    private MySQLPool warmUp(MySQLPool pool) {
+        List<CompletableFuture<SqlConnection>> connections = new ArrayList<>();
+        for (int i = 0; i < poolSettings.getWarmUpConnections(); i++) {
+            connections.add(pool.getConnection().subscribeAsCompletionStage());
+        }
+
+        Throwable failure = null;
+        try {
+            CompletableFuture.allOf(connections.toArray(new CompletableFuture<?>[0])).get(WARM_UP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } catch (ExecutionException e) {
+            failure = e.getCause();
+        } catch (TimeoutException e) {
+            failure = e;
+        }
+        connections.forEach(c -> c.thenAccept(SqlConnection::close));
+
+        if (failure != null) {
+            pool.close();
+            throw new IllegalStateException("failed to warm up pool to " + dbHost, failure);
+        }
+        return pool;
+    }
+
+    @Value
+    private static class PoolKey {
+        private String dbHost;
+        private String dbPort;
+        private DbCredentials credentials;
+        private DbPoolSettings settings;
+    }
 }
@@ -0,0 +1,36 @@
+package com.axispoint.rytebox.bulkprocess.common.db;
+
+import java.time.Duration;
+
+import lombok.Value;
+
+/**
+ * How a DbClientHolder sizes and tunes its MySQL pool.
+ *
+ * maxWaitQueueSize bounds the requests waiting on a connection (-1 is unbounded), and idleTimeout closes connections
+ * left unused between invocations of a warm container before MySQL's own wait_timeout drops them. Prepared statements
+ * are cached per connection, up to preparedStatementCacheSize statements of at most preparedStatementCacheSqlLimit
+ * characters of SQL. warmUpConnections are opened as soon as the pool is created, so the first iteration doesn't pay
+ * the connect and auth handshake on its queries.
+ */
+@Value
+public class DbPoolSettings {
+    public static final DbPoolSettings DEFAULTS = new DbPoolSettings(5, -1, Duration.ofMinutes(5), 256, 8192, 5);
+
+    private int maxSize;
+    private int maxWaitQueueSize;
+    private Duration idleTimeout;
+    private int preparedStatementCacheSize;
+    private int preparedStatementCacheSqlLimit;
+    private int warmUpConnections;
+
+    public DbPoolSettings withMaxSize(int maxSize) {
+        return new DbPoolSettings(maxSize, maxWaitQueueSize, idleTimeout, preparedStatementCacheSize,
+                                  preparedStatementCacheSqlLimit, Math.min(warmUpConnections, maxSize));
+    }
+
+    public DbPoolSettings withWarmUpConnections(int warmUpConnections) {
+        return new DbPoolSettings(maxSize, maxWaitQueueSize, idleTimeout, preparedStatementCacheSize,
+                                  preparedStatementCacheSqlLimit, Math.min(warmUpConnections, maxSize));
+    }
+}
@@ -0,0 +1,285 @@
+package com.axispoint.rytebox.bulkprocess.common.db;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import io.vertx.mutiny.sqlclient.Row;
+
+/**
+ * Encodes rows as CSV straight from the Row into a byte buffer, for exports that would otherwise turn every row into a
+ * List of Strings for alpakka's CsvFormatting.format(). The output is byte for byte what that produces with its defaults
+ * for value.toString() of every column (null columns being empty):
+ *
+ *  - fields are comma separated and rows end with CRLF
+ *  - a field is quoted when it contains a quote, a backslash, a comma, a CR or a LF, and within quotes the quote and
+ *    backslash are doubled
+ *  - text is UTF-8, an unpaired surrogate becoming '?' like String.getBytes does
+ *
+ * Integers and java.time dates and times are written digit by digit without going through a String. Anything else
+ * (floating point and decimals included, whose toString isn't worth reproducing) is written from its toString.
+ *
+ * Rows are buffered into chunks of about chunkSize bytes, a chunk being emitted once a row takes it over chunkSize, so
+ * a row is never split across chunks.
+ */
+public class DqiCsvEncoder {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private static final byte DELIMITER = ',';
+    private static final byte QUOTE = '"';
+    private static final byte ESCAPE = '\\';
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+    private final DataRowUtils.ColumnIndex columns;
+    private final int chunkSize;
+
+    public DqiCsvEncoder(DataRowUtils.ColumnIndex columns) {
+        this(columns, DEFAULT_CHUNK_SIZE);
+    }
+
+    public DqiCsvEncoder(DataRowUtils.ColumnIndex columns, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive, got " + chunkSize);
+        }
+        this.columns = columns;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * encodes pages of rows (as MySqlEnrichmentFlow emits them) into chunks, flushing the last partial chunk once
+     * upstream completes
+     */
+    public Flow<List<Row>, ByteString, NotUsed> flow() {
+        return Flow.<List<Row>>create()
+                   .map(Optional::of)
+                   // an empty marker flushes the remainder once upstream completes
+                   .concat(Source.single(Optional.empty()))
+                   .statefulMapConcat(() -> {
+                       Chunks chunks = new Chunks();
+                       return rows -> rows.map(chunks::encode).orElseGet(chunks::rest);
+                   });
+    }
+
+    /**
+     * the buffer of one materialized flow. The array is handed over to the ByteString it's emitted as, so a new one is
+     * only allocated per chunk.
+     */
+    private class Chunks {
+        private byte[] buffer = new byte[chunkSize + chunkSize / 4];
+        private int position;
+
+        List<ByteString> encode(List<Row> rows) {
+            List<ByteString> full = Collections.emptyList();
+            for (Row row : rows) {
+                write(row);
+                if (position >= chunkSize) {
+                    if (full.isEmpty()) {
+                        full = new ArrayList<>(2);
+                    }
+                    full.add(take());
+                }
+            }
+            return full;
+        }
+
+        List<ByteString> rest() {
+            return position > 0 ? List.of(take()) : Collections.emptyList();
+        }
+
+        private ByteString take() {
+            ByteString chunk = ByteString.fromArrayUnsafe(buffer, 0, position);
+            buffer = new byte[buffer.length];
+            position = 0;
+            return chunk;
+        }
+
+        private void write(Row row) {
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    put(DELIMITER);
+                }
+                Object value = row.getValue(columns.of(row, i));
+                if (value != null) {
+                    writeValue(value);
+                }
+            }
+            ensure(2);
+            buffer[position++] = '\r';
+            buffer[position++] = '\n';
+        }
+
+        private void writeValue(Object value) {
+            if (value instanceof String) {
+                writeText((String) value);
+            } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                writeLong(((Number) value).longValue());
+            } else if (value instanceof Boolean) {
+                writeAscii((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof LocalDateTime) {
+                LocalDateTime dateTime = (LocalDateTime) value;
+                if (!writeDate(dateTime.toLocalDate())) {
+                    writeText(dateTime.toString());
+                    return;
+                }
+                put((byte) 'T');
+                writeTime(dateTime.toLocalTime());
+            } else if (value instanceof LocalDate) {
+                if (!writeDate((LocalDate) value)) {
+                    writeText(value.toString());
+                }
+            } else if (value instanceof LocalTime) {
+                writeTime((LocalTime) value);
+            } else {
+                writeText(value.toString());
+            }
+        }
+
+        private void writeText(String text) {
+            int length = text.length();
+            boolean quoted = false;
+            for (int i = 0; i < length && !quoted; i++) {
+                char c = text.charAt(i);
+                quoted = c == QUOTE || c == ESCAPE || c == DELIMITER || c == '\r' || c == '\n';
+            }
+
+            // at most 3 bytes a char (a surrogate pair being 4 bytes for 2 chars), and 2 for a doubled quote or escape
+            ensure(length * 3 + 2);
+            byte[] b = buffer;
+            int p = position;
+            if (quoted) {
+                b[p++] = QUOTE;
+            }
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    if (quoted && (c == QUOTE || c == ESCAPE)) {
+                        b[p++] = (byte) c;
+                    }
+                    b[p++] = (byte) c;
+                } else if (c < 0x800) {
+                    b[p++] = (byte) (0xC0 | (c >> 6));
+                    b[p++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                        int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                        b[p++] = (byte) (0xF0 | (codePoint >> 18));
+                        b[p++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                        b[p++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                        b[p++] = (byte) (0x80 | (codePoint & 0x3F));
+                    } else {
+                        b[p++] = '?';
+                    }
+                } else {
+                    b[p++] = (byte) (0xE0 | (c >> 12));
+                    b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    b[p++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            if (quoted) {
+                b[p++] = QUOTE;
+            }
+            position = p;
+        }
+
+        private void writeLong(long value) {
+            if (value == Long.MIN_VALUE) {
+                writeText(Long.toString(value));
+                return;
+            }
+            ensure(20);
+            if (value < 0) {
+                buffer[position++] = '-';
+                value = -value;
+            }
+            int digits = 1;
+            for (long v = value; v >= 10; v /= 10) {
+                digits++;
+            }
+            for (int p = position + digits - 1; p >= position; p--) {
+                buffer[p] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            position += digits;
+        }
+
+        /**
+         * yyyy-MM-dd as LocalDate.toString writes it, for the years it doesn't give a sign or more digits
+         */
+        private boolean writeDate(LocalDate date) {
+            int year = date.getYear();
+            if (year < 0 || year > 9999) {
+                return false;
+            }
+            ensure(10);
+            writeDigits(year, 4);
+            buffer[position++] = '-';
+            writeDigits(date.getMonthValue(), 2);
+            buffer[position++] = '-';
+            writeDigits(date.getDayOfMonth(), 2);
+            return true;
+        }
+
+        /**
+         * HH:mm[:ss[.SSS|.SSSSSS|.SSSSSSSSS]] as LocalTime.toString writes it, seconds only when there are any and the
+         * fraction in as few groups of three digits as it takes
+         */
+        private void writeTime(LocalTime time) {
+            ensure(18);
+            writeDigits(time.getHour(), 2);
+            buffer[position++] = ':';
+            writeDigits(time.getMinute(), 2);
+            int second = time.getSecond();
+            int nano = time.getNano();
+            if (second > 0 || nano > 0) {
+                buffer[position++] = ':';
+                writeDigits(second, 2);
+                if (nano > 0) {
+                    buffer[position++] = '.';
+                    if (nano % 1_000_000 == 0) {
+                        writeDigits(nano / 1_000_000, 3);
+                    } else if (nano % 1000 == 0) {
+                        writeDigits(nano / 1000, 6);
+                    } else {
+                        writeDigits(nano, 9);
+                    }
+                }
+            }
+        }
+
+        private void writeDigits(int value, int width) {
+            for (int p = position + width - 1; p >= position; p--) {
+                buffer[p] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            position += width;
+        }
+
+        private void writeAscii(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void put(byte b) {
+            ensure(1);
+            buffer[position++] = b;
+        }
+
+        private void ensure(int bytes) {
+            if (position + bytes > buffer.length) {
+                byte[] grown = new byte[Math.max(buffer.length * 2, position + bytes)];
+                System.arraycopy(buffer, 0, grown, 0, position);
+                buffer = grown;
+            }
+        }
+    }
+}
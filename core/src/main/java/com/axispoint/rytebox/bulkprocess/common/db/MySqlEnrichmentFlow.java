@@ -0,0 +1,195 @@
+package com.axispoint.rytebox.bulkprocess.common.db;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import io.vertx.mutiny.mysqlclient.MySQLPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.Tuple;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.search.SearchHit;
+
+import com.axispoint.rytebox.bulkprocess.common.metrics.PipelineMetrics;
+
+/**
+ * Joins pages of ES hits to their MySQL rows.
+ *
+ * Each page is split into batches of at most batchSize ids, and each batch is run as one prepared query with the
+ * sqlTemplate's IDS placeholder replaced by an IN list, e.g.
+ *
+ *   select * from asset where id in (:ids)
+ *
+ * Batches of every page run concurrently, up to parallelism at a time (which should match the pool size so every
+ * connection is kept busy), and are put back together into pages in the order the hits came in. Within a page rows
+ * follow the order of their hits, so the ES sort (and with it the continuation of the export) carries through; hits
+ * without a row are dropped. Short batches are padded by repeating their last id so every query has the same shape and
+ * can share a prepared statement.
+ */
+@Slf4j
+public class MySqlEnrichmentFlow {
+    public static final String IDS = ":ids";
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final MySQLPool pool;
+    private final String sqlTemplate;
+    private final String idColumn;
+    private final Function<SearchHit, Object> idOf;
+    private final int batchSize;
+    private final int parallelism;
+    private final Optional<PipelineMetrics> metrics;
+
+    /**
+     * parallelism is the size of the pool the queries run on, the maxSize of its DbPoolSettings (see
+     * DbClientHolder.getPoolSettings)
+     */
+    public MySqlEnrichmentFlow(MySQLPool pool, String sqlTemplate, String idColumn, int parallelism) {
+        this(pool, sqlTemplate, idColumn, SearchHit::getId, DEFAULT_BATCH_SIZE, parallelism);
+    }
+
+    public MySqlEnrichmentFlow(MySQLPool pool,
+                               String sqlTemplate,
+                               String idColumn,
+                               Function<SearchHit, Object> idOf,
+                               int batchSize,
+                               int parallelism) {
+        this(pool, sqlTemplate, idColumn, idOf, batchSize, parallelism, Optional.empty());
+    }
+
+    private MySqlEnrichmentFlow(MySQLPool pool,
+                                String sqlTemplate,
+                                String idColumn,
+                                Function<SearchHit, Object> idOf,
+                                int batchSize,
+                                int parallelism,
+                                Optional<PipelineMetrics> metrics) {
+        if (!sqlTemplate.contains(IDS)) {
+            throw new IllegalArgumentException("sqlTemplate has no " + IDS + " placeholder: " + sqlTemplate);
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive, got " + parallelism);
+        }
+        this.pool = pool;
+        this.sqlTemplate = sqlTemplate;
+        this.idColumn = idColumn;
+        this.idOf = idOf;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.metrics = metrics;
+    }
+
+    /**
+     * records the latency of every query and the rows returned into metrics
+     */
+    public MySqlEnrichmentFlow withMetrics(PipelineMetrics metrics) {
+        return new MySqlEnrichmentFlow(pool, sqlTemplate, idColumn, idOf, batchSize, parallelism, Optional.of(metrics));
+    }
+
+    public Flow<List<SearchHit>, List<Row>, NotUsed> flow() {
+        String sql = sqlTemplate.replace(IDS, IntStream.range(0, batchSize).mapToObj(i -> "?").collect(joining(",")));
+
+        return Flow.<List<SearchHit>>create()
+                   .mapConcat(this::batches)
+                   .mapAsync(parallelism, batch -> query(sql, batch))
+                   .statefulMapConcat(() -> {
+                       List<Row> pageRows = new ArrayList<>();
+                       return batch -> {
+                           pageRows.addAll(batch.getRows());
+                           if (!batch.isLastOfPage()) {
+                               return Collections.emptyList();
+                           }
+                           List<Row> page = inHitOrder(batch.getPageIds(), pageRows);
+                           pageRows.clear();
+                           return List.of(page);
+                       };
+                   });
+    }
+
+    private List<Batch> batches(List<SearchHit> hits) {
+        List<Object> ids = hits.stream().map(idOf).collect(toList());
+        if (ids.isEmpty()) {
+            return List.of(new Batch(ids, Collections.emptyList(), true, Collections.emptyList()));
+        }
+
+        List<Batch> batches = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            int to = Math.min(ids.size(), from + batchSize);
+            batches.add(new Batch(ids, ids.subList(from, to), to == ids.size(), Collections.emptyList()));
+        }
+        return batches;
+    }
+
+    private CompletionStage<Batch> query(String sql, Batch batch) {
+        if (batch.getIds().isEmpty()) {
+            return CompletableFuture.completedFuture(batch);
+        }
+
+        List<Object> params = new ArrayList<>(batchSize);
+        params.addAll(batch.getIds());
+        Object last = params.get(params.size() - 1);
+        while (params.size() < batchSize) {
+            params.add(last);
+        }
+
+        long startedAt = System.nanoTime();
+        return pool.preparedQuery(sql)
+                   .execute(Tuple.wrap(params))
+                   .map(rowSet -> {
+                       metrics.ifPresent(m -> {
+                           m.recordSince(PipelineMetrics.DB_QUERY_MILLIS, startedAt);
+                           m.increment(PipelineMetrics.DB_ROWS, rowSet.size());
+                       });
+                       List<Row> rows = new ArrayList<>(rowSet.size());
+                       rowSet.forEach(rows::add);
+                       return batch.withRows(rows);
+                   })
+                   .subscribeAsCompletionStage();
+    }
+
+    /**
+     * ids are compared as strings, since ES hands them back as strings whatever the column type is
+     */
+    private List<Row> inHitOrder(List<Object> ids, List<Row> rows) {
+        Map<String, List<Row>> byId = new HashMap<>(rows.size() * 2);
+        for (Row row : rows) {
+            byId.computeIfAbsent(String.valueOf(row.getValue(idColumn)), k -> new ArrayList<>(1)).add(row);
+        }
+
+        List<Row> ordered = new ArrayList<>(rows.size());
+        for (Object id : ids) {
+            List<Row> matches = byId.remove(String.valueOf(id));
+            if (matches != null) {
+                ordered.addAll(matches);
+            }
+        }
+        if (ordered.size() < ids.size()) {
+            log.debug("{} of {} hits had no matching row", ids.size() - ordered.size(), ids.size());
+        }
+        return ordered;
+    }
+
+    @Value
+    private static class Batch {
+        private List<Object> pageIds;
+        private List<Object> ids;
+        private boolean lastOfPage;
+        private List<Row> rows;
+
+        private Batch withRows(List<Row> rows) {
+            return new Batch(pageIds, ids, lastOfPage, rows);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.axispoint.rytebox.bulkprocess.common.db;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Decodes the comma separated JSON objects maria 10.3 produces for nested rows (it can concat JSON objects but can't
+ * build an array of them) straight into their target type.
+ *
+ * The fragment is read as an array through a Reader that adds the brackets around it on the fly, and each element is
+ * bound by a reusable ObjectReader as the parser reaches it, so there's no wrapped copy of the string and no
+ * intermediate tree.
+ */
+public final class NestedJsonDecoder<T> {
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final NestedJsonDecoder<Map<String, Object>> MAPS = new NestedJsonDecoder<>(MAPPER.readerFor(Map.class));
+
+    private final ObjectReader reader;
+
+    private NestedJsonDecoder(ObjectReader reader) {
+        this.reader = reader;
+    }
+
+    public static <T> NestedJsonDecoder<T> of(Class<T> type) {
+        return new NestedJsonDecoder<>(MAPPER.readerFor(type));
+    }
+
+    public static <T> NestedJsonDecoder<T> of(ObjectReader reader) {
+        return new NestedJsonDecoder<>(reader);
+    }
+
+    /**
+     * for types built from a vert.x JsonObject; each object is bound to a map and wrapped, rather than copied
+     */
+    public static <T> List<T> decodeJsonObjects(String jsonFragment, Function<JsonObject, T> constructor) {
+        List<Map<String, Object>> maps = MAPS.decode(jsonFragment);
+        List<T> decoded = new ArrayList<>(maps.size());
+        for (Map<String, Object> map : maps) {
+            decoded.add(constructor.apply(new JsonObject(map)));
+        }
+        return decoded;
+    }
+
+    /**
+     * an empty list for a null or blank fragment
+     */
+    public List<T> decode(String jsonFragment) {
+        if (jsonFragment == null || jsonFragment.isBlank()) {
+            return Collections.emptyList();
+        }
+
+        try (JsonParser parser = reader.getFactory().createParser(new BracketedReader(jsonFragment))) {
+            parser.nextToken(); // the opening bracket
+            List<T> decoded = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                decoded.add(reader.readValue(parser));
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new IllegalArgumentException("expected a JSON object in nested json, got " + parser.currentToken());
+            }
+            return decoded;
+        } catch (IOException e) {
+            throw new UncheckedIOException("invalid nested json", e);
+        }
+    }
+
+    /**
+     * reads a string as if it were wrapped in [ and ]
+     */
+    static final class BracketedReader extends Reader {
+        private final String content;
+        private final int end;
+        // position in the bracketed text, so 0 is the [ and end - 1 is the ]
+        private int position;
+
+        BracketedReader(String content) {
+            this.content = content;
+            this.end = content.length() + 2;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position >= end) {
+                return -1;
+            }
+            int start = offset;
+            int limit = offset + length;
+            if (position == 0 && offset < limit) {
+                buffer[offset++] = '[';
+                position++;
+            }
+            int fromContent = Math.min(limit - offset, content.length() - (position - 1));
+            if (fromContent > 0) {
+                content.getChars(position - 1, position - 1 + fromContent, buffer, offset);
+                offset += fromContent;
+                position += fromContent;
+            }
+            if (position == end - 1 && offset < limit) {
+                buffer[offset++] = ']';
+                position++;
+            }
+            return offset - start;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
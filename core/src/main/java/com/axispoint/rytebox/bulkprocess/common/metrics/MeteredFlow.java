@@ -0,0 +1,73 @@
+package com.axispoint.rytebox.bulkprocess.common.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import org.HdrHistogram.ConcurrentHistogram;
+
+/**
+ * Passes elements through, timing (in micros) how long each one took to arrive after it was pulled, i.e. the wait on
+ * upstream, and how long downstream took to ask for the next one after it was pushed, i.e. the wait on downstream.
+ * Placed between two parts of a pipeline, whichever wait dominates says which side is the bottleneck.
+ */
+public class MeteredFlow<A> extends GraphStage<FlowShape<A, A>> {
+
+    private final Inlet<A> in = Inlet.create("MeteredFlow.in");
+    private final Outlet<A> out = Outlet.create("MeteredFlow.out");
+    private final FlowShape<A, A> shape = FlowShape.of(in, out);
+
+    private final PipelineMetrics metrics;
+    private final String name;
+
+    public MeteredFlow(PipelineMetrics metrics, String name) {
+        this.metrics = metrics;
+        this.name = name;
+    }
+
+    @Override
+    public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+        ConcurrentHistogram upstreamWait = metrics.histogram(name + ".upstream.wait.micros");
+        ConcurrentHistogram downstreamWait = metrics.histogram(name + ".downstream.wait.micros");
+
+        return new GraphStageLogic(shape) {
+            private long pulledAt = 0;
+            private long pushedAt = 0;
+
+            {
+                setHandler(in, new AbstractInHandler() {
+                    @Override
+                    public void onPush() {
+                        long now = System.nanoTime();
+                        upstreamWait.recordValue(TimeUnit.NANOSECONDS.toMicros(now - pulledAt));
+                        pushedAt = now;
+                        push(out, grab(in));
+                    }
+                });
+
+                setHandler(out, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        long now = System.nanoTime();
+                        if (pushedAt > 0) {
+                            downstreamWait.recordValue(TimeUnit.NANOSECONDS.toMicros(now - pushedAt));
+                        }
+                        pulledAt = now;
+                        pull(in);
+                    }
+                });
+            }
+        };
+    }
+
+    @Override
+    public FlowShape<A, A> shape() {
+        return shape;
+    }
+}
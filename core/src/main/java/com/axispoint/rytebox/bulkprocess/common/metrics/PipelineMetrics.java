@@ -0,0 +1,148 @@
+package com.axispoint.rytebox.bulkprocess.common.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import akka.util.ByteString;
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.ConcurrentHistogram;
+
+import com.axispoint.rytebox.bulkprocess.common.dto.IterationMetrics;
+
+/**
+ * The counters and latency histograms of one iteration of an export, which the stages of its pipeline record into.
+ *
+ * Everything is lock-free, so stages and client callbacks can record from any thread; the histograms are HdrHistogram's
+ * ConcurrentHistogram, to 2 significant digits. Create one per iteration (it takes its GC baseline when created) and
+ * summarize it once the stream is done.
+ *
+ * The heap peak is sampled as the iteration records, at most every HEAP_SAMPLE_INTERVAL_NANOS, rather than taken from
+ * the memory pools' peak usage, which is process-wide and would have to be reset by whatever runs the iterations (e.g.
+ * not while other iterations are running in the same process).
+ */
+public class PipelineMetrics {
+    public static final String ES_REQUEST_MILLIS = "es.request.millis";
+    public static final String ES_TOOK_MILLIS = "es.took.millis";
+    public static final String ES_PAGES = "es.pages";
+    public static final String DOCS = "docs";
+    public static final String DB_QUERY_MILLIS = "db.query.millis";
+    public static final String DB_ROWS = "db.rows";
+    public static final String BYTES_WRITTEN = "bytes.written";
+    public static final String BUFFER_SPILLED_BYTES = "buffer.spilled.bytes";
+    public static final String BUFFER_CARRIED_OVER = "buffer.carried.over";
+    public static final String RUNTIME_INIT_COLD_MILLIS = "runtime.init.cold.millis";
+    public static final String RUNTIME_INIT_WARM_MILLIS = "runtime.init.warm.millis";
+    public static final String RUNTIME_REBUILDS = "runtime.rebuilds";
+    static final int SIGNIFICANT_DIGITS = 2;
+    static final long HEAP_SAMPLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentHistogram> histograms = new ConcurrentHashMap<>();
+    private final long startedAt = System.nanoTime();
+    private final long gcCountAtStart = gcCount();
+    private final long gcMillisAtStart = gcMillis();
+    private final AtomicLong heapSampledAt = new AtomicLong(startedAt);
+    private final AtomicLong heapPeak = new AtomicLong(MEMORY.getHeapMemoryUsage().getUsed());
+
+    public LongAdder counter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * values have to be non-negative
+     */
+    public ConcurrentHistogram histogram(String name) {
+        ConcurrentHistogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name, n -> new ConcurrentHistogram(SIGNIFICANT_DIGITS));
+    }
+
+    public void increment(String name, long amount) {
+        counter(name).add(amount);
+        sampleHeap();
+    }
+
+    public void record(String name, long value) {
+        histogram(name).recordValue(Math.max(0, value));
+        sampleHeap();
+    }
+
+    public void recordSince(String name, long startNanos) {
+        record(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * a pass-through stage timing how long name spends waiting on upstream for elements and on downstream for demand
+     */
+    public <A> Flow<A, A, NotUsed> meter(String name) {
+        return Flow.fromGraph(new MeteredFlow<>(this, name));
+    }
+
+    public Flow<ByteString, ByteString, NotUsed> countBytes(String name) {
+        LongAdder counter = counter(name);
+        return Flow.of(ByteString.class).map(bytes -> {
+            counter.add(bytes.size());
+            return bytes;
+        });
+    }
+
+    public IterationMetrics summarize(int iteration) {
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        Map<String, Long> counterValues = new TreeMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.sum()));
+        Map<String, IterationMetrics.Latency> latencies = new TreeMap<>();
+        histograms.forEach((name, histogram) -> latencies.put(name, summarize(histogram)));
+
+        double docsPerSecond = elapsedMillis == 0 ? 0 : counterValues.getOrDefault(DOCS, 0L) * 1000.0 / elapsedMillis;
+        MemoryUsage heap = MEMORY.getHeapMemoryUsage();
+        long peak = heapPeak.accumulateAndGet(heap.getUsed(), Math::max);
+
+        return new IterationMetrics(iteration, elapsedMillis, docsPerSecond, counterValues, latencies,
+                                    gcCount() - gcCountAtStart, gcMillis() - gcMillisAtStart,
+                                    heap.getUsed(), peak, heap.getMax());
+    }
+
+    static IterationMetrics.Latency summarize(AbstractHistogram histogram) {
+        return new IterationMetrics.Latency(histogram.getTotalCount(),
+                                            histogram.getTotalCount() == 0 ? 0 : histogram.getMean(),
+                                            histogram.getValueAtPercentile(50),
+                                            histogram.getValueAtPercentile(90),
+                                            histogram.getValueAtPercentile(99),
+                                            histogram.getMaxValue());
+    }
+
+    // only the thread that wins the interval samples, so recording stays cheap however many threads record
+    private void sampleHeap() {
+        long now = System.nanoTime();
+        long sampledAt = heapSampledAt.get();
+        if (now - sampledAt >= HEAP_SAMPLE_INTERVAL_NANOS && heapSampledAt.compareAndSet(sampledAt, now)) {
+            heapPeak.accumulateAndGet(MEMORY.getHeapMemoryUsage().getUsed(), Math::max);
+        }
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                                .mapToLong(GarbageCollectorMXBean::getCollectionCount)
+                                .filter(c -> c > 0)
+                                .sum();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                                .filter(c -> c > 0)
+                                .sum();
+    }
+}
@@ -0,0 +1,225 @@
+package com.axispoint.rytebox.bulkprocess.common.runtime;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpHost;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.nio.reactor.IOReactorStatus;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import com.axispoint.rytebox.bulkprocess.common.db.DbClientHolder;
+import com.axispoint.rytebox.bulkprocess.common.metrics.PipelineMetrics;
+
+/**
+ * Holds the ActorSystem, Materializer and Elasticsearch client the streams run on for the life of the container, so a
+ * warm invocation reuses them instead of building its own.
+ *
+ * Each is created the first time it's asked for, and checked every time after that: one found terminated or shut down
+ * (an ActorSystem terminated by a failed invocation, or an ES client whose I/O reactor died, which it never recovers
+ * from) is rebuilt, so ask for them on each invocation rather than keeping them. A warm invocation also closes the ES
+ * connections left idle for longer than the keep-alive, which a load balancer may have dropped while the container was
+ * frozen.
+ *
+ * The MySQL pools are already kept for the life of the container by DbClientHolder, and are closed along with the rest
+ * when the runtimes are closed. Runtimes are cached per name, ES hosts and settings, and all of them are closed when the
+ * JVM shuts down.
+ */
+@Slf4j
+public class ContainerRuntime implements AutoCloseable {
+    static final Duration TERMINATION_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final Map<RuntimeKey, ContainerRuntime> RUNTIMES = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(ContainerRuntime::closeAll, "container-runtime-shutdown"));
+    }
+
+    private final String name;
+    private final List<HttpHost> esHosts;
+    private final EsClientSettings esSettings;
+
+    private ActorSystem actorSystem;
+    private Materializer materializer;
+    private RestHighLevelClient esClient;
+    private DefaultConnectingIOReactor esReactor;
+    private PoolingNHttpClientConnectionManager esConnections;
+    private long rebuilds;
+
+    public ContainerRuntime(String name, List<HttpHost> esHosts) {
+        this(name, esHosts, EsClientSettings.DEFAULTS);
+    }
+
+    public ContainerRuntime(String name, List<HttpHost> esHosts, EsClientSettings esSettings) {
+        this.name = name;
+        this.esHosts = esHosts;
+        this.esSettings = esSettings;
+    }
+
+    public static ContainerRuntime of(String name, List<HttpHost> esHosts) {
+        return of(name, esHosts, EsClientSettings.DEFAULTS);
+    }
+
+    /**
+     * the container's runtime for these hosts, created the first time it's asked for
+     */
+    public static ContainerRuntime of(String name, List<HttpHost> esHosts, EsClientSettings esSettings) {
+        return RUNTIMES.computeIfAbsent(new RuntimeKey(name, esHosts, esSettings), k -> new ContainerRuntime(name, esHosts, esSettings));
+    }
+
+    public static void closeAll() {
+        RUNTIMES.values().forEach(ContainerRuntime::close);
+        RUNTIMES.clear();
+        DbClientHolder.closeAll();
+    }
+
+    /**
+     * called at the start of an invocation: gets everything running, rebuilding whatever is broken, and records how long
+     * that took as a cold init when nothing had been built yet, or a warm one when this container had
+     */
+    public synchronized void init(PipelineMetrics metrics) {
+        long started = System.nanoTime();
+        boolean cold = actorSystem == null && esClient == null;
+        long rebuildsBefore = rebuilds;
+
+        getMaterializer();
+        getEsClient();
+
+        long initMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        metrics.record(cold ? PipelineMetrics.RUNTIME_INIT_COLD_MILLIS : PipelineMetrics.RUNTIME_INIT_WARM_MILLIS, initMillis);
+        metrics.increment(PipelineMetrics.RUNTIME_REBUILDS, rebuilds - rebuildsBefore);
+        log.info("{} runtime {} init took {}ms", cold ? "cold" : "warm", name, initMillis);
+    }
+
+    public synchronized ActorSystem getActorSystem() {
+        if (actorSystem != null && actorSystem.whenTerminated().isCompleted()) {
+            log.warn("actor system {} was terminated, rebuilding it", name);
+            actorSystem = null;
+            materializer = null;
+            rebuilds++;
+        }
+        if (actorSystem == null) {
+            actorSystem = ActorSystem.create(name);
+        }
+        return actorSystem;
+    }
+
+    public synchronized Materializer getMaterializer() {
+        ActorSystem system = getActorSystem();
+        if (materializer != null && materializer.isShutdown()) {
+            log.warn("materializer of {} was shut down, rebuilding it", name);
+            materializer = null;
+            rebuilds++;
+        }
+        if (materializer == null) {
+            materializer = Materializer.createMaterializer(system);
+        }
+        return materializer;
+    }
+
+    public synchronized RestHighLevelClient getEsClient() {
+        if (esClient != null) {
+            IOReactorStatus status = esReactor.getStatus();
+            if (status == IOReactorStatus.SHUTTING_DOWN || status == IOReactorStatus.SHUT_DOWN) {
+                log.warn("ES client of {} has its I/O reactor {}, rebuilding it", name, status);
+                closeEsClient();
+                rebuilds++;
+            } else {
+                esConnections.closeExpiredConnections();
+                esConnections.closeIdleConnections(esSettings.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (esClient == null) {
+            try {
+                esClient = buildEsClient();
+            } catch (IOReactorException e) {
+                throw new IllegalStateException("unable to start the I/O reactor of an ES client for " + esHosts, e);
+            }
+        }
+        return esClient;
+    }
+
+    @Override
+    public synchronized void close() {
+        closeEsClient();
+        if (materializer != null) {
+            materializer.shutdown();
+            materializer = null;
+        }
+        if (actorSystem != null) {
+            actorSystem.terminate();
+            try {
+                actorSystem.getWhenTerminated().toCompletableFuture().get(TERMINATION_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                log.warn("actor system {} didn't terminate within {}: {}", name, TERMINATION_TIMEOUT, e.toString());
+            }
+            actorSystem = null;
+        }
+    }
+
+    /**
+     * the client's connection manager and I/O reactor are built here rather than by the RestClientBuilder, so the
+     * reactor's status can be checked and idle connections closed. The pool limits are set on the manager for that
+     * reason, the builder's own being ignored once it's given one.
+     */
+    private RestHighLevelClient buildEsClient() throws IOReactorException {
+        IOReactorConfig reactorConfig = IOReactorConfig.custom()
+                                                       .setConnectTimeout((int) esSettings.getConnectTimeout().toMillis())
+                                                       .setSoTimeout((int) esSettings.getSocketTimeout().toMillis())
+                                                       .setSoKeepAlive(true)
+                                                       .build();
+        DefaultConnectingIOReactor reactor = new DefaultConnectingIOReactor(reactorConfig);
+        PoolingNHttpClientConnectionManager connections = new PoolingNHttpClientConnectionManager(reactor);
+        connections.setMaxTotal(esSettings.getMaxConnTotal());
+        connections.setDefaultMaxPerRoute(esSettings.getMaxConnPerRoute());
+        long keepAliveMillis = esSettings.getKeepAlive().toMillis();
+
+        RestHighLevelClient client = new RestHighLevelClient(
+                RestClient.builder(esHosts.toArray(new HttpHost[0]))
+                          .setRequestConfigCallback(config -> config.setConnectTimeout((int) esSettings.getConnectTimeout().toMillis())
+                                                                    .setSocketTimeout((int) esSettings.getSocketTimeout().toMillis()))
+                          .setHttpClientConfigCallback(builder -> builder.setConnectionManager(connections)
+                                                                         .setKeepAliveStrategy((response, context) -> {
+                                                                             // as long as the server allows, up to keepAlive
+                                                                             long server = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                                                                             return server > 0 ? Math.min(server, keepAliveMillis) : keepAliveMillis;
+                                                                         })));
+        esReactor = reactor;
+        esConnections = connections;
+        log.info("built ES client of {} for {} with {}", name, esHosts, esSettings);
+        return client;
+    }
+
+    private void closeEsClient() {
+        if (esClient != null) {
+            try {
+                esClient.close();
+            } catch (IOException | RuntimeException e) {
+                log.warn("failed to close ES client of {}: {}", name, e.toString());
+            }
+            esClient = null;
+            esReactor = null;
+            esConnections = null;
+        }
+    }
+
+    @Value
+    private static class RuntimeKey {
+        private String name;
+        private List<HttpHost> esHosts;
+        private EsClientSettings esSettings;
+    }
+}
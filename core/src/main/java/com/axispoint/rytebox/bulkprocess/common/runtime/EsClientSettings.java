@@ -0,0 +1,32 @@
+package com.axispoint.rytebox.bulkprocess.common.runtime;
+
+import java.time.Duration;
+
+import lombok.Value;
+
+/**
+ * How a ContainerRuntime sizes and tunes the connections of its Elasticsearch client.
+ *
+ * maxConnPerRoute bounds the requests in flight to one node, so it wants to be at least the number of slices (and of
+ * exports sharing the container) searching at once. Connections are kept alive for at most keepAlive between requests,
+ * less than the idle timeout of the load balancer in front of the cluster, so a connection it dropped while the
+ * container was frozen isn't reused. TCP keep-alive is always on.
+ */
+@Value
+public class EsClientSettings {
+    public static final EsClientSettings DEFAULTS = new EsClientSettings(32, 16, Duration.ofSeconds(5), Duration.ofSeconds(60), Duration.ofSeconds(50));
+
+    private int maxConnTotal;
+    private int maxConnPerRoute;
+    private Duration connectTimeout;
+    private Duration socketTimeout;
+    private Duration keepAlive;
+
+    public EsClientSettings withMaxConnPerRoute(int maxConnPerRoute) {
+        return new EsClientSettings(Math.max(maxConnTotal, maxConnPerRoute), maxConnPerRoute, connectTimeout, socketTimeout, keepAlive);
+    }
+
+    public EsClientSettings withKeepAlive(Duration keepAlive) {
+        return new EsClientSettings(maxConnTotal, maxConnPerRoute, connectTimeout, socketTimeout, keepAlive);
+    }
+}
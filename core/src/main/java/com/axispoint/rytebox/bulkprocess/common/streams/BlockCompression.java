@@ -0,0 +1,98 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import java.nio.ByteOrder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import akka.util.ByteString;
+import akka.util.ByteStringBuilder;
+import com.github.luben.zstd.Zstd;
+
+import com.axispoint.rytebox.bulkprocess.common.dto.Compression;
+
+/**
+ * Compresses a byte stream on a pool of threads by cutting it into blocks and compressing each one on its own, as a
+ * complete gzip member or zstd frame. gzip and zstd readers carry on through concatenated members/frames, so the output
+ * is an ordinary .gz or .zst file, and so are two of them concatenated, which is what lets compressed iteration files be
+ * merged (or resumed into the same upload) without recompressing anything.
+ *
+ * Blocks don't share a dictionary like ParallelZip's do, so the ratio is a little worse than a single stream; with the
+ * default 1MB blocks the difference is negligible. At most parallelism blocks are in flight at once.
+ */
+public final class BlockCompression {
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    // level in the codec's own scale, or DEFAULT_LEVEL for the codec's default
+    public static final int DEFAULT_LEVEL = Integer.MIN_VALUE;
+
+    // magic, deflate, no flags, no mtime, no extra flags, unknown OS
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final ByteOrder LE = ByteOrder.LITTLE_ENDIAN;
+
+    private final Executor executor;
+    private final int parallelism;
+    private final int blockSize;
+    private final int level;
+
+    public BlockCompression(Executor executor) {
+        this(executor, Runtime.getRuntime().availableProcessors(), DEFAULT_BLOCK_SIZE, DEFAULT_LEVEL);
+    }
+
+    public BlockCompression(Executor executor, int parallelism, int blockSize, int level) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be positive, got " + blockSize);
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.blockSize = blockSize;
+        this.level = level;
+    }
+
+    public Flow<ByteString, ByteString, NotUsed> compress(Compression codec) {
+        if (codec == Compression.NONE) {
+            return Flow.of(ByteString.class);
+        }
+        return Flow.of(ByteString.class)
+                   .via(ByteStringFlows.rechunk(blockSize))
+                   .mapAsync(parallelism, block -> CompletableFuture.supplyAsync(() -> compressBlock(codec, block), executor));
+    }
+
+    ByteString compressBlock(Compression codec, ByteString block) {
+        switch (codec) {
+            case GZIP:
+                return gzip(block);
+            case ZSTD:
+                return ByteString.fromArrayUnsafe(Zstd.compress(block.toArray(), level == DEFAULT_LEVEL ? Zstd.defaultCompressionLevel() : level));
+            default:
+                return block;
+        }
+    }
+
+    private ByteString gzip(ByteString block) {
+        byte[] data = block.toArray();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        Deflater deflater = new Deflater(level == DEFAULT_LEVEL ? Deflater.DEFAULT_COMPRESSION : level, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            ByteStringBuilder out = new ByteStringBuilder();
+            out.putBytes(GZIP_HEADER);
+            byte[] buffer = new byte[Math.max(1024, data.length / 2)];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.putBytes(buffer, 0, n);
+            }
+            out.putInt((int) crc.getValue(), LE);
+            out.putInt(data.length, LE);
+            return out.result();
+        } finally {
+            deflater.end();
+        }
+    }
+}
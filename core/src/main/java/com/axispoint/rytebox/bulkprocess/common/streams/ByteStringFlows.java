@@ -0,0 +1,65 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import akka.util.ByteStringBuilder;
+
+public final class ByteStringFlows {
+
+    private ByteStringFlows() {
+    }
+
+    /**
+     * regroups a byte stream into chunks of exactly chunkSize bytes, except for the last one which holds whatever is left
+     * (and isn't emitted at all if nothing is). Incoming chunks are only copied when they straddle a chunk boundary.
+     */
+    public static Flow<ByteString, ByteString, NotUsed> rechunk(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive, got " + chunkSize);
+        }
+
+        return Flow.of(ByteString.class)
+                   .map(Optional::of)
+                   // an empty marker flushes the remainder once upstream completes
+                   .concat(Source.single(Optional.empty()))
+                   .statefulMapConcat(() -> {
+                       ByteStringBuilder pending = new ByteStringBuilder();
+                       return bytes -> {
+                           if (bytes.isEmpty()) {
+                               return pending.length() > 0 ? List.of(pending.result()) : Collections.emptyList();
+                           }
+                           return cut(pending, bytes.get(), chunkSize);
+                       };
+                   });
+    }
+
+    private static List<ByteString> cut(ByteStringBuilder pending, ByteString bytes, int chunkSize) {
+        if (pending.length() + bytes.size() < chunkSize) {
+            pending.append(bytes);
+            return Collections.emptyList();
+        }
+
+        List<ByteString> chunks = new ArrayList<>();
+        ByteString rest = bytes;
+        if (pending.length() > 0) {
+            int fill = chunkSize - pending.length();
+            pending.append(rest.take(fill));
+            chunks.add(pending.result());
+            pending.clear();
+            rest = rest.drop(fill);
+        }
+        while (rest.size() >= chunkSize) {
+            chunks.add(rest.take(chunkSize));
+            rest = rest.drop(chunkSize);
+        }
+        pending.append(rest);
+        return chunks;
+    }
+}
@@ -0,0 +1,218 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import akka.japi.Pair;
+import akka.stream.Attributes;
+import akka.stream.Outlet;
+import akka.stream.SourceShape;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.AsyncCallback;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.GraphStageLogicWithLogging;
+import akka.stream.stage.GraphStageWithMaterializedValue;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import scala.Tuple2;
+
+/**
+ * A lighter-weight alternative to ElasticSearchSource for when only the ids are needed. Same search_after paging and
+ * same re-entrant SearchCursor, but built on the low level RestClient: filter_path trims the response down to the ids
+ * and sort values, and the response is streamed straight into IdBatches rather than parsed into SearchHits. A numeric
+ * id costs one slot in a long[] and nothing else.
+ *
+ * idField is a field with docvalues holding the id (the same one we sort by by default). When it's null the _id is
+ * used instead, which needs no docvalues but is always returned as a string by ES.
+ *
+ * Unlike ElasticSearchSource this doesn't support slicing or points in time, it prefetches a single page.
+ */
+@Slf4j
+public class ElasticIdSource extends GraphStageWithMaterializedValue<SourceShape<IdBatch>, CompletionStage<SearchCursor>> {
+    public static final String DEFAULT_ID_FIELD = "id";
+
+    private final Outlet<IdBatch> out = Outlet.create("ElasticIdSource.out");
+    private final SourceShape<IdBatch> shape = SourceShape.of(out);
+
+    private final RestClient esClient;
+    private final String indexName;
+    private final ObjectNode query;
+    private final Optional<Object[]> startingSearchAfter;
+    private final int pageSize;
+    private final String idField;
+    private final List<Pair<String, Optional<SortOrder>>> sort;
+
+    public ElasticIdSource(RestClient esClient,
+                           String indexName,
+                           ObjectNode query,
+                           Optional<Object[]> searchAfter,
+                           int pageSize,
+                           Optional<String> idField,
+                           Optional<List<Pair<String, Optional<SortOrder>>>> sort) {
+        this.esClient = esClient;
+        this.indexName = indexName;
+        this.query = query;
+        this.startingSearchAfter = searchAfter;
+        this.pageSize = pageSize;
+        this.idField = idField.orElse(null);
+        this.sort = sort.orElse(ElasticSearchSource.DEFAULT_SORT);
+    }
+
+    @Override
+    public Tuple2<GraphStageLogic, CompletionStage<SearchCursor>> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+
+        if (pageSize <= 0 || pageSize > PagingSettings.MAX_RESULT_WINDOW) throw new IllegalArgumentException("pageSize ("+pageSize+") must be between 0 and " + PagingSettings.MAX_RESULT_WINDOW);
+        if (StringUtils.isBlank(indexName)) throw new IllegalArgumentException("indexName is required");
+
+        CompletableFuture<SearchCursor> mat = new CompletableFuture<>();
+
+        GraphStageLogic logic = new GraphStageLogicWithLogging(shape()) {
+
+            // stateful stream properties... mutable state should only exist within the GraphStageLogic anonymous class
+            private Object[] searchAfter = startingSearchAfter.orElse(null);
+            private Object[] fetchAfter = searchAfter;
+            private final String queryText = ElasticSearchSource.parseQuery(query);
+            private final IdPageParser parser = new IdPageParser(idField);
+            private Optional<IdBatch> dataReady = Optional.empty();
+            private boolean waitingForEsResponse = false;
+            private boolean pullIsWaitingForData = false;
+            private boolean fetchedAll = false;
+            private long pagesCt = 0L;
+            private long processedCt = 0L;
+            private long esTookMillis = 0L;
+
+            private AsyncCallback<Pair<Optional<IdBatch>, Long>> searchCallback;
+            private AsyncCallback<Exception> searchErrorCallback;
+            private final ResponseListener responseListener = new ResponseListener() {
+                // !! called by the ES client outside the context of the akka stream, so it only parses the response
+                //      (one at a time, as there is never more than one request in flight) and hands it back to akka
+                //      via an AsyncCallback
+                @Override
+                public void onSuccess(Response response) {
+                    try {
+                        Optional<IdBatch> batch = Optional.ofNullable(parser.parse(response.getEntity().getContent()));
+                        searchCallback.invoke(Pair.create(batch, parser.tookMillis()));
+                    } catch (Exception e) {
+                        searchErrorCallback.invoke(e);
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    searchErrorCallback.invoke(e);
+                }
+            };
+
+            {
+                setHandler(out, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() throws Exception {
+                        doPull();
+                    }
+                });
+            }
+
+            @Override
+            public void preStart() {
+                searchCallback = createAsyncCallback(this::handleResponse);
+                searchErrorCallback = createAsyncCallback(this::failStage);
+            }
+
+            @Override
+            public void postStop() {
+                boolean exhausted = fetchedAll && dataReady.isEmpty() && !waitingForEsResponse;
+                PagingStats stats = new PagingStats(pagesCt, processedCt, pageSize, pageSize, pageSize, esTookMillis,
+                                                    dataReady.isPresent() ? 1 : 0, 1);
+                mat.complete(new SearchCursor(Arrays.<Object[]>asList(searchAfter), null, exhausted, stats));
+            }
+
+            private void handleResponse(Pair<Optional<IdBatch>, Long> result) {
+                waitingForEsResponse = false;
+                pagesCt++;
+                esTookMillis += result.second();
+
+                if (result.first().isEmpty()) {
+                    log.debug("completing stage");
+                    fetchedAll = true;
+                    completeStage();
+                    return;
+                }
+
+                IdBatch batch = result.first().get();
+                fetchAfter = batch.getSearchAfter();
+                fetchedAll = batch.size() < pageSize;
+
+                if (pullIsWaitingForData) {
+                    emitData(batch);
+                    requestNextPage();
+                } else {
+                    log.debug("stashing {} ids until downstream asks for them", batch.size());
+                    dataReady = Optional.of(batch);
+                }
+            }
+
+            private void emitData(IdBatch batch) {
+                pullIsWaitingForData = false;
+                push(out, batch);
+                processedCt += batch.size();
+                searchAfter = batch.getSearchAfter();
+                log.debug("last id pushed({}): {}", batch.size(), Arrays.asList(searchAfter));
+
+                if (fetchedAll) {
+                    completeStage();
+                }
+            }
+
+            private void doPull() throws Exception {
+                if (dataReady.isPresent()) {
+                    IdBatch batch = dataReady.get();
+                    dataReady = Optional.empty();
+                    emitData(batch);
+                    requestNextPage();
+                } else {
+                    if (pullIsWaitingForData) throw new Exception("This should not happen: Downstream is pulling more than once");
+                    pullIsWaitingForData = true;
+                    requestNextPage();
+                }
+            }
+
+            private void requestNextPage() {
+                if (waitingForEsResponse || fetchedAll || isClosed(out)) {
+                    return;
+                }
+                waitingForEsResponse = true;
+
+                SearchSourceBuilder source = ElasticSearchSource.baseSearchSource(queryText, pageSize, sort, fetchAfter)
+                                                                .trackTotalHits(false);
+                if (idField != null) {
+                    source = source.docValueField(idField);
+                }
+
+                Request request = new Request("POST", "/" + indexName + "/_search");
+                request.addParameter("filter_path", parser.filterPath());
+                request.setJsonEntity(Strings.toString(source));
+                log.debug("try call {}", source);
+
+                esClient.performRequestAsync(request, responseListener);
+            }
+        };
+
+        return Tuple2.apply(logic, mat);
+    }
+
+    @Override
+    public SourceShape<IdBatch> shape() {
+        return shape;
+    }
+}
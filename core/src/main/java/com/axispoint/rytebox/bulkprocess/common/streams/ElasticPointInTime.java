@@ -0,0 +1,225 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+/**
+ * Point in time (PIT) support for the ES high level client.
+ *
+ * See https://www.elastic.co/guide/en/elasticsearch/reference/7.10/point-in-time-api.html
+ *
+ * PITs were added to ES in 7.10, which is newer than the high level client quarkus ships with, so the PIT endpoints are
+ * called through the low level client and the search responses are parsed back into regular SearchResponses. Once we're
+ * on a 7.10+ client this can go away in favor of SearchSourceBuilder.pointInTimeBuilder
+ *
+ * Slicing a search under a PIT came later, in 7.15 (before that only scrolls could be sliced), so a sliced search needs
+ * at least MIN_SLICED_VERSION, see checkSlicingSupported.
+ * See https://www.elastic.co/guide/en/elasticsearch/reference/7.15/point-in-time-api.html#search-slicing
+ */
+@Slf4j
+public final class ElasticPointInTime {
+    public static final String DEFAULT_KEEP_ALIVE = "5m";
+    public static final String MIN_SLICED_VERSION = "7.15";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory JSON = MAPPER.getFactory();
+
+    private ElasticPointInTime() {
+    }
+
+    public static Cancellable open(RestHighLevelClient esClient, String indexName, String keepAlive, ActionListener<String> listener) {
+        Request request = new Request("POST", "/" + indexName + "/_pit");
+        request.addParameter("keep_alive", keepAlive);
+
+        return esClient.getLowLevelClient().performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                try {
+                    String pitId = MAPPER.readTree(EntityUtils.toByteArray(response.getEntity())).path("id").asText(null);
+                    if (pitId == null) {
+                        throw new IOException("no PIT id returned opening point in time on " + indexName);
+                    }
+                    log.debug("opened point in time on {}", indexName);
+                    listener.onResponse(pitId);
+                } catch (Exception e) {
+                    listener.onFailure(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                listener.onFailure(e);
+            }
+        });
+    }
+
+    /**
+     * checks the cluster is on MIN_SLICED_VERSION or later, failing the listener with an IllegalStateException naming
+     * the version it's on if it isn't. A version that can't be read (GET / needs the monitor privilege) passes with a
+     * warning, leaving an older cluster to fail the first search.
+     */
+    public static Cancellable checkSlicingSupported(RestHighLevelClient esClient, ActionListener<Void> listener) {
+        return esClient.getLowLevelClient().performRequestAsync(new Request("GET", "/"), new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                Optional<String> version;
+                try {
+                    version = Optional.ofNullable(MAPPER.readTree(EntityUtils.toByteArray(response.getEntity()))
+                                                        .path("version").path("number").textValue());
+                } catch (Exception e) {
+                    version = Optional.empty();
+                }
+
+                if (version.isEmpty()) {
+                    log.warn("no version in the cluster info, assuming it can slice a point in time");
+                    listener.onResponse(null);
+                } else if (!supportsSlicing(version.get())) {
+                    listener.onFailure(new IllegalStateException(
+                            "slicing a search under a point in time needs Elasticsearch " + MIN_SLICED_VERSION
+                                    + " or later, the cluster is on " + version.get() + ". Export with slices = 1"));
+                } else {
+                    listener.onResponse(null);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                log.warn("unable to read the cluster version, assuming it can slice a point in time: {}", e.getMessage());
+                listener.onResponse(null);
+            }
+        });
+    }
+
+    static boolean supportsSlicing(String version) {
+        String[] minimum = MIN_SLICED_VERSION.split("\\.");
+        String[] actual = version.split("[.-]");
+        try {
+            int major = Integer.parseInt(actual[0]);
+            int minor = actual.length > 1 ? Integer.parseInt(actual[1]) : 0;
+            return major > Integer.parseInt(minimum[0])
+                    || major == Integer.parseInt(minimum[0]) && minor >= Integer.parseInt(minimum[1]);
+        } catch (NumberFormatException e) {
+            log.warn("unrecognized Elasticsearch version {}, assuming it can slice a point in time", version);
+            return true;
+        }
+    }
+
+    /**
+     * closing is best-effort... an unclosed PIT is released by ES anyway once its keep-alive expires
+     */
+    public static void close(RestHighLevelClient esClient, String pitId) {
+        Request request = new Request("DELETE", "/_pit");
+        request.setJsonEntity(MAPPER.createObjectNode().put("id", pitId).toString());
+
+        esClient.getLowLevelClient().performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                log.debug("closed point in time");
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                log.warn("failed to close point in time, it will expire on its own: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * runs the search against the PIT instead of an index. The listener receives the parsed response along with the PIT
+     * id ES returned for it, which may differ from the one passed in and should be used for any subsequent request.
+     */
+    public static Cancellable search(RestHighLevelClient esClient,
+                                     SearchSourceBuilder source,
+                                     String pitId,
+                                     String keepAlive,
+                                     ActionListener<PitSearchResponse> listener) {
+        Request request = new Request("POST", "/_search");
+        request.setJsonEntity(pitSearchBody(source, pitId, keepAlive));
+
+        return esClient.getLowLevelClient().performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                try {
+                    byte[] body = EntityUtils.toByteArray(response.getEntity());
+                    listener.onResponse(new PitSearchResponse(parseSearchResponse(body), readPitId(body).orElse(pitId)));
+                } catch (Exception e) {
+                    listener.onFailure(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                listener.onFailure(e);
+            }
+        });
+    }
+
+    static String pitSearchBody(SearchSourceBuilder source, String pitId, String keepAlive) {
+        try {
+            ObjectNode body = (ObjectNode) MAPPER.readTree(Strings.toString(source));
+            body.putObject("pit")
+                .put("id", pitId)
+                .put("keep_alive", keepAlive);
+            return body.toString();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("unable to serialize search request", e);
+        }
+    }
+
+    private static SearchResponse parseSearchResponse(byte[] body) throws IOException {
+        try (XContentParser parser = XContentType.JSON.xContent()
+                                                      .createParser(NamedXContentRegistry.EMPTY,
+                                                                    DeprecationHandler.THROW_UNSUPPORTED_OPERATION,
+                                                                    body)) {
+            return SearchResponse.fromXContent(parser);
+        }
+    }
+
+    private static Optional<String> readPitId(byte[] body) throws IOException {
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return Optional.empty();
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("pit_id".equals(field)) {
+                    return Optional.ofNullable(parser.getValueAsString());
+                }
+                parser.skipChildren();
+            }
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * a SearchResponse along with the (possibly refreshed) PIT id it was run against
+     */
+    @Value
+    public static class PitSearchResponse {
+        private SearchResponse response;
+        private String pitId;
+    }
+}
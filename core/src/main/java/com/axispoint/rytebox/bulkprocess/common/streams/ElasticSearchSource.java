@@ -1,10 +1,17 @@
 package com.axispoint.rytebox.bulkprocess.common.streams;
 
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import akka.japi.Pair;
 import akka.stream.Attributes;
@@ -23,17 +30,25 @@ import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.ResponseException;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 import scala.Tuple2;
 
+import com.axispoint.rytebox.bulkprocess.common.dto.PointInTime;
+import com.axispoint.rytebox.bulkprocess.common.metrics.PipelineMetrics;
+
 /**
  * A continuous stream from an ES search. Will fetch all matching docs using an efficient search_after API. Can be resumed by
  * capturing the last SearchHit getSortValues and passing it back in to startingSearchAfter.
  *
+ * Can also run as a sliced search (one searchAfter per slice) to scan N slices of the index in parallel, in which case
+ * the materialized SearchCursor holds the searchAfter of each slice.
+ *
  * See https://www.elastic.co/guide/en/elasticsearch/reference/7.9/paginate-search-results.html#search-after
  *
  * Code basically stolen from the official Akka Alpakka Elastic Source:
@@ -50,9 +65,8 @@ import scala.Tuple2;
  *
  */
 @Slf4j
-public class ElasticSearchSource extends GraphStageWithMaterializedValue<SourceShape<List<SearchHit>>, CompletionStage<Object[]>> {
-    private static final int MAX_PAGE_SIZE = 1000;
-    private final List<Pair<String, Optional<SortOrder>>> DEFAULT_SORT = List.of(Pair.create("id", Optional.empty()));
+public class ElasticSearchSource extends GraphStageWithMaterializedValue<SourceShape<List<SearchHit>>, CompletionStage<SearchCursor>> {
+    static final List<Pair<String, Optional<SortOrder>>> DEFAULT_SORT = List.of(Pair.create("id", Optional.empty()));
 
       private final Outlet<List<SearchHit>> out = Outlet.create("ElasticSearchSource.out");
       private final SourceShape<List<SearchHit>> shape = SourceShape.of(out);
@@ -61,9 +75,12 @@ public class ElasticSearchSource extends GraphStageWithMaterializedValue<SourceS
     private final RestHighLevelClient esClient;
     private final String indexName;
     private final ObjectNode query;
-    private final Optional<Object[]> startingSearchAfter;
-    private final int pageSize;
+    private final List<Optional<Object[]>> startingSearchAfter;
+    private final PagingSettings paging;
     private final List<Pair<String, Optional<SortOrder>>> sort;
+    private final boolean usePointInTime;
+    private final Optional<PointInTime> startingPointInTime;
+    private final Optional<PipelineMetrics> metrics;
 
 
     public ElasticSearchSource(RestHighLevelClient esClient,
@@ -72,75 +89,120 @@ public class ElasticSearchSource extends GraphStageWithMaterializedValue<SourceS
                                Optional<Object[]> searchAfter,
                                int pageSize,
                                Optional<List<Pair<String, Optional<SortOrder>>>> sort) {
+        this(esClient, indexName, query, List.of(searchAfter), pageSize, sort);
+    }
+
+    /**
+     * A sliced search: one searchAfter per slice, each slice being scanned in parallel under a shared point in time
+     * and merged into the stream as their pages arrive. The number of slices is the size of sliceSearchAfter, so
+     * a sliced export is resumed by passing back the searchAfter of every slice in the materialized SearchCursor.
+     *
+     * ES only accepts a slice under a point in time from 7.15 (ElasticPointInTime.MIN_SLICED_VERSION), so with more than
+     * one slice the source checks the cluster's version first and fails on an older one rather than at its first search.
+     *
+     * See https://www.elastic.co/guide/en/elasticsearch/reference/7.15/point-in-time-api.html#search-slicing
+     */
+    public ElasticSearchSource(RestHighLevelClient esClient,
+                               String indexName,
+                               ObjectNode query,
+                               List<Optional<Object[]>> sliceSearchAfter,
+                               int pageSize,
+                               Optional<List<Pair<String, Optional<SortOrder>>>> sort) {
+        this(esClient, indexName, query, sliceSearchAfter, PagingSettings.fixed(pageSize), sort.orElse(null), false, Optional.empty(), Optional.empty());
+    }
+
+    private ElasticSearchSource(RestHighLevelClient esClient,
+                                String indexName,
+                                ObjectNode query,
+                                List<Optional<Object[]>> sliceSearchAfter,
+                                PagingSettings paging,
+                                List<Pair<String, Optional<SortOrder>>> sort,
+                                boolean usePointInTime,
+                                Optional<PointInTime> startingPointInTime,
+                                Optional<PipelineMetrics> metrics) {
         this.esClient = esClient;
         this.indexName = indexName;
         this.query = query;
-        this.startingSearchAfter = searchAfter;
-        this.pageSize = pageSize;
-        this.sort = sort.orElse(DEFAULT_SORT);
+        this.startingSearchAfter = sliceSearchAfter;
+        this.paging = paging;
+        this.sort = Optional.ofNullable(sort).orElse(DEFAULT_SORT);
+        this.usePointInTime = usePointInTime;
+        this.startingPointInTime = startingPointInTime;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Pages through a point in time instead of the live index, so every page (and every iteration, when the PIT from the
+     * materialized SearchCursor is passed back in) sees the same snapshot of the index and ES can reuse the same
+     * searchers rather than acquiring new ones for every request. If no PIT is given one is opened on the first pull.
+     *
+     * The PIT is left open when the stream stops early (e.g. a timed out iteration) and closed once every hit has been
+     * emitted. Sliced searches always page through a PIT.
+     */
+    public ElasticSearchSource withPointInTime(Optional<PointInTime> pointInTime) {
+        return new ElasticSearchSource(esClient, indexName, query, startingSearchAfter, paging, sort, true, pointInTime, metrics);
     }
 
+    /**
+     * replaces the fixed pageSize with adaptive page sizes and/or a deeper prefetch queue, see PagingSettings
+     */
+    public ElasticSearchSource withPaging(PagingSettings paging) {
+        return new ElasticSearchSource(esClient, indexName, query, startingSearchAfter, paging, sort, usePointInTime, startingPointInTime, metrics);
+    }
 
-//
-//    @Override
-//    public Tuple2<GraphStageLogic, Optional<List<Object>>> createLogicAndMaterializedValue(Attributes inheritedAttributes,
-//                                                                                    Materializer materializer) {
-//        return new GraphStageWithMaterializedValue<>(inheritedAttributes, materializer) {
-//
-//            @Override
-//            public SourceShape<List<SearchHit>> shape() {
-//                return shape;
-//            }
-//
-//            @Override
-//            public Tuple2<GraphStageLogic, Object> createLogicAndMaterializedValue( Attributes inheritedAttributes)
-//                    throws Exception, Exception {
-//                return null;
-//            }
-//        };
-//    }
-//
-//    @Override
-//    public Tuple2<GraphStageLogic, Optional<List<Object>>> createLogicAndMaterializedValue(Attributes inheritedAttributes) throws Exception, Exception {
-//        return null;
- //   }
+    /**
+     * records ES request latency, took, pages and docs emitted into metrics
+     */
+    public ElasticSearchSource withMetrics(PipelineMetrics metrics) {
+        return new ElasticSearchSource(esClient, indexName, query, startingSearchAfter, paging, sort, usePointInTime, startingPointInTime, Optional.of(metrics));
+    }
 
     //@Override
-    public Tuple2<GraphStageLogic, CompletionStage<Object[]>> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+    public Tuple2<GraphStageLogic, CompletionStage<SearchCursor>> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
 
-        if (pageSize <=0 || pageSize >= MAX_PAGE_SIZE) throw new IllegalArgumentException("pageSize ("+pageSize+") must be between 0 and " + MAX_PAGE_SIZE);
+        paging.validate();
         if (StringUtils.isBlank(indexName)) throw new IllegalArgumentException("indexName is required");
+        if (startingSearchAfter.isEmpty()) throw new IllegalArgumentException("at least one slice is required");
 
-        CompletableFuture<Object[]> mat = new CompletableFuture<>();
+        CompletableFuture<SearchCursor> mat = new CompletableFuture<>();
 
         GraphStageLogic logic = new GraphStageLogicWithLogging(shape()) {
 
             // stateful stream properties... mutable state should only exist within the GraphStageLogic anonymous class
-            private Object[] searchAfter = startingSearchAfter.orElse(null);
+            private final List<Slice> slices = IntStream.range(0, startingSearchAfter.size())
+                                                        .mapToObj(i -> new Slice(i, startingSearchAfter.get(i).orElse(null)))
+                                                        .collect(toList());
+            private final boolean sliced = slices.size() > 1;
+            private final boolean pitMode = sliced || usePointInTime;
             private final String queryText = parseQuery(query);
-            private Optional<SearchResponse> dataReady = Optional.empty();
-            private boolean waitingForEsResponse = false;
+            private final PageSizeController pageSizes = new PageSizeController(paging);
             private boolean pullIsWaitingForData = false;
+            private int nextSliceToEmit = 0;
             private Long processedCt = 0L;
 
-            private AsyncCallback<SearchResponse> searchCallback;
+            // paging stats, reported in the materialized SearchCursor
+            private long pagesCt = 0L;
+            private long esTookMillis = 0L;
+            private int minPageSize = Integer.MAX_VALUE;
+            private int maxPageSize = 0;
+            private long queuedPagesSum = 0L;
+            private int maxQueuedPages = 0;
+
+            // slicing requires a point in time, which is opened (unless one is carried over from a previous iteration)
+            // before any page is requested
+            private String pitId = startingPointInTime.map(PointInTime::getId).orElse(null);
+            private final String keepAlive = startingPointInTime.map(PointInTime::getKeepAlive)
+                                                                .orElse(ElasticPointInTime.DEFAULT_KEEP_ALIVE);
+            private boolean openingPit = false;
+            private boolean reopenedPit = false;
+            // a sliced search waits on the cluster's version check as well as its PIT before requesting any page
+            private boolean slicingChecked = !sliced;
+
+            private AsyncCallback<PageResult> searchCallback;
             private AsyncCallback<Exception> searchErrorCallback;
-            private ActionListener<SearchResponse> responseListener = new ActionListener<>() {
-                // !! This is an ES action listener, which is called by ES outside the context of the akka stream
-                //      the only code in the ActionListener should delegate back to akka via an AsyncCallback which
-                //      is guaranteed to run in a thread-safe manner and have proper context to the stream lifecycle
-                @Override
-                public void onResponse(SearchResponse searchResponse) {
-                    waitingForEsResponse = false;
-                    searchCallback.invoke(searchResponse);
-                }
-
-                @Override
-                public void onFailure(Exception e) {
-                    waitingForEsResponse = false;
-                    searchErrorCallback.invoke(e);
-                }
-            };
+            private AsyncCallback<PageResult> pitErrorCallback;
+            private AsyncCallback<String> pitCallback;
+            private AsyncCallback<Void> slicingCheckedCallback;
 
             {
                 setHandler(out, new AbstractOutHandler() {
@@ -155,127 +217,386 @@ public class ElasticSearchSource extends GraphStageWithMaterializedValue<SourceS
                     failStage(e);
             }
 
-            private void handleResponse(SearchResponse response) {
+            private void handlePitException(PageResult failure) {
+                Exception e = failure.error;
+                if (!isPitExpired(e)) {
+                    handleException(e);
+                    return;
+                }
+
+                failure.slice.waitingForEsResponse = false;
+                if (openingPit) {
+                    // already being replaced, the slice gets re-requested once the new PIT is open
+                    return;
+                }
+                if (!failure.pitId.equals(pitId)) {
+                    // a straggler that went out against the PIT we've since replaced
+                    if (pullIsWaitingForData) {
+                        requestMore(failure.slice);
+                    }
+                    return;
+                }
+                if (reopenedPit) {
+                    handleException(e);
+                    return;
+                }
+
+                // the PIT carried over from the last iteration outlived its keep-alive. searchAfter terms are field
+                // values rather than PIT-specific so every slice can pick up where it left off in a fresh PIT
+                log().warning("point in time expired, reopening: {}", e.getMessage());
+                reopenedPit = true;
+                pitId = null;
+                openPit();
+            }
+
+            private boolean isPitExpired(Exception e) {
+                return e instanceof ResponseException
+                        && ((ResponseException) e).getResponse().getStatusLine().getStatusCode() == 404;
+            }
+
+            private void openPit() {
+                openingPit = true;
+                ElasticPointInTime.open(esClient, indexName, keepAlive, new ActionListener<>() {
+                    @Override
+                    public void onResponse(String id) {
+                        pitCallback.invoke(id);
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        searchErrorCallback.invoke(e);
+                    }
+                });
+            }
+
+            private void checkSlicingSupported() {
+                ElasticPointInTime.checkSlicingSupported(esClient, new ActionListener<>() {
+                    @Override
+                    public void onResponse(Void ignored) {
+                        slicingCheckedCallback.invoke(null);
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        searchErrorCallback.invoke(e);
+                    }
+                });
+            }
+
+            private void handleSlicingChecked() {
+                slicingChecked = true;
+                slices.forEach(this::requestMore);
+            }
+
+            private void handlePitOpened(String id) {
+                openingPit = false;
+                pitId = id;
+                slices.forEach(this::requestMore);
+            }
+
+            private void handleResponse(PageResult page) {
+                Slice slice = page.slice;
+                SearchResponse response = page.response;
+                if (page.pitId != null && page.pitId.equals(pitId) && page.refreshedPitId != null) {
+                    // ES may hand back a new PIT id with any response, which should be used from then on
+                    pitId = page.refreshedPitId;
+                }
                 log().info("Elastic response took {} for {} total hits", response.getTook(), response.getHits().getTotalHits().value);
-                waitingForEsResponse = false;
-                if (response.getHits() == null || response.getHits().getHits().length == 0) {
-                    log.debug("completing stage");
-                     // mat.complete(searchAfter);
-                    completeStage();
+                slice.waitingForEsResponse = false;
+
+                int hitCt = response.getHits() == null ? 0 : response.getHits().getHits().length;
+                pagesCt++;
+                esTookMillis += response.getTook().millis();
+                minPageSize = Math.min(minPageSize, page.pageSize);
+                maxPageSize = Math.max(maxPageSize, page.pageSize);
+                pageSizes.record(page.pageSize, hitCt, response.getTook().millis());
+                metrics.ifPresent(m -> {
+                    m.recordSince(PipelineMetrics.ES_REQUEST_MILLIS, slice.requestedAt);
+                    m.record(PipelineMetrics.ES_TOOK_MILLIS, response.getTook().millis());
+                    m.increment(PipelineMetrics.ES_PAGES, 1);
+                });
+
+                if (hitCt == 0) {
+                    log.debug("slice {} has no more data", slice.id);
+                    slice.fetchedAll = true;
+                    completeIfExhausted();
                     return;
                 }
 
+                SearchHit[] hits = response.getHits().getHits();
+                slice.fetchAfter = hits[hits.length - 1].getSortValues();
+                if (hitCt < page.pageSize) {
+                    slice.fetchedAll = true;
+                }
+                slice.ready.add(response);
+
                 if (pullIsWaitingForData) {
                     log.debug("Received data from elastic. Downstream has already called pull and is waiting for data");
-                    if (emitData(response)) {
-                        // fetch the next page to have it ready by the time the downstream requests more data
-                        requestNextPage();
-                    }
+                    emitData(slice);
                 } else {
                   log.debug("Received data from elastic. Downstream have not yet asked for it");
                   // This is a prefetch of data which we received before downstream has asked for it
-                    log().info("stashing response with {} items", response.getHits().getHits().length);
-                  dataReady = Optional.of(response);
+                    log().info("stashing response with {} items", hitCt);
                 }
+
+                // fetch the next page to have it ready by the time the downstream requests more data
+                requestMore(slice);
+                completeIfExhausted();
             }
 
-            private boolean emitData(SearchResponse response) {
+            private void emitData(Slice slice) {
+                SearchResponse response = slice.ready.poll();
                 log().info("Completed {} of {}{} total hits", processedCt, response.getHits().getTotalHits().value,
                         response.getHits().getTotalHits().relation.equals(TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO) ?
                         "+":"");
-                if (response.getHits() == null || response.getHits().getHits().length == 0) {
-
-                    completeStage();
-                    return false;
-                }
 
                 List<SearchHit> hits = Arrays.asList(response.getHits().getHits());
                 log().info("emitting {}", hits.size());
                 pullIsWaitingForData = false;
                 push(out, hits);
                 processedCt = processedCt + hits.size();
+                metrics.ifPresent(m -> m.increment(PipelineMetrics.DOCS, hits.size()));
+                nextSliceToEmit = (slice.id + 1) % slices.size();
 
-                searchAfter = hits.get(hits.size()-1).getSortValues();
-                log.debug("last item pushed({}): {}", hits.size(), Arrays.asList(searchAfter));
+                slice.searchAfter = hits.get(hits.size()-1).getSortValues();
+                log.debug("last item pushed({}) for slice {}: {}", hits.size(), slice.id, Arrays.asList(slice.searchAfter));
+            }
 
-                if (hits.size() < pageSize) {
-                    return false;
+            private void completeIfExhausted() {
+                if (slices.stream().allMatch(Slice::isExhausted)) {
+                    log.debug("completing stage");
+                    completeStage();
                 }
-                return true;
             }
 
             @Override
             public void preStart() {
                 searchCallback = createAsyncCallback(this::handleResponse);
                 searchErrorCallback = createAsyncCallback(this::handleException);
+                pitErrorCallback = createAsyncCallback(this::handlePitException);
+                pitCallback = createAsyncCallback(this::handlePitOpened);
+                slicingCheckedCallback = createAsyncCallback(ignored -> handleSlicingChecked());
+
+                if (sliced) {
+                    checkSlicingSupported();
+                }
+                if (pitMode && pitId == null) {
+                    openPit();
+                }
             }
 
             @Override
             public void postStop() {
-                mat.complete(searchAfter);
+                boolean exhausted = slices.stream().allMatch(Slice::isExhausted);
+                if (exhausted && pitId != null) {
+                    ElasticPointInTime.close(esClient, pitId);
+                }
+
+                PagingStats stats = new PagingStats(pagesCt, processedCt,
+                                                    pagesCt == 0 ? 0 : minPageSize, maxPageSize, pageSizes.pageSize(),
+                                                    esTookMillis,
+                                                    pagesCt == 0 ? 0 : queuedPagesSum / (double) pagesCt, maxQueuedPages);
+                log().info("paging stats: {}", stats);
+
+                mat.complete(new SearchCursor(slices.stream().map(s -> s.searchAfter).collect(toList()),
+                                              exhausted || pitId == null ? null : new PointInTime(pitId, keepAlive),
+                                              exhausted,
+                                              stats));
             }
 
             private void doPull() throws Exception {
                 log.debug("Pull Requested from downstream");
-                if (dataReady.isPresent()) {
+                recordQueueOccupancy();
+                Optional<Slice> ready = nextReadySlice();
+                if (ready.isPresent()) {
                     log.debug("Downstream is pulling data and we already have data ready");
-                    if (emitData(dataReady.get())) {
-                        if (false == waitingForEsResponse) {
-                            requestNextPage();
-                        }
-                    }
-                    dataReady = Optional.empty();
+                    Slice slice = ready.get();
+                    emitData(slice);
+                    requestMore(slice);
+                    completeIfExhausted();
                 } else {
                     if (pullIsWaitingForData) throw new Exception("This should not happen: Downstream is pulling more than once");
                     pullIsWaitingForData = true;
 
-                    if (!waitingForEsResponse) {
-                      log.debug("Downstream is pulling data. We must go and get it");
-                      requestNextPage();
+                    if (slices.stream().allMatch(Slice::isExhausted)) {
+                        completeStage();
                     } else {
-                      log.debug("Downstream is pulling data. Already waiting for data");
+                      log.debug("Downstream is pulling data. We must go and get it");
+                      slices.forEach(this::requestMore);
                     }
                 }
             }
 
-            private void requestNextPage() {
-                waitingForEsResponse = true;
-                esClient.searchAsync(buildSearchRequest(), RequestOptions.DEFAULT, responseListener);
+            private void recordQueueOccupancy() {
+                int queued = slices.stream().mapToInt(s -> s.ready.size()).sum();
+                queuedPagesSum += queued;
+                maxQueuedPages = Math.max(maxQueuedPages, queued);
             }
 
-            private SearchRequest buildSearchRequest() {
-                SearchRequest searchRequest = new SearchRequest(indexName);
-                SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
-                        .fetchSource(false)
-                        .size(pageSize)
-                        .query(QueryBuilders.wrapperQuery(queryText));
+            // round-robin across slices with data ready so no one slice gets starved
+            private Optional<Slice> nextReadySlice() {
+                for (int i = 0; i < slices.size(); i++) {
+                    Slice slice = slices.get((nextSliceToEmit + i) % slices.size());
+                    if (!slice.ready.isEmpty()) {
+                        return Optional.of(slice);
+                    }
+                }
+                return Optional.empty();
+            }
 
-                for (var sortPair : sort) {
-                    String sortCol = sortPair.first();
-                    Optional<SortOrder> sortDir = sortPair.second();
+            // keeps a slice reading ahead until it has prefetchDepth pages ready or in flight
+            private void requestMore(Slice slice) {
+                if (slice.fetchedAll || slice.waitingForEsResponse || slice.ready.size() >= paging.getPrefetchDepth()) {
+                    return;
+                }
+                if (pitMode && (pitId == null || openingPit)) {
+                    log.debug("point in time isn't open yet, slice {} will be requested once it is", slice.id);
+                    return;
+                }
+                if (!slicingChecked) {
+                    log.debug("cluster version isn't checked yet, slice {} will be requested once it is", slice.id);
+                    return;
+                }
 
-                    if (sortDir.isPresent()) {
-                        searchSourceBuilder = searchSourceBuilder.sort(sortCol, sortDir.get());
-                    } else {
-                        searchSourceBuilder = searchSourceBuilder.sort(sortCol);
-                    }
+                int pageSize = pageSizes.pageSize();
+                slice.waitingForEsResponse = true;
+                slice.requestedAt = System.nanoTime();
+                if (pitMode) {
+                    String requestPitId = pitId;
+                    ElasticPointInTime.search(esClient, buildSearchSource(slice, pageSize), requestPitId, keepAlive,
+                            responseListener(r -> PageResult.of(slice, pageSize, requestPitId, r.getResponse(), r.getPitId()),
+                                             e -> pitErrorCallback.invoke(PageResult.failed(slice, pageSize, requestPitId, e))));
+                } else {
+                    esClient.searchAsync(buildSearchRequest(slice, pageSize), RequestOptions.DEFAULT,
+                            responseListener(r -> PageResult.of(slice, pageSize, null, r, null), searchErrorCallback::invoke));
                 }
+            }
+
+            private <R> ActionListener<R> responseListener(Function<R, PageResult> toResult, Consumer<Exception> onError) {
+                return new ActionListener<>() {
+                    // !! This is an ES action listener, which is called by ES outside the context of the akka stream
+                    //      the only code in the ActionListener should delegate back to akka via an AsyncCallback which
+                    //      is guaranteed to run in a thread-safe manner and have proper context to the stream lifecycle
+                    @Override
+                    public void onResponse(R response) {
+                        searchCallback.invoke(toResult.apply(response));
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        onError.accept(e);
+                    }
+                };
+            }
+
+            private SearchRequest buildSearchRequest(Slice slice, int pageSize) {
+                SearchRequest searchRequest = new SearchRequest(indexName);
+                searchRequest.source(buildSearchSource(slice, pageSize));
+                return searchRequest;
+            }
 
-                if (searchAfter != null) {
-                    searchSourceBuilder = searchSourceBuilder.searchAfter(searchAfter);
+            private SearchSourceBuilder buildSearchSource(Slice slice, int pageSize) {
+                SearchSourceBuilder searchSourceBuilder = baseSearchSource(queryText, pageSize, sort, slice.fetchAfter);
+
+                if (sliced) {
+                    searchSourceBuilder = searchSourceBuilder.slice(new SliceBuilder(slice.id, slices.size()));
                 }
 
-                searchRequest.source(searchSourceBuilder);
                 log.debug("try call {}",  searchSourceBuilder);
 
-                return searchRequest;
+                return searchSourceBuilder;
             }
         };
 
         return Tuple2.apply(logic, mat);
     }
 
+    /**
+     * per-slice paging state, only ever touched from within the GraphStageLogic.
+     *
+     * searchAfter is the sort values of the last hit pushed downstream (what a later iteration resumes from), while
+     * fetchAfter is the last hit received from ES (what the next request pages from), which runs ahead of it by
+     * however many pages are queued in ready.
+     */
+    private static final class Slice {
+        private final int id;
+        private Object[] searchAfter;
+        private Object[] fetchAfter;
+        private final Deque<SearchResponse> ready = new ArrayDeque<>();
+        private boolean waitingForEsResponse = false;
+        private long requestedAt;
+        private boolean fetchedAll = false;
+
+        private Slice(int id, Object[] searchAfter) {
+            this.id = id;
+            this.searchAfter = searchAfter;
+            this.fetchAfter = searchAfter;
+        }
+
+        private boolean isExhausted() {
+            return fetchedAll && ready.isEmpty() && !waitingForEsResponse;
+        }
+    }
 
+    /**
+     * a response (or failure) for one slice, along with the page size and PIT it was requested with so responses to a
+     * PIT that has since been replaced can be told apart
+     */
+    private static final class PageResult {
+        private final Slice slice;
+        private final int pageSize;
+        private final String pitId;
+        private final SearchResponse response;
+        private final String refreshedPitId;
+        private final Exception error;
+
+        private PageResult(Slice slice, int pageSize, String pitId, SearchResponse response, String refreshedPitId, Exception error) {
+            this.slice = slice;
+            this.pageSize = pageSize;
+            this.pitId = pitId;
+            this.response = response;
+            this.refreshedPitId = refreshedPitId;
+            this.error = error;
+        }
+
+        private static PageResult of(Slice slice, int pageSize, String pitId, SearchResponse response, String refreshedPitId) {
+            return new PageResult(slice, pageSize, pitId, response, refreshedPitId, null);
+        }
+
+        private static PageResult failed(Slice slice, int pageSize, String pitId, Exception error) {
+            return new PageResult(slice, pageSize, pitId, null, null, error);
+        }
+    }
+
+    /**
+     * an ID-only (no _source) sorted page of the query, starting after searchAfter when there is one
+     */
+    static SearchSourceBuilder baseSearchSource(String queryText,
+                                                int pageSize,
+                                                List<Pair<String, Optional<SortOrder>>> sort,
+                                                Object[] searchAfter) {
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+                .fetchSource(false)
+                .size(pageSize)
+                .query(QueryBuilders.wrapperQuery(queryText));
+
+        for (var sortPair : sort) {
+            String sortCol = sortPair.first();
+            Optional<SortOrder> sortDir = sortPair.second();
+
+            if (sortDir.isPresent()) {
+                searchSourceBuilder = searchSourceBuilder.sort(sortCol, sortDir.get());
+            } else {
+                searchSourceBuilder = searchSourceBuilder.sort(sortCol);
+            }
+        }
+
+        if (searchAfter != null) {
+            searchSourceBuilder = searchSourceBuilder.searchAfter(searchAfter);
+        }
+
+        return searchSourceBuilder;
+    }
 
     /**
      * if we've been passed a top-level request including a query and other search params (sorting, pagination, highlighting)
@@ -283,7 +604,7 @@ public class ElasticSearchSource extends GraphStageWithMaterializedValue<SourceS
      * @param query
      * @return
      */
-    private String parseQuery(ObjectNode query) {
+    static String parseQuery(ObjectNode query) {
         return Optional.ofNullable(query.get("query"))
                        .orElse(query)
                        .toString();
@@ -0,0 +1,76 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import java.nio.charset.StandardCharsets;
+
+import akka.util.ByteString;
+
+/**
+ * A page of document ids in compact form: a primitive long[] when every id in the page is numeric, otherwise the UTF-8
+ * bytes of all the ids packed into one ByteString along with their offsets.
+ *
+ * searchAfter holds the sort values of the last id in the batch, i.e. where a search resumes after this batch.
+ */
+public final class IdBatch {
+    private final int size;
+    private final long[] numericIds;
+    private final ByteString packedIds;
+    private final int[] offsets;
+    private final Object[] searchAfter;
+
+    private IdBatch(int size, long[] numericIds, ByteString packedIds, int[] offsets, Object[] searchAfter) {
+        this.size = size;
+        this.numericIds = numericIds;
+        this.packedIds = packedIds;
+        this.offsets = offsets;
+        this.searchAfter = searchAfter;
+    }
+
+    public static IdBatch numeric(long[] ids, Object[] searchAfter) {
+        return new IdBatch(ids.length, ids, null, null, searchAfter);
+    }
+
+    /**
+     * @param offsets size + 1 offsets into packedIds, id i spans [offsets[i], offsets[i+1])
+     */
+    public static IdBatch packed(ByteString packedIds, int[] offsets, Object[] searchAfter) {
+        return new IdBatch(offsets.length - 1, null, packedIds, offsets, searchAfter);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isNumeric() {
+        return numericIds != null;
+    }
+
+    /**
+     * the ids of a numeric batch, not copied so must not be modified
+     */
+    public long[] numericIds() {
+        if (!isNumeric()) throw new IllegalStateException("batch has non-numeric ids");
+        return numericIds;
+    }
+
+    public long longId(int i) {
+        return numericIds()[i];
+    }
+
+    public ByteString packedId(int i) {
+        if (isNumeric()) {
+            return ByteString.fromString(Long.toString(numericIds[i]));
+        }
+        return packedIds.slice(offsets[i], offsets[i + 1]);
+    }
+
+    public String id(int i) {
+        if (isNumeric()) {
+            return Long.toString(numericIds[i]);
+        }
+        return packedId(i).decodeString(StandardCharsets.UTF_8);
+    }
+
+    public Object[] getSearchAfter() {
+        return searchAfter;
+    }
+}
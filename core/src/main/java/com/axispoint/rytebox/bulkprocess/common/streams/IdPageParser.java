@@ -0,0 +1,320 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import akka.util.ByteStringBuilder;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streams an ES search response (trimmed down by filter_path to the ids and sort values of the hits) straight into an
+ * IdBatch, without building SearchHits or any per-hit objects. Ids are either read from the docvalues of idField or,
+ * when there's no idField, from _id.
+ *
+ * The buffers are reused from one page to the next, so an instance must only parse one response at a time.
+ */
+class IdPageParser {
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private static final byte SORT_NULL = 0;
+    private static final byte SORT_LONG = 1;
+    private static final byte SORT_DOUBLE = 2;
+    private static final byte SORT_OTHER = 3;
+
+    private final String idField;
+
+    private long[] longIds = new long[1024];
+    private int[] offsets = new int[1025];
+    private final ByteStringBuilder packed = new ByteStringBuilder();
+    private int count;
+    private boolean numeric;
+    private long tookMillis;
+
+    // sort values of the current hit, only boxed for the last hit of the page
+    private byte[] sortKinds = new byte[4];
+    private long[] sortLongs = new long[4];
+    private double[] sortDoubles = new double[4];
+    private Object[] sortOthers = new Object[4];
+    private int sortCount;
+
+    IdPageParser(String idField) {
+        this.idField = idField;
+    }
+
+    String filterPath() {
+        return idField == null
+                ? "took,hits.hits._id,hits.hits.sort"
+                : "took,hits.hits.fields." + idField + ",hits.hits.sort";
+    }
+
+    long tookMillis() {
+        return tookMillis;
+    }
+
+    /**
+     * @return the page of ids, or null when the page is empty
+     */
+    IdBatch parse(InputStream response) throws IOException {
+        count = 0;
+        numeric = true;
+        sortCount = 0;
+        tookMillis = 0;
+        packed.clear();
+
+        try (JsonParser parser = JSON.createParser(response)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("took".equals(field)) {
+                    tookMillis = parser.getLongValue();
+                } else if ("hits".equals(field) && value == JsonToken.START_OBJECT) {
+                    parseHitsObject(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        if (count == 0) {
+            return null;
+        }
+
+        Object[] searchAfter = lastSortValues();
+        if (numeric) {
+            return IdBatch.numeric(Arrays.copyOf(longIds, count), searchAfter);
+        }
+        return IdBatch.packed(packed.result(), Arrays.copyOf(offsets, count + 1), searchAfter);
+    }
+
+    private void parseHitsObject(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("hits".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    parseHit(parser);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseHit(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (idField == null && "_id".equals(field)) {
+                addId(parser, value);
+            } else if (idField != null && "fields".equals(field) && value == JsonToken.START_OBJECT) {
+                parseFields(parser);
+            } else if ("sort".equals(field) && value == JsonToken.START_ARRAY) {
+                parseSort(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseFields(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (idField.equals(field) && value == JsonToken.START_ARRAY) {
+                // docvalues always come back as an array, the id is its only value
+                JsonToken first = parser.nextToken();
+                if (first != JsonToken.END_ARRAY) {
+                    addId(parser, first);
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void addId(JsonParser parser, JsonToken value) throws IOException {
+        ensureCapacity(count + 1);
+        if (value == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+            addLongId(parser.getLongValue());
+        } else if (value == JsonToken.VALUE_STRING) {
+            char[] chars = parser.getTextCharacters();
+            int offset = parser.getTextOffset();
+            int length = parser.getTextLength();
+            long parsed = parseLong(chars, offset, length);
+            if (parsed >= 0) {
+                addLongId(parsed);
+            } else {
+                switchToPacked();
+                appendUtf8(chars, offset, length);
+                offsets[++count] = packed.length();
+            }
+        } else {
+            throw new IOException("unexpected id value " + value + " at " + parser.getCurrentLocation());
+        }
+    }
+
+    private void addLongId(long id) {
+        if (numeric) {
+            longIds[count++] = id;
+        } else {
+            appendDigits(id);
+            offsets[++count] = packed.length();
+        }
+    }
+
+    // the first non-numeric id turns the whole page into packed ids
+    private void switchToPacked() {
+        if (!numeric) {
+            return;
+        }
+        numeric = false;
+        offsets[0] = 0;
+        for (int i = 0; i < count; i++) {
+            appendDigits(longIds[i]);
+            offsets[i + 1] = packed.length();
+        }
+    }
+
+    private void parseSort(JsonParser parser) throws IOException {
+        sortCount = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            ensureSortCapacity(sortCount + 1);
+            if (token == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+                sortKinds[sortCount] = SORT_LONG;
+                sortLongs[sortCount] = parser.getLongValue();
+            } else if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+                sortKinds[sortCount] = SORT_DOUBLE;
+                sortDoubles[sortCount] = parser.getDoubleValue();
+            } else if (token == JsonToken.VALUE_NULL) {
+                sortKinds[sortCount] = SORT_NULL;
+            } else if (token == JsonToken.VALUE_NUMBER_INT) {
+                sortKinds[sortCount] = SORT_OTHER;
+                sortOthers[sortCount] = parser.getBigIntegerValue();
+            } else if (token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE) {
+                sortKinds[sortCount] = SORT_OTHER;
+                sortOthers[sortCount] = parser.getBooleanValue();
+            } else {
+                sortKinds[sortCount] = SORT_OTHER;
+                sortOthers[sortCount] = parser.getText();
+                parser.skipChildren();
+            }
+            sortCount++;
+        }
+    }
+
+    private Object[] lastSortValues() {
+        Object[] values = new Object[sortCount];
+        for (int i = 0; i < sortCount; i++) {
+            switch (sortKinds[i]) {
+                case SORT_LONG:
+                    values[i] = sortLongs[i];
+                    break;
+                case SORT_DOUBLE:
+                    values[i] = sortDoubles[i];
+                    break;
+                case SORT_OTHER:
+                    values[i] = sortOthers[i] instanceof BigInteger ? sortOthers[i].toString() : sortOthers[i];
+                    break;
+                default:
+                    values[i] = null;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * a non-negative id without leading zeros (so it survives the round trip through a long), otherwise -1
+     */
+    private static long parseLong(char[] chars, int offset, int length) {
+        if (length == 0 || length > 18 || (length > 1 && chars[offset] == '0')) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private void appendDigits(long value) {
+        if (value < 0) {
+            packed.putByte((byte) '-');
+            if (value == Long.MIN_VALUE) {
+                appendAscii("9223372036854775808");
+                return;
+            }
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            packed.putByte((byte) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    private void appendAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            packed.putByte((byte) s.charAt(i));
+        }
+    }
+
+    private void appendUtf8(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            char c = chars[i];
+            if (c < 0x80) {
+                packed.putByte((byte) c);
+            } else if (c < 0x800) {
+                packed.putByte((byte) (0xC0 | (c >> 6)));
+                packed.putByte((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < offset + length && Character.isLowSurrogate(chars[i + 1])) {
+                int cp = Character.toCodePoint(c, chars[++i]);
+                packed.putByte((byte) (0xF0 | (cp >> 18)));
+                packed.putByte((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                packed.putByte((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                packed.putByte((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                packed.putByte((byte) (0xE0 | (c >> 12)));
+                packed.putByte((byte) (0x80 | ((c >> 6) & 0x3F)));
+                packed.putByte((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > longIds.length) {
+            longIds = Arrays.copyOf(longIds, longIds.length * 2);
+            offsets = Arrays.copyOf(offsets, longIds.length + 1);
+        }
+    }
+
+    private void ensureSortCapacity(int size) {
+        if (size > sortKinds.length) {
+            int newSize = sortKinds.length * 2;
+            sortKinds = Arrays.copyOf(sortKinds, newSize);
+            sortLongs = Arrays.copyOf(sortLongs, newSize);
+            sortDoubles = Arrays.copyOf(sortDoubles, newSize);
+            sortOthers = Arrays.copyOf(sortOthers, newSize);
+        }
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("expected " + expected + " but was " + actual);
+        }
+    }
+}
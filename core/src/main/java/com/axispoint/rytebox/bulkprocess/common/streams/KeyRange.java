@@ -0,0 +1,47 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Value;
+
+/**
+ * The keys a MySqlKeysetSource pages through: those after after (exclusive) up to upTo (inclusive), either bound being
+ * open when null.
+ */
+@Value
+public class KeyRange {
+    public static final KeyRange ALL = new KeyRange(null, null);
+
+    private Long after;
+    private Long upTo;
+
+    public static KeyRange after(Long after) {
+        return new KeyRange(after, null);
+    }
+
+    public KeyRange withAfter(Long after) {
+        return new KeyRange(after, upTo);
+    }
+
+    /**
+     * splits the keys from min to max (e.g. a select min(id), max(id) with the export's predicate) into count ranges of
+     * about the same width, the first open below and the last open above so no key is missed. Keys are rarely spread
+     * evenly, so the ranges are only as even as the keys are.
+     */
+    public static List<KeyRange> split(long min, long max, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive, got " + count);
+        }
+        long width = Math.max(1, (max - min + 1) / count);
+        List<KeyRange> ranges = new ArrayList<>(count);
+        Long after = null;
+        for (int i = 0; i < count - 1 && min - 1 + (i + 1) * width < max; i++) {
+            long upTo = min - 1 + (i + 1) * width;
+            ranges.add(new KeyRange(after, upTo));
+            after = upTo;
+        }
+        ranges.add(new KeyRange(after, null));
+        return ranges;
+    }
+}
@@ -0,0 +1,20 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import java.util.List;
+
+import lombok.Value;
+
+/**
+ * Where a MySqlKeysetSource left off: the ranges it hadn't finished, each moved up to start after the key of the last
+ * row pushed downstream. Passing them back in resumes the export, and once every range is finished there are none left.
+ */
+@Value
+public class KeysetCursor {
+    private List<KeyRange> ranges;
+    private long rows;
+    private long pages;
+
+    public boolean isExhausted() {
+        return ranges.isEmpty();
+    }
+}
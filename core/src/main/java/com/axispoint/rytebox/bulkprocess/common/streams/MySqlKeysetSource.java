@@ -0,0 +1,328 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.regex.Pattern;
+
+import akka.stream.Attributes;
+import akka.stream.Outlet;
+import akka.stream.SourceShape;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.AsyncCallback;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.GraphStageLogicWithLogging;
+import akka.stream.stage.GraphStageWithMaterializedValue;
+import io.vertx.mutiny.mysqlclient.MySQLPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.Tuple;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import scala.Tuple2;
+
+import com.axispoint.rytebox.bulkprocess.common.metrics.PipelineMetrics;
+
+/**
+ * A continuous stream of pages of rows straight from MySQL, for exports whose filter is a plain predicate that doesn't
+ * need an ES search. Pages are read by key (keyset pagination) rather than by offset, so every page is an index range
+ * scan however deep into the table it is:
+ *
+ *   select * from asset where catalog_id = ? and :keyset
+ *
+ * has its KEYSET placeholder replaced by (id > ? and id <= ?) and is followed by order by id limit pageSize, so the
+ * template can't end in an order by, limit or ; of its own. params are the values of the sqlTemplate's own ?
+ * placeholders, in order. The key column must be an integer that's unique and indexed, the primary key usually. It can
+ * be qualified (a.id) for a template with a join; the key is read back from the column of the same name without its
+ * table, or the one given withKeyResultColumn.
+ *
+ * While a page is being pushed downstream the next one is already being read, and the key range can be split into
+ * ranges (see KeyRange.split) that are each read like this at the same time, their pages emitted round-robin as slices
+ * of an ElasticSearchSource are. Each range runs its own queries, so the pool wants a connection per range.
+ *
+ * The materialized KeysetCursor holds the ranges left to read from the last row pushed downstream, to resume from.
+ */
+@Slf4j
+public class MySqlKeysetSource extends GraphStageWithMaterializedValue<SourceShape<List<Row>>, CompletionStage<KeysetCursor>> {
+    public static final String KEYSET = ":keyset";
+    // an order by or limit at the end of the template, i.e. not closed by a ) like one in a subquery
+    private static final Pattern TRAILING_ORDER_OR_LIMIT = Pattern.compile("\\b(order\\s+by|limit)\\b[^)]*$", Pattern.CASE_INSENSITIVE);
+
+    private final Outlet<List<Row>> out = Outlet.create("MySqlKeysetSource.out");
+    private final SourceShape<List<Row>> shape = SourceShape.of(out);
+
+    private final MySQLPool pool;
+    private final String sqlTemplate;
+    private final String keyColumn;
+    private final String keyResultColumn;
+    private final List<Object> params;
+    private final List<KeyRange> startingRanges;
+    private final int pageSize;
+    private final Optional<PipelineMetrics> metrics;
+
+    public MySqlKeysetSource(MySQLPool pool, String sqlTemplate, String keyColumn, List<Object> params, KeyRange range, int pageSize) {
+        this(pool, sqlTemplate, keyColumn, params, List.of(range), pageSize);
+    }
+
+    public MySqlKeysetSource(MySQLPool pool,
+                             String sqlTemplate,
+                             String keyColumn,
+                             List<Object> params,
+                             List<KeyRange> ranges,
+                             int pageSize) {
+        this(pool, sqlTemplate, keyColumn, unqualified(keyColumn), params, ranges, pageSize, Optional.empty());
+    }
+
+    private MySqlKeysetSource(MySQLPool pool,
+                              String sqlTemplate,
+                              String keyColumn,
+                              String keyResultColumn,
+                              List<Object> params,
+                              List<KeyRange> ranges,
+                              int pageSize,
+                              Optional<PipelineMetrics> metrics) {
+        if (!sqlTemplate.contains(KEYSET)) {
+            throw new IllegalArgumentException("sqlTemplate has no " + KEYSET + " placeholder: " + sqlTemplate);
+        }
+        if (sqlTemplate.trim().endsWith(";") || TRAILING_ORDER_OR_LIMIT.matcher(sqlTemplate).find()) {
+            throw new IllegalArgumentException("sqlTemplate can't end in its own order by, limit or ;, they're added to it: " + sqlTemplate);
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive, got " + pageSize);
+        }
+        this.pool = pool;
+        this.sqlTemplate = sqlTemplate;
+        this.keyColumn = keyColumn;
+        this.keyResultColumn = keyResultColumn;
+        this.params = params;
+        this.startingRanges = ranges;
+        this.pageSize = pageSize;
+        this.metrics = metrics;
+    }
+
+    /**
+     * records the latency of every query, the rows read and the rows emitted (as docs) into metrics
+     */
+    public MySqlKeysetSource withMetrics(PipelineMetrics metrics) {
+        return new MySqlKeysetSource(pool, sqlTemplate, keyColumn, keyResultColumn, params, startingRanges, pageSize, Optional.of(metrics));
+    }
+
+    /**
+     * reads the key back from the result column named keyResultColumn, for a key selected under an alias
+     */
+    public MySqlKeysetSource withKeyResultColumn(String keyResultColumn) {
+        return new MySqlKeysetSource(pool, sqlTemplate, keyColumn, keyResultColumn, params, startingRanges, pageSize, metrics);
+    }
+
+    /**
+     * the sqlTemplate with the keyset condition, order and limit in place. The limit is part of the statement rather than
+     * a parameter so every page shares one prepared statement.
+     */
+    String sql() {
+        return sqlTemplate.replace(KEYSET, "(" + keyColumn + " > ? and " + keyColumn + " <= ?)")
+                + " order by " + keyColumn + " limit " + pageSize;
+    }
+
+    @Override
+    public Tuple2<GraphStageLogic, CompletionStage<KeysetCursor>> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+        String sql = sql();
+        // the keyset's two values go wherever the placeholder is among the template's own
+        int keysetParamIndex = StringUtils.countMatches(StringUtils.substringBefore(sqlTemplate, KEYSET), '?');
+        if (keysetParamIndex > params.size()) {
+            throw new IllegalArgumentException("sqlTemplate has more ? placeholders than the " + params.size() + " params given");
+        }
+
+        CompletableFuture<KeysetCursor> mat = new CompletableFuture<>();
+
+        GraphStageLogic logic = new GraphStageLogicWithLogging(shape()) {
+            private final List<Range> ranges = startingRanges.stream().map(Range::new).collect(toList());
+            private boolean pullIsWaitingForData = false;
+            private int nextRangeToEmit = 0;
+            private long rowsCt = 0L;
+            private long pagesCt = 0L;
+
+            private AsyncCallback<PageResult> pageCallback;
+            private AsyncCallback<Throwable> errorCallback;
+
+            {
+                setHandler(out, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        doPull();
+                    }
+                });
+            }
+
+            @Override
+            public void preStart() {
+                pageCallback = createAsyncCallback(this::handlePage);
+                errorCallback = createAsyncCallback(e -> failStage(e));
+                // start reading before the first pull so the first page is on its way as soon as possible
+                ranges.forEach(this::requestMore);
+            }
+
+            @Override
+            public void postStop() {
+                mat.complete(new KeysetCursor(ranges.stream()
+                                                    .filter(r -> !r.isExhausted())
+                                                    .map(r -> r.range.withAfter(r.emittedAfter))
+                                                    .collect(toList()),
+                                              rowsCt,
+                                              pagesCt));
+            }
+
+            private void doPull() {
+                Optional<Range> ready = nextReadyRange();
+                if (ready.isPresent()) {
+                    emit(ready.get());
+                    requestMore(ready.get());
+                    completeIfExhausted();
+                } else {
+                    pullIsWaitingForData = true;
+                    completeIfExhausted();
+                }
+            }
+
+            private void handlePage(PageResult page) {
+                Range range = page.range;
+                range.waiting = false;
+                pagesCt++;
+                metrics.ifPresent(m -> {
+                    m.recordSince(PipelineMetrics.DB_QUERY_MILLIS, page.requestedAt);
+                    m.increment(PipelineMetrics.DB_ROWS, page.rows.size());
+                });
+
+                if (page.rows.size() < pageSize) {
+                    range.fetchedAll = true;
+                }
+                if (!page.rows.isEmpty()) {
+                    range.fetchAfter = keyOf(page.rows.get(page.rows.size() - 1));
+                    range.ready.add(page.rows);
+                    if (pullIsWaitingForData) {
+                        emit(range);
+                    }
+                }
+
+                // read the next page while this one goes downstream
+                requestMore(range);
+                completeIfExhausted();
+            }
+
+            private void emit(Range range) {
+                List<Row> rows = range.ready.poll();
+                pullIsWaitingForData = false;
+                push(out, rows);
+                rowsCt += rows.size();
+                metrics.ifPresent(m -> m.increment(PipelineMetrics.DOCS, rows.size()));
+                range.emittedAfter = keyOf(rows.get(rows.size() - 1));
+                nextRangeToEmit = (ranges.indexOf(range) + 1) % ranges.size();
+            }
+
+            private void completeIfExhausted() {
+                if (ranges.stream().allMatch(Range::isExhausted)) {
+                    completeStage();
+                }
+            }
+
+            // round-robin across ranges with a page ready so no one range gets starved
+            private Optional<Range> nextReadyRange() {
+                for (int i = 0; i < ranges.size(); i++) {
+                    Range range = ranges.get((nextRangeToEmit + i) % ranges.size());
+                    if (!range.ready.isEmpty()) {
+                        return Optional.of(range);
+                    }
+                }
+                return Optional.empty();
+            }
+
+            // keeps a range one page ahead of what's been pushed
+            private void requestMore(Range range) {
+                if (range.fetchedAll || range.waiting || !range.ready.isEmpty()) {
+                    return;
+                }
+                range.waiting = true;
+                long requestedAt = System.nanoTime();
+
+                List<Object> values = new ArrayList<>(params.size() + 2);
+                values.addAll(params.subList(0, keysetParamIndex));
+                values.add(Optional.ofNullable(range.fetchAfter).orElse(Long.MIN_VALUE));
+                values.add(Optional.ofNullable(range.range.getUpTo()).orElse(Long.MAX_VALUE));
+                values.addAll(params.subList(keysetParamIndex, params.size()));
+
+                // !! completes outside the stream, which is only called back into through the AsyncCallbacks
+                pool.preparedQuery(sql)
+                    .execute(Tuple.wrap(values))
+                    .subscribeAsCompletionStage()
+                    .whenComplete((rowSet, e) -> {
+                        if (e != null) {
+                            errorCallback.invoke(e);
+                            return;
+                        }
+                        List<Row> rows = new ArrayList<>(rowSet.size());
+                        rowSet.forEach(rows::add);
+                        pageCallback.invoke(new PageResult(range, rows, requestedAt));
+                    });
+            }
+        };
+
+        return Tuple2.apply(logic, mat);
+    }
+
+    private Long keyOf(Row row) {
+        return row.getLong(keyResultColumn);
+    }
+
+    /**
+     * the name a result column selected as column has: without its table or quotes
+     */
+    private static String unqualified(String column) {
+        return column.substring(column.lastIndexOf('.') + 1).replace("`", "");
+    }
+
+    @Override
+    public SourceShape<List<Row>> shape() {
+        return shape;
+    }
+
+    /**
+     * per-range paging state, only ever touched from within the GraphStageLogic.
+     *
+     * emittedAfter is the key of the last row pushed downstream (what a later iteration resumes from), while fetchAfter
+     * is that of the last row read (what the next query pages from), a page ahead of it while one is ready.
+     */
+    private static final class Range {
+        private final KeyRange range;
+        private Long emittedAfter;
+        private Long fetchAfter;
+        private final Deque<List<Row>> ready = new ArrayDeque<>();
+        private boolean waiting = false;
+        private boolean fetchedAll = false;
+
+        private Range(KeyRange range) {
+            this.range = range;
+            this.emittedAfter = range.getAfter();
+            this.fetchAfter = range.getAfter();
+        }
+
+        private boolean isExhausted() {
+            return fetchedAll && ready.isEmpty() && !waiting;
+        }
+    }
+
+    private static final class PageResult {
+        private final Range range;
+        private final List<Row> rows;
+        private final long requestedAt;
+
+        private PageResult(Range range, List<Row> rows, long requestedAt) {
+            this.range = range;
+            this.rows = rows;
+            this.requestedAt = requestedAt;
+        }
+    }
+}
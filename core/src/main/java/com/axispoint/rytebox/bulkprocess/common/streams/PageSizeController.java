@@ -0,0 +1,41 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+/**
+ * Steers page size toward a target ES took time. Keeps a moving average of the per-doc cost of recent pages and sizes the
+ * next page to fit the target, moving at most a factor of 2 per page so one slow (or cached) response can't swing it to
+ * either bound.
+ *
+ * Not thread-safe, it lives within a single GraphStageLogic.
+ */
+class PageSizeController {
+    private static final double SMOOTHING = 0.3;
+
+    private final PagingSettings settings;
+    private final double targetMillis;
+    private double millisPerDoc = -1;
+    private int pageSize;
+
+    PageSizeController(PagingSettings settings) {
+        this.settings = settings;
+        this.targetMillis = settings.getTargetTook().map(d -> (double) d.toMillis()).orElse(0d);
+        this.pageSize = settings.getInitialPageSize();
+    }
+
+    int pageSize() {
+        return pageSize;
+    }
+
+    void record(int requestedSize, int hits, long tookMillis) {
+        // a short page is the tail of the results and says little about the cost of a full one
+        if (!settings.isAdaptive() || hits < requestedSize || hits == 0) {
+            return;
+        }
+
+        double observed = Math.max(tookMillis, 1L) / (double) hits;
+        millisPerDoc = millisPerDoc < 0 ? observed : SMOOTHING * observed + (1 - SMOOTHING) * millisPerDoc;
+
+        double ideal = targetMillis / millisPerDoc;
+        double bounded = Math.max(pageSize / 2d, Math.min(pageSize * 2d, ideal));
+        pageSize = (int) Math.max(settings.getMinPageSize(), Math.min(settings.getMaxPageSize(), Math.round(bounded)));
+    }
+}
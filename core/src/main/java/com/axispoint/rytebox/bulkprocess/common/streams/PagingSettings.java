@@ -0,0 +1,59 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import lombok.Value;
+
+/**
+ * How an ElasticSearchSource sizes its pages and how far ahead of downstream it reads.
+ *
+ * prefetchDepth bounds the pages each slice holds ready or in flight. search_after pages have to be requested one after
+ * the other, so a deeper queue doesn't add concurrency, it lets ES keep reading while downstream is busy.
+ *
+ * With a targetTook, page sizes adapt between minPageSize and maxPageSize to bring the ES took time toward the target:
+ * bigger pages on a fast cluster to save round trips, smaller ones when ES is struggling. maxPageSize can't exceed
+ * index.max_result_window (10,000 by default), which caps the size of any single search request.
+ */
+@Value
+public class PagingSettings {
+    public static final int MAX_RESULT_WINDOW = 10_000;
+
+    private int initialPageSize;
+    private int minPageSize;
+    private int maxPageSize;
+    private int prefetchDepth;
+    private Duration targetTook;
+
+    public static PagingSettings fixed(int pageSize) {
+        return new PagingSettings(pageSize, pageSize, pageSize, 1, null);
+    }
+
+    public static PagingSettings adaptive(int initialPageSize, int minPageSize, int maxPageSize, Duration targetTook) {
+        return new PagingSettings(initialPageSize, minPageSize, maxPageSize, 1, targetTook);
+    }
+
+    public PagingSettings withPrefetchDepth(int prefetchDepth) {
+        return new PagingSettings(initialPageSize, minPageSize, maxPageSize, prefetchDepth, targetTook);
+    }
+
+    public Optional<Duration> getTargetTook() {
+        return Optional.ofNullable(targetTook);
+    }
+
+    public boolean isAdaptive() {
+        return targetTook != null && minPageSize < maxPageSize;
+    }
+
+    void validate() {
+        if (minPageSize <= 0 || maxPageSize > MAX_RESULT_WINDOW || minPageSize > maxPageSize) {
+            throw new IllegalArgumentException("page sizes (" + minPageSize + "-" + maxPageSize + ") must be between 0 and " + MAX_RESULT_WINDOW);
+        }
+        if (initialPageSize < minPageSize || initialPageSize > maxPageSize) {
+            throw new IllegalArgumentException("initialPageSize (" + initialPageSize + ") must be between " + minPageSize + " and " + maxPageSize);
+        }
+        if (prefetchDepth <= 0) {
+            throw new IllegalArgumentException("prefetchDepth (" + prefetchDepth + ") must be at least 1");
+        }
+    }
+}
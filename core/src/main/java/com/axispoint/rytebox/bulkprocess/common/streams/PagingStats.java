@@ -0,0 +1,19 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import lombok.Value;
+
+/**
+ * Paging figures of an ElasticSearchSource run, to see what page sizes the source settled on and whether the prefetch
+ * queue ran full (downstream is the bottleneck) or empty (ES is).
+ */
+@Value
+public class PagingStats {
+    private long pages;
+    private long hits;
+    private int minPageSize;
+    private int maxPageSize;
+    private int lastPageSize;
+    private long esTookMillis;
+    private double avgQueuedPages;
+    private int maxQueuedPages;
+}
@@ -0,0 +1,292 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import akka.NotUsed;
+import akka.japi.Pair;
+import akka.stream.alpakka.file.ArchiveMetadata;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import akka.util.ByteStringBuilder;
+import lombok.Value;
+
+/**
+ * Streaming zip writer that deflates each entry on a pool of threads, pigz style.
+ *
+ * Entries are cut into fixed size blocks which are deflated independently, each primed with the last 32KB of the block
+ * before it as a preset dictionary so compression is close to a single deflate stream. Every block but the last ends
+ * with a sync flush, putting it on a byte boundary so the compressed blocks can simply be concatenated; a final empty
+ * block then terminates the entry. CRCs are computed serially as blocks are cut, and sizes go in a data descriptor after
+ * each entry, so no entry is ever held in memory in full. Zip64 records are written once sizes or offsets need them.
+ */
+public final class ParallelZip {
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    // a final fixed-huffman block holding only end-of-block, closing a raw deflate stream after a sync flush
+    private static final ByteString FINAL_BLOCK = ByteString.fromArray(new byte[]{0x03, 0x00});
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int ZIP64_END = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int END = 0x06054b50;
+
+    private static final int FLAGS = 0x0808; // sizes in data descriptor, UTF-8 names
+    private static final int DEFLATED = 8;
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+    private static final ByteOrder LE = ByteOrder.LITTLE_ENDIAN;
+
+    private final Executor executor;
+    private final int parallelism;
+    private final int blockSize;
+    private final int level;
+
+    public ParallelZip(Executor executor) {
+        this(executor, Runtime.getRuntime().availableProcessors(), DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public ParallelZip(Executor executor, int parallelism, int blockSize, int level) {
+        if (blockSize < DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("blockSize must be at least " + DICTIONARY_SIZE + ", got " + blockSize);
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.blockSize = blockSize;
+        this.level = level;
+    }
+
+    public Source<ByteString, NotUsed> zip(List<Pair<ArchiveMetadata, Source<ByteString, NotUsed>>> entries) {
+        return Source.lazySource(() -> {
+            Archive archive = new Archive();
+            return Source.from(entries)
+                         .flatMapConcat(entry -> entry(entry.first().filePath(), entry.second()))
+                         .concat(Source.single(new Part(Part.Kind.CENTRAL_DIRECTORY, null, null)))
+                         .map(archive::render);
+        }).mapMaterializedValue(m -> NotUsed.getInstance());
+    }
+
+    /**
+     * the headers and descriptor are only rendered once they reach the end of the stream, when everything before them
+     * (and so the entry's CRC and sizes) has been accounted for
+     */
+    private Source<Part, NotUsed> entry(String name, Source<ByteString, NotUsed> data) {
+        Entry entry = new Entry(name.getBytes(StandardCharsets.UTF_8), LocalDateTime.now());
+
+        Source<ByteString, NotUsed> compressed =
+                data.via(ByteStringFlows.rechunk(blockSize))
+                    .statefulMapConcat(() -> {
+                        ByteString[] previous = {ByteString.emptyByteString()};
+                        return block -> {
+                            entry.crc.update(block.toByteBuffer());
+                            entry.size += block.size();
+                            Block b = new Block(block, previous[0].takeRight(DICTIONARY_SIZE));
+                            previous[0] = block;
+                            return List.of(b);
+                        };
+                    })
+                    .mapAsync(parallelism, b -> CompletableFuture.supplyAsync(() -> deflate(b), executor))
+                    .concat(Source.single(FINAL_BLOCK));
+
+        return Source.single(new Part(Part.Kind.LOCAL_HEADER, entry, null))
+                     .concat(compressed.map(bytes -> new Part(Part.Kind.DATA, entry, bytes)))
+                     .concat(Source.single(new Part(Part.Kind.DATA_DESCRIPTOR, entry, null)));
+    }
+
+    private ByteString deflate(Block block) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (!block.dictionary.isEmpty()) {
+                deflater.setDictionary(block.dictionary.toArray());
+            }
+            deflater.setInput(block.data.toArray());
+
+            ByteStringBuilder out = new ByteStringBuilder();
+            byte[] buffer = new byte[Math.max(1024, block.data.size() / 2)];
+            int n;
+            do {
+                n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                out.putBytes(buffer, 0, n);
+            } while (n == buffer.length);
+            return out.result();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int dosTime(LocalDateTime t) {
+        return (t.getHour() << 11) | (t.getMinute() << 5) | (t.getSecond() >> 1);
+    }
+
+    private static int dosDate(LocalDateTime t) {
+        return (Math.max(0, t.getYear() - 1980) << 9) | (t.getMonthValue() << 5) | t.getDayOfMonth();
+    }
+
+    @Value
+    private static class Block {
+        private ByteString data;
+        private ByteString dictionary;
+    }
+
+    @Value
+    private static class Part {
+        enum Kind { LOCAL_HEADER, DATA, DATA_DESCRIPTOR, CENTRAL_DIRECTORY }
+
+        private Kind kind;
+        private Entry entry;
+        private ByteString bytes;
+    }
+
+    private static class Entry {
+        private final byte[] name;
+        private final LocalDateTime modified;
+        private final CRC32 crc = new CRC32();
+        private long size;
+        private long compressedSize;
+        private long offset;
+
+        private Entry(byte[] name, LocalDateTime modified) {
+            this.name = name;
+            this.modified = modified;
+        }
+
+        private boolean needsZip64() {
+            return size >= MAX_32 || compressedSize >= MAX_32 || offset >= MAX_32;
+        }
+    }
+
+    /**
+     * bookkeeping for one materialization of the zip, rendering the parts in the order they're emitted
+     */
+    private static class Archive {
+        private final List<Entry> entries = new ArrayList<>();
+        private long written;
+
+        private ByteString render(Part part) {
+            switch (part.getKind()) {
+                case LOCAL_HEADER:
+                    return localHeader(part.getEntry());
+                case DATA:
+                    return compressed(part.getEntry(), part.getBytes());
+                case DATA_DESCRIPTOR:
+                    return dataDescriptor(part.getEntry());
+                default:
+                    return centralDirectory();
+            }
+        }
+
+        private ByteString count(ByteString bytes) {
+            written += bytes.size();
+            return bytes;
+        }
+
+        private ByteString localHeader(Entry entry) {
+            entry.offset = written;
+            entries.add(entry);
+            return count(new ByteStringBuilder()
+                                 .putInt(LOCAL_HEADER, LE)
+                                 .putShort(VERSION, LE)
+                                 .putShort(FLAGS, LE)
+                                 .putShort(DEFLATED, LE)
+                                 .putShort(dosTime(entry.modified), LE)
+                                 .putShort(dosDate(entry.modified), LE)
+                                 .putInt(0, LE)
+                                 .putInt(0, LE)
+                                 .putInt(0, LE)
+                                 .putShort(entry.name.length, LE)
+                                 .putShort(0, LE)
+                                 .putBytes(entry.name)
+                                 .result());
+        }
+
+        private ByteString compressed(Entry entry, ByteString bytes) {
+            entry.compressedSize += bytes.size();
+            return count(bytes);
+        }
+
+        private ByteString dataDescriptor(Entry entry) {
+            ByteStringBuilder out = new ByteStringBuilder()
+                    .putInt(DATA_DESCRIPTOR, LE)
+                    .putInt((int) entry.crc.getValue(), LE);
+            if (entry.size >= MAX_32 || entry.compressedSize >= MAX_32) {
+                out.putLong(entry.compressedSize, LE).putLong(entry.size, LE);
+            } else {
+                out.putInt((int) entry.compressedSize, LE).putInt((int) entry.size, LE);
+            }
+            return count(out.result());
+        }
+
+        private ByteString centralDirectory() {
+            long start = written;
+            ByteStringBuilder out = new ByteStringBuilder();
+            for (Entry entry : entries) {
+                boolean zip64 = entry.needsZip64();
+                out.putInt(CENTRAL_HEADER, LE)
+                   .putShort(VERSION_ZIP64, LE)
+                   .putShort(zip64 ? VERSION_ZIP64 : VERSION, LE)
+                   .putShort(FLAGS, LE)
+                   .putShort(DEFLATED, LE)
+                   .putShort(dosTime(entry.modified), LE)
+                   .putShort(dosDate(entry.modified), LE)
+                   .putInt((int) entry.crc.getValue(), LE)
+                   .putInt((int) (zip64 ? MAX_32 : entry.compressedSize), LE)
+                   .putInt((int) (zip64 ? MAX_32 : entry.size), LE)
+                   .putShort(entry.name.length, LE)
+                   .putShort(zip64 ? 28 : 0, LE)
+                   .putShort(0, LE)
+                   .putShort(0, LE)
+                   .putShort(0, LE)
+                   .putInt(0, LE)
+                   .putInt((int) (zip64 ? MAX_32 : entry.offset), LE)
+                   .putBytes(entry.name);
+                if (zip64) {
+                    out.putShort(0x0001, LE)
+                       .putShort(24, LE)
+                       .putLong(entry.size, LE)
+                       .putLong(entry.compressedSize, LE)
+                       .putLong(entry.offset, LE);
+                }
+            }
+            long size = out.length();
+            long zip64End = start + size;
+
+            if (entries.size() >= MAX_16 || start >= MAX_32 || size >= MAX_32) {
+                out.putInt(ZIP64_END, LE)
+                   .putLong(44, LE)
+                   .putShort(VERSION_ZIP64, LE)
+                   .putShort(VERSION_ZIP64, LE)
+                   .putInt(0, LE)
+                   .putInt(0, LE)
+                   .putLong(entries.size(), LE)
+                   .putLong(entries.size(), LE)
+                   .putLong(size, LE)
+                   .putLong(start, LE)
+                   .putInt(ZIP64_LOCATOR, LE)
+                   .putInt(0, LE)
+                   .putLong(zip64End, LE)
+                   .putInt(1, LE);
+            }
+            out.putInt(END, LE)
+               .putShort(0, LE)
+               .putShort(0, LE)
+               .putShort(Math.min(entries.size(), MAX_16), LE)
+               .putShort(Math.min(entries.size(), MAX_16), LE)
+               .putInt((int) Math.min(size, MAX_32), LE)
+               .putInt((int) Math.min(start, MAX_32), LE)
+               .putShort(0, LE);
+            return count(out.result());
+        }
+    }
+}
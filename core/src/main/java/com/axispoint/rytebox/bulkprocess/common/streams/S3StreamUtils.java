@@ -1,21 +1,735 @@
 package com.axispoint.rytebox.bulkprocess.common.streams;
 
+import static java.util.Comparator.comparingInt;
+import static java.util.Comparator.comparingLong;
+import static java.util.stream.Collectors.toList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import akka.Done;
 import akka.NotUsed;
 import akka.japi.Pair;
+import akka.stream.Materializer;
 import akka.stream.alpakka.file.ArchiveMetadata;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Framing;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
 import akka.stream.javadsl.Source;
+import akka.stream.javadsl.StreamConverters;
 import akka.util.ByteString;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.amazonaws.util.IOUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
 
+import com.axispoint.rytebox.bulkprocess.common.dto.Compression;
+import com.axispoint.rytebox.bulkprocess.common.dto.ExportManifest;
+import com.axispoint.rytebox.bulkprocess.common.dto.IterationMetrics;
+import com.axispoint.rytebox.bulkprocess.common.dto.MultipartUploadState;
+
+@Slf4j
 public class S3StreamUtils {
+    public static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    static final long MAX_PART_SIZE = 5L * 1024 * 1024 * 1024;
+    static final int MAX_PARTS = 10_000;
+    public static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    static final int DEFAULT_UPLOAD_PARALLELISM = 4;
+    private static final String TAIL_SUFFIX = ".tail.";
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Pattern ITERATION_FILE = Pattern.compile("iteration-(\\d+)[^/]*");
+
+    private final AmazonS3 s3Client;
+    private final Materializer materializer;
+    private final Executor blockingExecutor;
+
+    public S3StreamUtils(AmazonS3 s3Client, Materializer materializer) {
+        this(s3Client, materializer, materializer.system().dispatchers().lookup("akka.actor.default-blocking-io-dispatcher"));
+    }
+
+    public S3StreamUtils(AmazonS3 s3Client, Materializer materializer, Executor blockingExecutor) {
+        this.s3Client = s3Client;
+        this.materializer = materializer;
+        this.blockingExecutor = blockingExecutor;
+    }
+
+    /**
+     * streams headers + iteration-0 + iteration-1 + ... iteration-n of dirPrefix, every byte passing through this process.
+     * Prefer mergeFilePartsInPlace when the merged file is going back to S3
+     */
     public Source<ByteString, ?> mergeFileParts(Source<String, NotUsed> headers, String bucketName, String dirPrefix) {
-        // TODO: open stream of all files (ordered), and concat:
-        //      headers + stream.0 + stream.1 + ... stream.n
-        return Source.empty();
+        return mergeFileParts(headers, bucketName, dirPrefix, Compression.NONE);
+    }
+
+    /**
+     * merges iteration files compressed with codec, compressing the headers with it too so they can go in front
+     */
+    public Source<ByteString, ?> mergeFileParts(Source<String, NotUsed> headers, String bucketName, String dirPrefix, Compression codec) {
+        Source<ByteString, NotUsed> parts =
+                Source.lazyCompletionStage(() -> CompletableFuture.supplyAsync(() -> listIterationFiles(bucketName, dirPrefix), blockingExecutor))
+                      .mapConcat(files -> files)
+                      .flatMapConcat(file -> download(bucketName, file.getKey()));
+
+        return headers.map(ByteString::fromString)
+                      .via(compress(codec))
+                      .concat(parts);
+    }
+
+    /**
+     * Merges headers + iteration-0 + iteration-1 + ... iteration-n of dirPrefix into targetKey as a multipart upload, with
+     * S3 concatenating the iteration files server-side (UploadPartCopy) so their bytes never pass through the lambda.
+     *
+     * Every part but the last has to be at least 5MB, so the headers and any parts (or ends of parts) too small to
+     * stand on their own are coalesced in memory with ranged GETs, which never holds more than ~10MB. Falls back to
+     * streaming the files through (mergeFileParts) if the store doesn't implement UploadPartCopy or there are too many
+     * parts for one upload.
+     */
+    public CompletionStage<Done> mergeFilePartsInPlace(Source<String, NotUsed> headers,
+                                                       String bucketName,
+                                                       String dirPrefix,
+                                                       String targetKey) {
+        return mergeFilePartsInPlace(headers, bucketName, dirPrefix, targetKey, Compression.NONE);
+    }
+
+    public CompletionStage<Done> mergeFilePartsInPlace(Source<String, NotUsed> headers,
+                                                       String bucketName,
+                                                       String dirPrefix,
+                                                       String targetKey,
+                                                       Compression codec) {
+        return mergeInPlace(headers,
+                            bucketName,
+                            dirPrefix,
+                            () -> listIterationFiles(bucketName, dirPrefix),
+                            targetKey,
+                            codec,
+                            () -> mergeFileParts(headers, bucketName, dirPrefix, codec));
+    }
+
+    /**
+     * merges whole objects, in the order given, into targetKey the same way mergeFilePartsInPlace merges iteration
+     * files, e.g. the outputs of the shards of a ShardPlan. Any of them missing fails the merge, whichever way it's run.
+     */
+    public CompletionStage<Done> mergeObjectsInPlace(Source<String, NotUsed> headers,
+                                                     String bucketName,
+                                                     List<String> keys,
+                                                     String targetKey,
+                                                     Compression codec) {
+        return mergeInPlace(headers,
+                            bucketName,
+                            keys.size() + " objects",
+                            () -> keys.stream().map(key -> describe(bucketName, key)).collect(toList()),
+                            targetKey,
+                            codec,
+                            () -> headers.map(ByteString::fromString)
+                                         .via(compress(codec))
+                                         .concat(Source.from(keys).flatMapConcat(key -> download(bucketName, key))));
+    }
+
+    private CompletionStage<Done> mergeInPlace(Source<String, NotUsed> headers,
+                                               String bucketName,
+                                               String merging,
+                                               Supplier<List<S3ObjectSummary>> listParts,
+                                               String targetKey,
+                                               Compression codec,
+                                               Supplier<Source<ByteString, ?>> streamed) {
+        CompletionStage<ByteString> headerBytes = headers.map(ByteString::fromString)
+                                                         .via(compress(codec))
+                                                         .runFold(ByteString.emptyByteString(), ByteString::concat, materializer);
+
+        return headerBytes.thenComposeAsync(header -> {
+            List<S3ObjectSummary> parts = listParts.get();
+            long totalSize = parts.stream().mapToLong(S3ObjectSummary::getSize).sum();
+            if (totalSize / MIN_PART_SIZE + parts.size() >= MAX_PARTS) {
+                log.info("too many parts ({}) to merge {} server-side, streaming instead", parts.size(), merging);
+                return streamMerge(streamed.get(), bucketName, targetKey);
+            }
+
+            try {
+                new ServerSideMerge(bucketName, targetKey).run(header, parts);
+                return CompletableFuture.completedFuture(Done.getInstance());
+            } catch (AmazonS3Exception e) {
+                if (e.getStatusCode() != 501) {
+                    throw e;
+                }
+                log.info("object store doesn't support UploadPartCopy ({}), streaming merge of {} instead", e.getErrorCode(), merging);
+                return streamMerge(streamed.get(), bucketName, targetKey);
+            }
+        }, blockingExecutor);
+    }
+
+    private CompletionStage<Done> streamMerge(Source<ByteString, ?> merged, String bucketName, String targetKey) {
+        return merged.runWith(multipartUpload(bucketName, targetKey), materializer);
+    }
+
+    /**
+     * a part missing by the time it's merged fails the merge, since the merged file would silently be missing its data
+     */
+    private Source<ByteString, NotUsed> download(String bucketName, String key) {
+        return StreamConverters.fromInputStream(() -> {
+                                   try {
+                                       return s3Client.getObject(bucketName, key).getObjectContent();
+                                   } catch (AmazonS3Exception e) {
+                                       if (e.getStatusCode() == 404) {
+                                           throw new IllegalStateException("part " + key + " disappeared before it could be merged", e);
+                                       }
+                                       throw e;
+                                   }
+                               })
+                               .mapMaterializedValue(io -> NotUsed.getInstance());
+    }
+
+    /**
+     * uploads everything the stream carries to key in parts of DEFAULT_PART_SIZE, through s3Client like everything else
+     * here, aborting the upload if the stream fails
+     */
+    private Sink<ByteString, CompletionStage<Done>> multipartUpload(String bucketName, String key) {
+        return Sink.<ByteString, CompletionStage<Done>>fromMaterializer((mat, attributes) -> {
+            CompletableFuture<MultipartUploadState> started =
+                    CompletableFuture.supplyAsync(() -> initiateUpload(bucketName, key), blockingExecutor);
+
+            return Flow.of(ByteString.class)
+                       .via(ByteStringFlows.rechunk(DEFAULT_PART_SIZE))
+                       .zipWithIndex()
+                       .mapAsync(DEFAULT_UPLOAD_PARALLELISM, chunk -> started.thenApplyAsync(state -> {
+                           int partNumber = chunk.second().intValue() + 1;
+                           checkPartNumber(partNumber);
+                           return uploadPart(state, partNumber, chunk.first().toArray()).getPartETag();
+                       }, blockingExecutor))
+                       .toMat(Sink.seq(), Keep.right())
+                       .mapMaterializedValue(uploaded -> started.thenCombineAsync(uploaded, (state, parts) -> {
+                           List<PartETag> etags = new ArrayList<>(parts);
+                           if (etags.isEmpty()) {
+                               // an upload can't be completed without a part, even for an empty object
+                               etags.add(uploadPart(state, 1, new byte[0]).getPartETag());
+                           }
+                           s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, state.getUploadId(), etags));
+                           return Done.getInstance();
+                       }, blockingExecutor).whenComplete((done, e) -> {
+                           if (e != null) {
+                               started.thenAcceptAsync(state -> s3Client.abortMultipartUpload(
+                                       new AbortMultipartUploadRequest(bucketName, key, state.getUploadId())), blockingExecutor);
+                           }
+                       }));
+        }).mapMaterializedValue(done -> done.thenCompose(d -> d));
+    }
+
+    private S3ObjectSummary describe(String bucketName, String key) {
+        S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setBucketName(bucketName);
+        summary.setKey(key);
+        try {
+            summary.setSize(s3Client.getObjectMetadata(bucketName, key).getContentLength());
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                throw new IllegalStateException("object " + key + " to merge doesn't exist", e);
+            }
+            throw e;
+        }
+        return summary;
+    }
+
+    /**
+     * the iteration files directly under dirPrefix, in iteration order. Anything further down, like the iterations of
+     * each shard of a ShardPlan (dirPrefix/shard-0000/iteration-0...), belongs to another merge
+     */
+    List<S3ObjectSummary> listIterationFiles(String bucketName, String dirPrefix) {
+        String prefix = dirPrefix + "/";
+        List<S3ObjectSummary> parts = new ArrayList<>();
+        ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(bucketName).withPrefix(prefix);
+        ListObjectsV2Result result;
+        do {
+            result = s3Client.listObjectsV2(request);
+            result.getObjectSummaries().stream()
+                  .filter(o -> iterationOf(prefix, o.getKey()).isPresent())
+                  .forEach(parts::add);
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+
+        parts.sort(comparingLong(o -> iterationOf(prefix, o.getKey()).get()));
+        return parts;
+    }
+
+    static Optional<Long> iterationOf(String prefix, String key) {
+        if (!key.startsWith(prefix)) {
+            return Optional.empty();
+        }
+        Matcher matcher = ITERATION_FILE.matcher(key.substring(prefix.length()));
+        return matcher.matches() ? Optional.of(Long.valueOf(matcher.group(1))) : Optional.empty();
+    }
+
+    /**
+     * compresses a stream of output with codec (see BlockCompression) on the blocking executor, to go in front of an S3
+     * sink. The key written to should end with the codec's extension.
+     */
+    public Flow<ByteString, ByteString, NotUsed> compress(Compression codec) {
+        return new BlockCompression(blockingExecutor).compress(codec);
     }
 
+    /**
+     * zips the streams, in order, into a single archive; entries are deflated block-parallel on the blocking executor
+     */
+    // the array is only ever read
+    @SuppressWarnings("unchecked")
     public Source<ByteString, NotUsed> zipFileStreams(Pair<ArchiveMetadata, Source<ByteString, NotUsed>>... streams) {
-        // TODO: open stream of all files (ordered), and concat:
-        //      headers + stream.0 + stream.1 + ... stream.n
-        return Source.empty();
+        return new ParallelZip(blockingExecutor).zip(Arrays.asList(streams));
+    }
+
+    public CompletionStage<Done> zipToS3(String bucketName, String key, List<Pair<ArchiveMetadata, Source<ByteString, NotUsed>>> streams) {
+        return new ParallelZip(blockingExecutor).zip(streams)
+                                                .runWith(multipartUpload(bucketName, key), materializer);
+    }
+
+    /**
+     * a sink writing into a multipart upload that outlives the stream: resumes the given upload (starting a new one at
+     * bucketName/key if there isn't one) and uploads whole parts of partSize, keeping anything smaller than that back as
+     * the upload's tail. The materialized state is what the next iteration resumes from, and what completeUpload finally
+     * completes once there's no more data.
+     */
+    public Sink<ByteString, CompletionStage<MultipartUploadState>> resumableUpload(Optional<MultipartUploadState> resume,
+                                                                               String bucketName,
+                                                                               String key,
+                                                                               int partSize,
+                                                                               int parallelism) {
+        if (partSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException("partSize must be at least " + MIN_PART_SIZE + ", got " + partSize);
+        }
+
+        return Sink.<ByteString, CompletionStage<MultipartUploadState>>fromMaterializer((mat, attributes) -> {
+            CompletableFuture<MultipartUploadState> started =
+                    CompletableFuture.supplyAsync(() -> resume.orElseGet(() -> initiateUpload(bucketName, key)), blockingExecutor);
+
+            Source<ByteString, NotUsed> tail = Source.completionStage(started)
+                                                     .flatMapConcat(state -> Optional.ofNullable(state.getTailKey())
+                                                                                     .map(tailKey -> readTail(state.getBucket(), tailKey))
+                                                                                     .orElseGet(Source::empty));
+
+            return Flow.of(ByteString.class)
+                       .prepend(tail)
+                       .via(ByteStringFlows.rechunk(partSize))
+                       .zipWithIndex()
+                       .mapAsync(parallelism, chunk -> started.thenApplyAsync(
+                               state -> flush(state, state.getNextPartNumber() + chunk.second().intValue(), chunk.first()),
+                               blockingExecutor))
+                       .toMat(Sink.seq(), Keep.right())
+                       .mapMaterializedValue(flushed -> started.thenCombine(flushed, S3StreamUtils::afterFlush));
+        }).mapMaterializedValue(state -> state.thenCompose(s -> s));
+    }
+
+    public Sink<ByteString, CompletionStage<MultipartUploadState>> resumableUpload(Optional<MultipartUploadState> resume,
+                                                                               String bucketName,
+                                                                               String key) {
+        return resumableUpload(resume, bucketName, key, DEFAULT_PART_SIZE, DEFAULT_UPLOAD_PARALLELISM);
+    }
+
+    /**
+     * uploads the tail as the last part (which is allowed to be under 5MB) and completes the upload with the parts S3 has
+     * for it. Parts from the next part number on are left out: they can only be from a rerun iteration that was abandoned.
+     */
+    public CompletionStage<Done> completeUpload(MultipartUploadState state) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<PartETag> etags = listParts(state);
+            if (state.getTailKey() != null || etags.isEmpty()) {
+                checkPartNumber(state.getNextPartNumber());
+                byte[] tail = state.getTailKey() == null ? new byte[0] : getBytes(state.getBucket(), state.getTailKey(), Optional.empty());
+                etags.add(uploadPart(state, state.getNextPartNumber(), tail).getPartETag());
+            }
+            s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(state.getBucket(), state.getKey(), state.getUploadId(), etags));
+            log.info("completed upload of {} in {} parts", state.getKey(), etags.size());
+            deleteTails(state);
+            return Done.getInstance();
+        }, blockingExecutor);
+    }
+
+    public CompletionStage<Done> abortUpload(MultipartUploadState state) {
+        return CompletableFuture.supplyAsync(() -> {
+            s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(state.getBucket(), state.getKey(), state.getUploadId()));
+            deleteTails(state);
+            return Done.getInstance();
+        }, blockingExecutor);
+    }
+
+    private MultipartUploadState initiateUpload(String bucketName, String key) {
+        String uploadId = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key)).getUploadId();
+        log.info("started multipart upload of {}", key);
+        return new MultipartUploadState(bucketName, key, uploadId, 1, null);
+    }
+
+    private List<PartETag> listParts(MultipartUploadState state) {
+        List<PartETag> etags = new ArrayList<>();
+        ListPartsRequest request = new ListPartsRequest(state.getBucket(), state.getKey(), state.getUploadId());
+        PartListing listing;
+        do {
+            listing = s3Client.listParts(request);
+            listing.getParts().stream()
+                   .filter(p -> p.getPartNumber() < state.getNextPartNumber())
+                   .forEach(p -> etags.add(new PartETag(p.getPartNumber(), p.getETag())));
+            request.setPartNumberMarker(listing.getNextPartNumberMarker());
+        } while (listing.isTruncated());
+        etags.sort(comparingInt(PartETag::getPartNumber));
+        return etags;
+    }
+
+    private static void checkPartNumber(int partNumber) {
+        if (partNumber > MAX_PARTS) {
+            throw new IllegalStateException("an upload can't have more than " + MAX_PARTS + " parts, it needs a bigger partSize");
+        }
+    }
+
+    private Source<ByteString, NotUsed> readTail(String bucketName, String tailKey) {
+        return Source.lazyCompletionStage(() -> CompletableFuture.supplyAsync(
+                () -> ByteString.fromArray(getBytes(bucketName, tailKey, Optional.empty())), blockingExecutor));
+    }
+
+    /**
+     * only the last chunk of a stream can be short of a full part, so that's the one kept back as the tail unless it's
+     * big enough to be a part anyway
+     */
+    private Flushed flush(MultipartUploadState state, int partNumber, ByteString chunk) {
+        if (chunk.size() >= MIN_PART_SIZE) {
+            checkPartNumber(partNumber);
+            uploadPart(state, partNumber, chunk.toArray());
+            return new Flushed(true, null);
+        }
+        String tailKey = state.getKey() + TAIL_SUFFIX + UUID.randomUUID();
+        byte[] bytes = chunk.toArray();
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(bytes.length);
+        s3Client.putObject(state.getBucket(), tailKey, new ByteArrayInputStream(bytes), metadata);
+        return new Flushed(false, tailKey);
+    }
+
+    private UploadPartResult uploadPart(MultipartUploadState state, int partNumber, byte[] bytes) {
+        return s3Client.uploadPart(new UploadPartRequest()
+                                           .withBucketName(state.getBucket())
+                                           .withKey(state.getKey())
+                                           .withUploadId(state.getUploadId())
+                                           .withPartNumber(partNumber)
+                                           .withPartSize(bytes.length)
+                                           .withInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * writes an iteration's metrics as JSON next to its output, as dirPrefix/metrics-N.json (named so it's never taken
+     * for an iteration file by a merge)
+     */
+    public CompletionStage<Done> writeMetrics(String bucketName, String dirPrefix, IterationMetrics metrics) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                byte[] json = JSON.writeValueAsBytes(metrics);
+                ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setContentLength(json.length);
+                metadata.setContentType("application/json");
+                s3Client.putObject(bucketName, dirPrefix + "/metrics-" + metrics.getIteration() + ".json", new ByteArrayInputStream(json), metadata);
+                return Done.getInstance();
+            } catch (IOException e) {
+                throw new UncheckedIOException("failed to write metrics of iteration " + metrics.getIteration(), e);
+            }
+        }, blockingExecutor);
+    }
+
+    /**
+     * writes a completed export's manifest as processId/manifest.json in its output bucket
+     */
+    public CompletionStage<Done> writeManifest(String bucketName, ExportManifest manifest) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                byte[] json = JSON.writeValueAsBytes(manifest);
+                ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setContentLength(json.length);
+                metadata.setContentType("application/json");
+                s3Client.putObject(bucketName, manifest.getProcessId() + "/" + ExportManifest.FILE_NAME, new ByteArrayInputStream(json), metadata);
+                return Done.getInstance();
+            } catch (IOException e) {
+                throw new UncheckedIOException("failed to write manifest of " + manifest.getProcessId(), e);
+            }
+        }, blockingExecutor);
+    }
+
+    /**
+     * the manifest of the export processId, which is only there once that export has completed
+     */
+    public CompletionStage<Optional<ExportManifest>> readManifest(String bucketName, String processId) {
+        return CompletableFuture.supplyAsync(() -> {
+            String key = processId + "/" + ExportManifest.FILE_NAME;
+            try {
+                return Optional.of(JSON.readValue(getBytes(bucketName, key, Optional.empty()), ExportManifest.class));
+            } catch (AmazonS3Exception e) {
+                if (e.getStatusCode() == 404) {
+                    return Optional.empty();
+                }
+                throw e;
+            } catch (IOException e) {
+                throw new UncheckedIOException("failed to read manifest of " + processId, e);
+            }
+        }, blockingExecutor);
+    }
+
+    /**
+     * writes what a SpillingBuffer held when the iteration stopped as dirPrefix/carryover-N, for the next iteration to
+     * replay ahead of its search. Whatever of the previous carry-over wasn't replayed is written after it, since it was
+     * due before anything the search reads. The previous carry-over is deleted, and nothing is written when there's
+     * nothing left to carry over.
+     */
+    public CompletionStage<Optional<String>> writeCarryOver(SpillingBuffer.Remainder remainder,
+                                                            Optional<String> previousKey,
+                                                            Replayed previous,
+                                                            String bucketName,
+                                                            String dirPrefix,
+                                                            int iteration) {
+        String key = dirPrefix + "/carryover-" + iteration;
+        Source<ByteString, NotUsed> unreplayed = previousKey.filter(k -> !previous.isExhausted())
+                                                            .map(k -> carryOverRecords(bucketName, k).drop(previous.getRecords()))
+                                                            .orElseGet(Source::empty);
+
+        return remainder.getRecords()
+                        .concat(unreplayed)
+                        .runWith(resumableUpload(Optional.empty(), bucketName, key), materializer)
+                        .thenCompose(state -> state.isEmpty()
+                                ? abortUpload(state).thenApply(done -> Optional.<String>empty())
+                                : completeUpload(state).thenApply(done -> Optional.of(key)))
+                        .thenApplyAsync(written -> {
+                            previousKey.ifPresent(k -> s3Client.deleteObject(bucketName, k));
+                            written.ifPresent(k -> log.info("carried {} buffered elements over to {}", remainder.getElements(), k));
+                            return written;
+                        }, blockingExecutor)
+                        .whenComplete((written, e) -> remainder.discard());
+    }
+
+    /**
+     * replays a carry-over written by writeCarryOver, materializing how much of it was replayed before the stream
+     * stopped
+     */
+    public <T> Source<T, CompletionStage<Replayed>> readCarryOver(String bucketName, String key, SpillingBuffer.Codec<T> codec) {
+        return Source.<T, CompletionStage<Replayed>>fromMaterializer((mat, attributes) -> {
+            AtomicLong records = new AtomicLong();
+            AtomicBoolean exhausted = new AtomicBoolean();
+            return carryOverRecords(bucketName, key)
+                    .map(record -> {
+                        records.incrementAndGet();
+                        return codec.decode(record.drop(SpillingBuffer.LENGTH_BYTES).toArray());
+                    })
+                    .concat(Source.lazySource(() -> {
+                        exhausted.set(true);
+                        return Source.<T>empty();
+                    }))
+                    .watchTermination((notUsed, done) -> done.handle((d, e) -> new Replayed(records.get(), exhausted.get())));
+        }).mapMaterializedValue(replayed -> replayed.thenCompose(r -> r));
+    }
+
+    private Source<ByteString, NotUsed> carryOverRecords(String bucketName, String key) {
+        return StreamConverters.fromInputStream(() -> s3Client.getObject(bucketName, key).getObjectContent())
+                               .via(Framing.lengthField(SpillingBuffer.LENGTH_BYTES, 0, Integer.MAX_VALUE, ByteOrder.BIG_ENDIAN))
+                               .mapMaterializedValue(io -> NotUsed.getInstance());
+    }
+
+    private static MultipartUploadState afterFlush(MultipartUploadState state, List<Flushed> flushed) {
+        int parts = 0;
+        String tailKey = null;
+        for (Flushed f : flushed) {
+            if (f.isPart()) {
+                parts++;
+            } else {
+                tailKey = f.getTailKey();
+            }
+        }
+        return new MultipartUploadState(state.getBucket(), state.getKey(), state.getUploadId(), state.getNextPartNumber() + parts, tailKey);
+    }
+
+    /**
+     * tails are never overwritten (a rerun iteration may still need the one it started from), so they're all cleaned up
+     * together once the upload is finished with
+     */
+    private void deleteTails(MultipartUploadState state) {
+        ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(state.getBucket())
+                                                                 .withPrefix(state.getKey() + TAIL_SUFFIX);
+        ListObjectsV2Result result;
+        do {
+            result = s3Client.listObjectsV2(request);
+            result.getObjectSummaries().forEach(o -> s3Client.deleteObject(state.getBucket(), o.getKey()));
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+    }
+
+    private byte[] getBytes(String bucketName, String key, Optional<long[]> range) {
+        GetObjectRequest request = new GetObjectRequest(bucketName, key);
+        range.ifPresent(r -> request.setRange(r[0], r[1]));
+        try (S3Object object = s3Client.getObject(request)) {
+            return IOUtils.toByteArray(object.getObjectContent());
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to read " + key, e);
+        }
+    }
+
+    /**
+     * how many records of a carry-over were replayed, and whether that was all of them
+     */
+    @Value
+    public static class Replayed {
+        public static final Replayed NONE = new Replayed(0, true);
+
+        private long records;
+        private boolean exhausted;
+    }
+
+    @Value
+    private static class Flushed {
+        private boolean part;
+        private String tailKey;
+    }
+
+    /**
+     * splits from..to into the fewest [from, to) ranges of at most maxPartSize, as evenly as possible so each of them is
+     * at least half of maxPartSize unless there's only the one. A copy of at least MIN_PART_SIZE so never makes a part
+     * any smaller than that
+     */
+    static List<long[]> copyRanges(long from, long to, long maxPartSize) {
+        long length = to - from;
+        long copies = (length + maxPartSize - 1) / maxPartSize;
+        List<long[]> ranges = new ArrayList<>();
+        for (long i = 0; i < copies; i++) {
+            ranges.add(new long[]{from + length * i / copies, from + length * (i + 1) / copies});
+        }
+        return ranges;
+    }
+
+    /**
+     * a single multipart upload of a merge, run synchronously on the blocking executor
+     */
+    private class ServerSideMerge {
+        private final String bucketName;
+        private final String targetKey;
+        private final List<PartETag> etags = new ArrayList<>();
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private String uploadId;
+
+        private ServerSideMerge(String bucketName, String targetKey) {
+            this.bucketName = bucketName;
+            this.targetKey = targetKey;
+        }
+
+        private void run(ByteString header, List<S3ObjectSummary> parts) {
+            uploadId = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, targetKey)).getUploadId();
+            try {
+                buffer.write(header.toArray());
+                for (S3ObjectSummary part : parts) {
+                    append(part);
+                }
+                if (buffer.size() > 0 || etags.isEmpty()) {
+                    uploadBuffer();
+                }
+                s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, targetKey, uploadId, etags));
+                log.info("merged {} files into {} as {} parts", parts.size(), targetKey, etags.size());
+            } catch (IOException e) {
+                abort();
+                throw new IllegalStateException("failed to merge into " + targetKey, e);
+            } catch (RuntimeException e) {
+                abort();
+                throw e;
+            }
+        }
+
+        private void append(S3ObjectSummary part) throws IOException {
+            long size = part.getSize();
+            long position = 0;
+
+            if (buffer.size() > 0) {
+                // top the buffer up to a full part, or take all of the file if what's left of it couldn't be a part itself
+                long take = Math.min(size, MIN_PART_SIZE - buffer.size());
+                if (size - take < MIN_PART_SIZE) {
+                    take = size;
+                }
+                read(part.getKey(), 0, take);
+                position = take;
+                if (buffer.size() >= MIN_PART_SIZE) {
+                    uploadBuffer();
+                }
+            }
+
+            long remaining = size - position;
+            if (remaining >= MIN_PART_SIZE) {
+                for (long[] range : copyRanges(position, size, MAX_PART_SIZE)) {
+                    copy(part.getKey(), range[0], range[1]);
+                }
+            } else if (remaining > 0) {
+                read(part.getKey(), position, size);
+            }
+        }
+
+        private void read(String key, long from, long to) throws IOException {
+            if (to <= from) {
+                return;
+            }
+            buffer.write(getBytes(bucketName, key, Optional.of(new long[]{from, to - 1})));
+        }
+
+        private void copy(String key, long from, long to) {
+            int partNumber = etags.size() + 1;
+            etags.add(s3Client.copyPart(new CopyPartRequest()
+                                                .withSourceBucketName(bucketName)
+                                                .withSourceKey(key)
+                                                .withDestinationBucketName(bucketName)
+                                                .withDestinationKey(targetKey)
+                                                .withUploadId(uploadId)
+                                                .withFirstByte(from)
+                                                .withLastByte(to - 1)
+                                                .withPartNumber(partNumber))
+                              .getPartETag());
+        }
+
+        private void uploadBuffer() {
+            byte[] bytes = buffer.toByteArray();
+            buffer.reset();
+            int partNumber = etags.size() + 1;
+            etags.add(s3Client.uploadPart(new UploadPartRequest()
+                                                  .withBucketName(bucketName)
+                                                  .withKey(targetKey)
+                                                  .withUploadId(uploadId)
+                                                  .withPartNumber(partNumber)
+                                                  .withPartSize(bytes.length)
+                                                  .withInputStream(new ByteArrayInputStream(bytes)))
+                              .getPartETag());
+        }
+
+        private void abort() {
+            try {
+                s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, targetKey, uploadId));
+            } catch (RuntimeException e) {
+                log.warn("failed to abort multipart upload {} of {}", uploadId, targetKey, e);
+            }
+        }
     }
 }
@@ -0,0 +1,33 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import java.util.List;
+import java.util.Optional;
+
+import lombok.Value;
+
+import com.axispoint.rytebox.bulkprocess.common.dto.PointInTime;
+
+/**
+ * Where an ElasticSearchSource left off: the searchAfter sort values of the last hit pushed downstream for each slice
+ * (a single entry when the search isn't sliced). A slice that hasn't emitted anything yet has a null entry.
+ *
+ * pointInTime is the still-open PIT the search was paging through, to be passed back in on the next iteration. It is
+ * null when no PIT was used, or once the search is exhausted and the PIT has been closed.
+ *
+ * stats is informational only, it has no bearing on resuming the search.
+ */
+@Value
+public class SearchCursor {
+    private List<Object[]> searchAfter;
+    private PointInTime pointInTime;
+    private boolean exhausted;
+    private PagingStats stats;
+
+    public Optional<PointInTime> getPointInTime() {
+        return Optional.ofNullable(pointInTime);
+    }
+
+    public int getSlices() {
+        return searchAfter.size();
+    }
+}
@@ -0,0 +1,53 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.SearchHit;
+
+/**
+ * Spills pages of hits as SMILE (binary JSON) arrays of the hits as ES renders them, which SearchHit.fromXContent reads
+ * back. The id, source, fields and sort values of a hit survive the round trip, its shard and explanation don't.
+ */
+public class SearchHitsCodec implements SpillingBuffer.Codec<List<SearchHit>> {
+    @Override
+    public byte[] encode(List<SearchHit> hits) {
+        try (XContentBuilder builder = XContentFactory.smileBuilder()) {
+            builder.startArray();
+            for (SearchHit hit : hits) {
+                hit.toXContent(builder, ToXContent.EMPTY_PARAMS);
+            }
+            builder.endArray();
+            return BytesReference.toBytes(BytesReference.bytes(builder));
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to encode hits", e);
+        }
+    }
+
+    @Override
+    public List<SearchHit> decode(byte[] bytes) {
+        try (XContentParser parser = XContentType.SMILE.xContent()
+                                                       .createParser(NamedXContentRegistry.EMPTY,
+                                                                     DeprecationHandler.THROW_UNSUPPORTED_OPERATION,
+                                                                     bytes)) {
+            List<SearchHit> hits = new ArrayList<>();
+            parser.nextToken();
+            while (parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                hits.add(SearchHit.fromXContent(parser));
+            }
+            return hits;
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to decode hits", e);
+        }
+    }
+}
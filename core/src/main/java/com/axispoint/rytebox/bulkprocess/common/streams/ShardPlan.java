@@ -0,0 +1,38 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import static java.util.stream.Collectors.toList;
+
+import java.util.List;
+
+import lombok.Value;
+
+import com.axispoint.rytebox.bulkprocess.common.dto.DqiInput;
+
+/**
+ * An export split by ShardPlanner into shards, each a DqiInput of its own to be run to completion independently (and
+ * concurrently). Shard i exports the docs whose field is in [boundaries[i - 1], boundaries[i]), the first and last
+ * shards being open-ended and the first also exporting the docs without the field, so the shards are in sort order and
+ * their outputs concatenated in order are the export.
+ */
+@Value
+public class ShardPlan {
+    private String processId;
+    private String field;
+    private long totalHits;
+    private List<Long> boundaries;
+    private List<DqiInput> shards;
+
+    /**
+     * each shard's processId, which is also the S3 dir its output is written to
+     */
+    public List<String> getShardPrefixes() {
+        return shards.stream().map(DqiInput::getProcessId).collect(toList());
+    }
+
+    /**
+     * the key of fileName in each shard's dir, in shard order, e.g. to merge with S3StreamUtils.mergeObjectsInPlace
+     */
+    public List<String> getOutputKeys(String fileName) {
+        return shards.stream().map(shard -> shard.getProcessId() + "/" + fileName).collect(toList());
+    }
+}
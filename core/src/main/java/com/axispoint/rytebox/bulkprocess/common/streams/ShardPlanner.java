@@ -0,0 +1,171 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.IntStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.metrics.Max;
+import org.elasticsearch.search.aggregations.metrics.Min;
+import org.elasticsearch.search.aggregations.metrics.Percentiles;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import com.axispoint.rytebox.bulkprocess.common.dto.DqiInput;
+
+/**
+ * Splits one export into shards that can be run by separate lambdas at the same time, rather than by one lambda
+ * re-invoking itself until it's done. Slices parallelize the search within one invocation; shards spread an export
+ * over as many invocations as there are shards (and each shard can still be sliced).
+ *
+ * The split is on a numeric sort field (the id by default): one size 0 search gets its min, max and percentiles over
+ * the export's query, and the shards are cut at the percentiles so they hold about the same number of docs. Each shard
+ * gets the export's query restricted to its range with a range filter, and a processId of its own under the export's,
+ * as processId/shard-0000 and so on. Docs without the field go in the first shard, and a single shard has no filter at
+ * all. A field with fewer distinct values than shards gives fewer shards.
+ *
+ * A delta export is planned over the docs changed since its base, so it should have begun (DqiInput.begin) before it's
+ * planned. Its shards carry over its delta settings.
+ */
+@Slf4j
+public class ShardPlanner {
+    public static final String DEFAULT_FIELD = "id";
+    static final String SHARD_DIR = "shard-";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final RestHighLevelClient esClient;
+
+    public ShardPlanner(RestHighLevelClient esClient) {
+        this.esClient = esClient;
+    }
+
+    public CompletionStage<ShardPlan> plan(DqiInput export, int shards) {
+        return plan(export, DEFAULT_FIELD, shards);
+    }
+
+    public CompletionStage<ShardPlan> plan(DqiInput export, String field, int shards) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("shards must be at least 1, got " + shards);
+        }
+
+        double[] percents = IntStream.range(1, shards).mapToDouble(i -> 100.0 * i / shards).toArray();
+        SearchSourceBuilder source = new SearchSourceBuilder()
+                .size(0)
+                .trackTotalHits(true)
+                .query(QueryBuilders.wrapperQuery(export.getSearchQuery().toString()))
+                .aggregation(AggregationBuilders.min("min").field(field))
+                .aggregation(AggregationBuilders.max("max").field(field));
+        if (percents.length > 0) {
+            source.aggregation(AggregationBuilders.percentiles("bounds").field(field).percentiles(percents));
+        }
+
+        CompletableFuture<SearchResponse> response = new CompletableFuture<>();
+        esClient.searchAsync(new SearchRequest(export.getIndexName()).source(source), RequestOptions.DEFAULT, new ActionListener<>() {
+            @Override
+            public void onResponse(SearchResponse r) {
+                response.complete(r);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                response.completeExceptionally(e);
+            }
+        });
+
+        return response.thenApply(r -> {
+            List<Long> boundaries = boundaries(r, percents);
+            List<DqiInput> shardInputs = new ArrayList<>();
+            for (int i = 0; i <= boundaries.size(); i++) {
+                Long from = i == 0 ? null : boundaries.get(i - 1);
+                Long to = i == boundaries.size() ? null : boundaries.get(i);
+                shardInputs.add(shard(export, i, field, from, to));
+            }
+            long totalHits = r.getHits().getTotalHits().value;
+            log.info("planned {} shards of ~{} docs for {} split on {} at {}",
+                     shardInputs.size(), totalHits / shardInputs.size(), export.getProcessId(), field, boundaries);
+            return new ShardPlan(export.getProcessId(), field, totalHits, boundaries, shardInputs);
+        });
+    }
+
+    /**
+     * the percentiles rounded up to whole values, keeping only those that actually split the docs: above the min, at
+     * or below the max, and above the boundary before
+     */
+    static List<Long> boundaries(SearchResponse response, double[] percents) {
+        List<Long> boundaries = new ArrayList<>();
+        if (response.getHits().getTotalHits().value == 0 || percents.length == 0) {
+            return boundaries;
+        }
+
+        double min = ((Min) response.getAggregations().get("min")).getValue();
+        double max = ((Max) response.getAggregations().get("max")).getValue();
+        Percentiles percentiles = response.getAggregations().get("bounds");
+        for (double percent : percents) {
+            long boundary = (long) Math.ceil(percentiles.percentile(percent));
+            if (boundary > min && boundary <= max && (boundaries.isEmpty() || boundary > boundaries.get(boundaries.size() - 1))) {
+                boundaries.add(boundary);
+            }
+        }
+        return boundaries;
+    }
+
+    static DqiInput shard(DqiInput export, int shard, String field, Long from, Long to) {
+        ObjectNode query = MAPPER.createObjectNode();
+        ObjectNode bool = query.putObject("bool");
+        bool.putArray("must").add(export.getEsQuery());
+        if (from != null || to != null) {
+            bool.putArray("filter").add(rangeFilter(field, from, to));
+        }
+
+        DqiInput input = DqiInput.of(export.getOutputBucket(),
+                                     String.format("%s/%s%04d", export.getProcessId(), SHARD_DIR, shard),
+                                     export.getIndexName(),
+                                     query,
+                                     export.getConfig());
+        input.setSlices(export.getSlices());
+        input.setUsePointInTime(export.isUsePointInTime());
+        input.setCompression(export.getCompression());
+        input.setBaseProcessId(export.getBaseProcessId());
+        input.setChangedField(export.getChangedField());
+        input.setChangedSince(export.getChangedSince());
+        input.setHighWaterMark(export.getHighWaterMark());
+        return input;
+    }
+
+    /**
+     * the docs whose field is in [from, to). A shard open below also takes the docs without the field, which a range
+     * never matches and the percentiles never counted, so that they're still exported by exactly one shard.
+     */
+    static ObjectNode rangeFilter(String field, Long from, Long to) {
+        ObjectNode range = MAPPER.createObjectNode();
+        ObjectNode bounds = range.putObject("range").putObject(field);
+        if (from != null) {
+            bounds.put("gte", from);
+        }
+        if (to != null) {
+            bounds.put("lt", to);
+        }
+        if (from != null) {
+            return range;
+        }
+
+        ObjectNode missing = MAPPER.createObjectNode();
+        missing.putObject("bool").putArray("must_not").addObject().putObject("exists").put("field", field);
+        ObjectNode either = MAPPER.createObjectNode();
+        ObjectNode bool = either.putObject("bool");
+        bool.putArray("should").add(range).add(missing);
+        bool.put("minimum_should_match", 1);
+        return either;
+    }
+}
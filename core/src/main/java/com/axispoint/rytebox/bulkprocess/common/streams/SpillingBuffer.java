@@ -0,0 +1,419 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+
+import akka.NotUsed;
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.SubscriptionWithCancelException;
+import akka.stream.javadsl.Source;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.GraphStageWithMaterializedValue;
+import akka.util.ByteString;
+import lombok.extern.slf4j.Slf4j;
+import scala.Tuple2;
+
+import com.axispoint.rytebox.bulkprocess.common.metrics.PipelineMetrics;
+
+/**
+ * A buffer between a source that reads ahead (the ES search) and a downstream that stalls now and then (a slow MySQL
+ * batch, an S3 part upload), so upstream keeps reading instead of being backpressured, without holding everything it
+ * reads on the heap.
+ *
+ * Up to memoryElements are buffered on the heap. Beyond that, elements are encoded with the codec and spilled to
+ * memory-mapped segment files in spillDir (/tmp on a lambda), then read back in order as the heap window drains, so
+ * they cost disk rather than heap. Upstream is only backpressured once maxSpillBytes are spilled. Spilled records are
+ * length-prefixed: a big-endian int length followed by that many bytes of the encoded element.
+ *
+ * Whatever the buffer holds when downstream cancels (e.g. a TimeBoundFlow running out of time) has been taken from
+ * upstream but not processed, and upstream's position (the SearchCursor) is already past it. It's materialized as the
+ * Remainder, in the same length-prefixed form, and has to be carried over to the next iteration with
+ * S3StreamUtils.writeCarryOver and replayed ahead of the search with S3StreamUtils.readCarryOver, or it's skipped.
+ * When downstream cancels because it failed, or upstream fails, the spill files are deleted and the Remainder fails
+ * instead.
+ */
+@Slf4j
+public class SpillingBuffer<T> extends GraphStageWithMaterializedValue<FlowShape<T, T>, CompletionStage<SpillingBuffer.Remainder>> {
+    public static final long DEFAULT_SEGMENT_BYTES = 16L * 1024 * 1024;
+    // Lambda's /tmp is 512MB unless configured otherwise
+    public static final long DEFAULT_MAX_SPILL_BYTES = 256L * 1024 * 1024;
+    static final int LENGTH_BYTES = Integer.BYTES;
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final Inlet<T> in = Inlet.create("SpillingBuffer.in");
+    private final Outlet<T> out = Outlet.create("SpillingBuffer.out");
+    private final FlowShape<T, T> shape = FlowShape.of(in, out);
+
+    private final Codec<T> codec;
+    private final int memoryElements;
+    private final Path spillDir;
+    private final long segmentBytes;
+    private final long maxSpillBytes;
+    private final Optional<PipelineMetrics> metrics;
+    private final AtomicLong bufferedBytes = new AtomicLong();
+
+    /**
+     * encodes an element as the bytes it's spilled as, and decodes it from them
+     */
+    public interface Codec<T> {
+        byte[] encode(T element);
+
+        T decode(byte[] bytes);
+    }
+
+    public SpillingBuffer(Codec<T> codec, int memoryElements) {
+        this(codec, memoryElements, Paths.get(System.getProperty("java.io.tmpdir")), DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_SPILL_BYTES);
+    }
+
+    public SpillingBuffer(Codec<T> codec, int memoryElements, Path spillDir, long segmentBytes, long maxSpillBytes) {
+        this(codec, memoryElements, spillDir, segmentBytes, maxSpillBytes, Optional.empty());
+    }
+
+    private SpillingBuffer(Codec<T> codec,
+                           int memoryElements,
+                           Path spillDir,
+                           long segmentBytes,
+                           long maxSpillBytes,
+                           Optional<PipelineMetrics> metrics) {
+        if (memoryElements <= 0) {
+            throw new IllegalArgumentException("memoryElements must be at least 1, got " + memoryElements);
+        }
+        if (segmentBytes <= LENGTH_BYTES || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segmentBytes must be between " + LENGTH_BYTES + " and " + Integer.MAX_VALUE + ", got " + segmentBytes);
+        }
+        this.codec = codec;
+        this.memoryElements = memoryElements;
+        this.spillDir = spillDir;
+        this.segmentBytes = segmentBytes;
+        this.maxSpillBytes = maxSpillBytes;
+        this.metrics = metrics;
+    }
+
+    public SpillingBuffer<T> withMetrics(PipelineMetrics metrics) {
+        return new SpillingBuffer<>(codec, memoryElements, spillDir, segmentBytes, maxSpillBytes, Optional.of(metrics));
+    }
+
+    /**
+     * about how many bytes the buffer running from this stage holds, i.e. how big its remainder would be if it were
+     * cancelled now: those spilled, plus the heap window at the average size of a spilled record. Meant to be polled
+     * from within the same stream (see TimeBoundFlow.withPendingBytes), so a stage materialized more than once reports
+     * on whichever ran last.
+     */
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    @Override
+    public FlowShape<T, T> shape() {
+        return shape;
+    }
+
+    @Override
+    public Tuple2<GraphStageLogic, CompletionStage<Remainder>> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+        CompletableFuture<Remainder> mat = new CompletableFuture<>();
+
+        GraphStageLogic logic = new GraphStageLogic(shape) {
+            private final Deque<T> window = new ArrayDeque<>();
+            // spilled elements, always later than those in the window
+            private final Deque<Segment> segments = new ArrayDeque<>();
+            private long spilledElements = 0;
+            private long spilledBytes = 0;
+            private long everSpilledElements = 0;
+            private long everSpilledBytes = 0;
+
+            {
+                setHandler(in, new AbstractInHandler() {
+                    @Override
+                    public void onPush() throws IOException {
+                        T element = grab(in);
+                        if (spilledElements == 0 && window.size() < memoryElements) {
+                            window.add(element);
+                        } else {
+                            spill(element);
+                        }
+                        if (isAvailable(out)) {
+                            pushNext();
+                        }
+                        pullIfRoom();
+                        updateBufferedBytes();
+                    }
+
+                    @Override
+                    public void onUpstreamFinish() {
+                        if (window.isEmpty() && spilledElements == 0) {
+                            completeStage();
+                        }
+                    }
+
+                    @Override
+                    public void onUpstreamFailure(Throwable ex) {
+                        segments.forEach(Segment::delete);
+                        mat.completeExceptionally(ex);
+                        failStage(ex);
+                    }
+                });
+
+                setHandler(out, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        pushNext();
+                        pullIfRoom();
+                        updateBufferedBytes();
+                    }
+
+                    @Override
+                    public void onDownstreamFinish(Throwable cause) {
+                        if (cause instanceof SubscriptionWithCancelException.NonFailureCancellation) {
+                            mat.complete(remainder());
+                            completeStage();
+                        } else {
+                            // downstream failed, so the iteration won't be carrying anything over
+                            segments.forEach(Segment::delete);
+                            mat.completeExceptionally(cause);
+                            cancelStage(cause);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void preStart() {
+                bufferedBytes.set(0);
+                pull(in);
+            }
+
+            @Override
+            public void postStop() {
+                if (!mat.isDone()) {
+                    mat.complete(remainder());
+                }
+                // whatever's left belongs to the remainder now
+                segments.clear();
+            }
+
+            private void pushNext() {
+                refill();
+                if (!window.isEmpty()) {
+                    push(out, window.poll());
+                    refill();
+                }
+                if (window.isEmpty() && isClosed(in)) {
+                    completeStage();
+                }
+            }
+
+            private void pullIfRoom() {
+                if (!isClosed(in) && !hasBeenPulled(in) && spilledBytes < maxSpillBytes) {
+                    pull(in);
+                }
+            }
+
+            private void spill(T element) throws IOException {
+                byte[] bytes = codec.encode(element);
+                Segment tail = segments.peekLast();
+                if (tail == null || !tail.fits(bytes.length)) {
+                    tail = Segment.create(spillDir, Math.max(segmentBytes, LENGTH_BYTES + bytes.length));
+                    segments.add(tail);
+                }
+                tail.write(bytes);
+                spilledElements++;
+                spilledBytes += LENGTH_BYTES + bytes.length;
+                everSpilledElements++;
+                everSpilledBytes += LENGTH_BYTES + bytes.length;
+                metrics.ifPresent(m -> m.increment(PipelineMetrics.BUFFER_SPILLED_BYTES, LENGTH_BYTES + bytes.length));
+            }
+
+            private void refill() {
+                while (window.size() < memoryElements && spilledElements > 0) {
+                    Segment head = segments.peek();
+                    byte[] bytes = head.read();
+                    spilledElements--;
+                    spilledBytes -= LENGTH_BYTES + bytes.length;
+                    if (head.isDrained()) {
+                        if (segments.size() > 1) {
+                            segments.poll().delete();
+                        } else {
+                            head.reset();
+                        }
+                    }
+                    window.add(codec.decode(bytes));
+                }
+            }
+
+            private void updateBufferedBytes() {
+                long windowBytes = everSpilledElements == 0 ? 0 : window.size() * (everSpilledBytes / everSpilledElements);
+                bufferedBytes.set(spilledBytes + windowBytes);
+            }
+
+            private Remainder remainder() {
+                if (window.isEmpty() && spilledElements == 0) {
+                    segments.forEach(Segment::delete);
+                    return Remainder.EMPTY;
+                }
+                List<ByteString> records = new ArrayList<>(window.size());
+                long bytes = spilledBytes;
+                for (T element : window) {
+                    byte[] encoded = codec.encode(element);
+                    records.add(record(encoded));
+                    bytes += LENGTH_BYTES + encoded.length;
+                }
+                log.info("{} elements ({} bytes) were buffered but not processed", window.size() + spilledElements, bytes);
+                return new Remainder(window.size() + spilledElements, bytes, records, new ArrayList<>(segments));
+            }
+        };
+
+        return new Tuple2<>(logic, mat);
+    }
+
+    static ByteString record(byte[] bytes) {
+        return ByteString.fromArrayUnsafe(ByteBuffer.allocate(LENGTH_BYTES + bytes.length).putInt(bytes.length).put(bytes).array());
+    }
+
+    /**
+     * what a cancelled buffer still held, in order, as length-prefixed records
+     */
+    public static final class Remainder {
+        public static final Remainder EMPTY = new Remainder(0, 0, List.of(), List.of());
+
+        private final long elements;
+        private final long bytes;
+        private final List<ByteString> heapRecords;
+        private final List<Segment> segments;
+
+        private Remainder(long elements, long bytes, List<ByteString> heapRecords, List<Segment> segments) {
+            this.elements = elements;
+            this.bytes = bytes;
+            this.heapRecords = heapRecords;
+            this.segments = segments;
+        }
+
+        public long getElements() {
+            return elements;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public boolean isEmpty() {
+            return elements == 0;
+        }
+
+        /**
+         * the records, read from the spill files as they're streamed, which must be discarded once they have been
+         */
+        public Source<ByteString, NotUsed> getRecords() {
+            return Source.from(heapRecords)
+                         .concat(Source.from(segments).flatMapConcat(segment -> Source.fromIterator(segment::unread)));
+        }
+
+        /**
+         * deletes the spill files
+         */
+        public void discard() {
+            segments.forEach(Segment::delete);
+        }
+    }
+
+    /**
+     * a spill file mapped in full. Records are written at the buffer's position and read from readPosition.
+     *
+     * A mapping can't be released explicitly, so its memory is released once it's garbage collected; deleting the file
+     * frees the disk space as soon as that happens.
+     */
+    private static final class Segment {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int readPosition = 0;
+
+        private Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path dir, long bytes) throws IOException {
+            Path file = Files.createTempFile(dir, "spill-", ".seg");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes));
+            }
+        }
+
+        boolean fits(int length) {
+            return buffer.remaining() >= LENGTH_BYTES + length;
+        }
+
+        void write(byte[] bytes) {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+
+        byte[] read() {
+            int length = buffer.getInt(readPosition);
+            byte[] bytes = new byte[length];
+            ByteBuffer record = buffer.duplicate();
+            record.position(readPosition + LENGTH_BYTES);
+            record.get(bytes);
+            readPosition += LENGTH_BYTES + length;
+            return bytes;
+        }
+
+        boolean isDrained() {
+            return readPosition == buffer.position();
+        }
+
+        void reset() {
+            buffer.clear();
+            readPosition = 0;
+        }
+
+        /**
+         * the unread records in chunks of up to CHUNK_SIZE bytes
+         */
+        Iterator<ByteString> unread() {
+            ByteBuffer unread = buffer.duplicate();
+            unread.limit(buffer.position()).position(readPosition);
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return unread.hasRemaining();
+                }
+
+                @Override
+                public ByteString next() {
+                    ByteBuffer chunk = unread.slice();
+                    chunk.limit(Math.min(CHUNK_SIZE, chunk.remaining()));
+                    unread.position(unread.position() + chunk.limit());
+                    return ByteString.fromByteBuffer(chunk);
+                }
+            };
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("failed to delete spill file " + file, e);
+            }
+        }
+    }
+}
@@ -4,9 +4,9 @@ import java.time.Duration;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
-import akka.NotUsed;
 import akka.stream.Attributes;
 import akka.stream.FlowShape;
 import akka.stream.Inlet;
@@ -18,31 +18,92 @@ import akka.stream.stage.GraphStageLogicWithLogging;
 import akka.stream.stage.GraphStageWithMaterializedValue;
 import scala.Tuple2;
 
-public class TimeBoundFlow<A> extends GraphStageWithMaterializedValue<FlowShape<A, A>, CompletionStage<Boolean>> {
+import com.axispoint.rytebox.bulkprocess.common.dto.TimeBudget;
+
+/**
+ * Passes elements through until there's no longer time for another one plus finalizing the iteration.
+ *
+ * Each element is timed from one pull to the next, so the time includes upstream fetching it and downstream processing
+ * it, and the flow keeps an exponentially weighted mean and deviation of those times. Another element is only pulled
+ * while the time remaining covers a pessimistic estimate of it (mean plus a few deviations, but no more than the
+ * slowest seen so far) and of finalization. Finalization is the finalizationWindow until a previous iteration has reported
+ * how long it actually took, after which that (with some headroom) is used instead when it's longer; the window is always
+ * the least allowed for it.
+ *
+ * Some of finalization depends on how much is left to flush when the flow stops, e.g. a SpillingBuffer's remainder,
+ * which may be hundreds of MB to carry over. withPendingBytes has the flow check that amount along with the time
+ * remaining, and add the time it takes to upload at pendingBytesPerSecond to its estimate of finalization.
+ *
+ * The materialized TimeBudget reports whether the flow timed out, along with its timings, and can seed the flow of the
+ * next iteration once the caller has set its finalizationMillis.
+ */
+public class TimeBoundFlow<A> extends GraphStageWithMaterializedValue<FlowShape<A, A>, CompletionStage<TimeBudget>> {
+    static final double ALPHA = 0.2;
+    static final double DEVIATIONS = 4;
+    static final double FINALIZATION_HEADROOM = 1.25;
+    static final long MIN_MARGIN_MILLIS = 1_000;
+    // a single stream's upload to S3 from a lambda, conservatively
+    public static final long DEFAULT_PENDING_BYTES_PER_SECOND = 32L * 1024 * 1024;
 
     private final Inlet<A> in = Inlet.create("TimeBoundFlow.in");
     private final Outlet<A> out = Outlet.create("TimeBoundFlow.out");
     private final FlowShape<A, A> shape = FlowShape.of(in, out);
 
-    private final Supplier<Optional<NotUsed>> canContinue;
+    private final Supplier<Integer> getTimeRemainingMillis;
+    private final Duration finalizationWindow;
+    private final Optional<TimeBudget> seed;
+    private final Supplier<Long> getPendingBytes;
+    private final long pendingBytesPerSecond;
 
     public TimeBoundFlow(Supplier<Integer> getTimeRemainingMillis, Duration finalizationWindow) {
-        this.canContinue = () -> {
-            Duration timeRemaining = Duration.ofMillis(getTimeRemainingMillis.get());
-            boolean complete = timeRemaining.minus(finalizationWindow).toMillis() > 0L;
-            if (!complete) {
-                return Optional.empty();
-            }
-            return Optional.of(NotUsed.notUsed());
-        };
+        this(getTimeRemainingMillis, finalizationWindow, Optional.empty());
+    }
+
+    public TimeBoundFlow(Supplier<Integer> getTimeRemainingMillis, Duration finalizationWindow, Optional<TimeBudget> seed) {
+        this(getTimeRemainingMillis, finalizationWindow, seed, () -> 0L, DEFAULT_PENDING_BYTES_PER_SECOND);
+    }
+
+    private TimeBoundFlow(Supplier<Integer> getTimeRemainingMillis,
+                          Duration finalizationWindow,
+                          Optional<TimeBudget> seed,
+                          Supplier<Long> getPendingBytes,
+                          long pendingBytesPerSecond) {
+        if (pendingBytesPerSecond <= 0) {
+            throw new IllegalArgumentException("pendingBytesPerSecond must be positive, got " + pendingBytesPerSecond);
+        }
+        this.getTimeRemainingMillis = getTimeRemainingMillis;
+        this.finalizationWindow = finalizationWindow;
+        this.seed = seed;
+        this.getPendingBytes = getPendingBytes;
+        this.pendingBytesPerSecond = pendingBytesPerSecond;
+    }
+
+    /**
+     * adds the time to upload getPendingBytes (e.g. SpillingBuffer::getBufferedBytes) at pendingBytesPerSecond to the
+     * finalization estimate, checked before every pull
+     */
+    public TimeBoundFlow<A> withPendingBytes(Supplier<Long> getPendingBytes, long pendingBytesPerSecond) {
+        return new TimeBoundFlow<>(getTimeRemainingMillis, finalizationWindow, seed, getPendingBytes, pendingBytesPerSecond);
     }
 
     @Override
-    public Tuple2<GraphStageLogic, CompletionStage<Boolean>> createLogicAndMaterializedValue(
+    public Tuple2<GraphStageLogic, CompletionStage<TimeBudget>> createLogicAndMaterializedValue(
             Attributes inheritedAttributes) {
-        CompletableFuture<Boolean> mat = new CompletableFuture<>();
+        CompletableFuture<TimeBudget> mat = new CompletableFuture<>();
 
         GraphStageLogic logic = new GraphStageLogicWithLogging(shape()) {
+          private long elements = 0;
+          private double mean = seed.map(TimeBudget::getElementMillis).orElse(0.0);
+          private double deviation = seed.map(TimeBudget::getElementMillisDeviation).orElse(0.0);
+          private long max = seed.map(TimeBudget::getMaxElementMillis).orElse(0L);
+          // the seeded finalization already includes whatever was pending when the seeding iteration stopped, so this
+          // errs long whenever something's pending now too
+          private final long finalizationMillis = Math.max(finalizationWindow.toMillis(),
+                                                           seed.map(TimeBudget::getFinalizationMillis)
+                                                               .filter(m -> m > 0)
+                                                               .map(m -> (long) (m * FINALIZATION_HEADROOM) + MIN_MARGIN_MILLIS)
+                                                               .orElse(0L));
+          private long lastPull = 0;
 
           {
             setHandler(
@@ -55,7 +116,7 @@ public class TimeBoundFlow<A> extends GraphStageWithMaterializedValue<FlowShape<
 
                     @Override
                     public void onUpstreamFinish() throws Exception {
-                      mat.complete(false);
+                      mat.complete(stats(false));
                       super.onUpstreamFinish();
                     }
                 });
@@ -65,23 +126,57 @@ public class TimeBoundFlow<A> extends GraphStageWithMaterializedValue<FlowShape<
                 new AbstractOutHandler() {
                   @Override
                   public void onPull() {
+                      record();
                       pullOrTimeout();
                   }
                 });
           }
 
+          private void record() {
+              long now = System.nanoTime();
+              if (lastPull > 0) {
+                  long millis = TimeUnit.NANOSECONDS.toMillis(now - lastPull);
+                  elements++;
+                  max = Math.max(max, millis);
+                  if (elements == 1 && !seed.isPresent()) {
+                      mean = millis;
+                  } else {
+                      deviation = (1 - ALPHA) * deviation + ALPHA * Math.abs(millis - mean);
+                      mean = (1 - ALPHA) * mean + ALPHA * millis;
+                  }
+              }
+              lastPull = now;
+          }
+
+          private long predictedElementMillis() {
+              return (long) Math.min(Math.max(mean + DEVIATIONS * deviation, 0), Math.max(max, mean));
+          }
+
+          private long pendingMillis() {
+              return getPendingBytes.get() * 1000 / pendingBytesPerSecond;
+          }
+
           private void pullOrTimeout() {
-              Optional<NotUsed> cont = canContinue.get();
-              cont
-                 .ifPresentOrElse(
-                         c -> pull(in),
-                         () -> {
-                             mat.complete(true);
-                             log().info("Stream timed out");
-                             pull(in);
-                             completeStage();
-                         }
-                 );
+              long timeRemaining = getTimeRemainingMillis.get();
+              long pendingMillis = pendingMillis();
+              long needed = predictedElementMillis() + finalizationMillis + pendingMillis;
+              if (timeRemaining > needed) {
+                  pull(in);
+              } else {
+                  mat.complete(stats(true));
+                  log().info("Stream timed out with {}ms remaining, next element predicted to take {}ms and finalization {}ms plus {}ms pending",
+                             timeRemaining, predictedElementMillis(), finalizationMillis, pendingMillis);
+                  completeStage();
+              }
+          }
+
+          private TimeBudget stats(boolean timedOut) {
+              return new TimeBudget(elements, mean, deviation, max, 0, timedOut);
+          }
+
+          @Override
+          public void postStop() {
+              mat.complete(stats(false));
           }
         };
 
@@ -0,0 +1,90 @@
+package com.axispoint.rytebox.bulkprocess.common.worker;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import com.axispoint.rytebox.bulkprocess.common.dto.Reentrant;
+
+/**
+ * A JobQueue for running a worker locally: jobs are held in memory, and each job's checkpoint is kept as the JSON the
+ * state machine would have passed to the next iteration, so a job whose state doesn't serialize fails here as it would
+ * in Lambda.
+ */
+@Slf4j
+public class InMemoryJobQueue<I extends Reentrant<?>> implements JobQueue<I> {
+    private final ObjectMapper mapper;
+    private final BlockingQueue<I> pending = new LinkedBlockingQueue<>();
+    private final Map<String, CompletableFuture<I>> results = new ConcurrentHashMap<>();
+    private final Map<String, String> checkpoints = new ConcurrentHashMap<>();
+
+    public InMemoryJobQueue() {
+        this(new ObjectMapper());
+    }
+
+    public InMemoryJobQueue(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * queues the job, completing with its final state once it's done. Like the state machine, a process id can only
+     * ever be submitted once.
+     */
+    public CompletionStage<I> submit(I job) {
+        CompletableFuture<I> result = new CompletableFuture<>();
+        if (results.putIfAbsent(job.getProcessId(), result) != null) {
+            throw new IllegalStateException("process " + job.getProcessId() + " was already submitted");
+        }
+        pending.add(job);
+        return result;
+    }
+
+    public Optional<String> checkpointOf(String processId) {
+        return Optional.ofNullable(checkpoints.get(processId));
+    }
+
+    @Override
+    public Optional<I> take(Duration timeout) throws InterruptedException {
+        return Optional.ofNullable(pending.poll(timeout.toNanos(), TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void checkpoint(I job) {
+        try {
+            checkpoints.put(job.getProcessId(), mapper.writeValueAsString(job));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("unable to checkpoint " + job.getProcessId(), e);
+        }
+    }
+
+    @Override
+    public void complete(I job) {
+        checkpoints.remove(job.getProcessId());
+        result(job).complete(job);
+    }
+
+    @Override
+    public void fail(I job, String exceptionMsg) {
+        result(job).completeExceptionally(new IllegalStateException("process " + job.getProcessId() + " failed: " + exceptionMsg));
+    }
+
+    @Override
+    public void release(I job) {
+        log.info("process {} released at iteration {}", job.getProcessId(), job.getIteration());
+        pending.add(job);
+    }
+
+    private CompletableFuture<I> result(I job) {
+        return results.computeIfAbsent(job.getProcessId(), id -> new CompletableFuture<>());
+    }
+}
@@ -0,0 +1,33 @@
+package com.axispoint.rytebox.bulkprocess.common.worker;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import com.axispoint.rytebox.bulkprocess.common.dto.Reentrant;
+
+/**
+ * Where a ReentrantWorker takes its jobs from and reports their progress to, standing in for the state machine that
+ * drives the Lambda. A job is taken by one worker at a time, and between being taken and being completed, failed or
+ * released it's that worker's to run.
+ *
+ * checkpoint is given the job after every iteration that didn't finish it, so a queue that persists it can have another
+ * worker resume the job from there should this one die.
+ */
+public interface JobQueue<I extends Reentrant<?>> {
+
+    /**
+     * the next job to run, waiting up to timeout for one to be submitted
+     */
+    Optional<I> take(Duration timeout) throws InterruptedException;
+
+    void checkpoint(I job);
+
+    void complete(I job);
+
+    void fail(I job, String exceptionMsg);
+
+    /**
+     * hands back a job the worker stopped running before it was done, to be resumed from its last checkpoint
+     */
+    void release(I job);
+}
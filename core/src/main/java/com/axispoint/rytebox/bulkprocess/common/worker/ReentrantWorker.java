@@ -0,0 +1,157 @@
+package com.axispoint.rytebox.bulkprocess.common.worker;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import com.axispoint.rytebox.bulkprocess.common.dto.Reentrant;
+
+/**
+ * Runs the same Reentrant handlers the Lambda does in a long-lived process, taking jobs from a JobQueue and running
+ * each one to the end without stopping at a Lambda timeout.
+ *
+ * Each of the concurrency slots has its own handler from handlerFactory, so whatever the factory shares between them
+ * (materializer, ES client, db pool) is built once for the life of the worker and used by every job it runs, instead of
+ * once per cold start.
+ *
+ * By default a job runs as a single iteration, one stream end to end, since every iteration stops and re-materializes
+ * the stream and flushes what it's buffered. A checkpointInterval bounds iterations the way the Lambda timeout does: the
+ * handler sees that much time remaining, and once an iteration hands back an unfinished job it is checkpointed to the
+ * queue and the next iteration starts straight away on the same slot. That's only worth it when redoing a long job from
+ * the start after the worker dies costs more than the restarts.
+ *
+ * On close the handlers see no time remaining, so the slots wind up the iteration they're on, checkpoint it and release
+ * their jobs back to the queue. A job whose iteration throws (or errors) is failed and the slot moves on to the next.
+ */
+@Slf4j
+public class ReentrantWorker<I extends Reentrant<?>> implements AutoCloseable {
+    // as long as a Context can report remaining
+    public static final Duration UNBOUNDED = Duration.ofMillis(Integer.MAX_VALUE);
+    public static final Duration DEFAULT_CHECKPOINT_INTERVAL = UNBOUNDED;
+    // long enough for an iteration told to stop to flush and upload what it holds
+    static final Duration SHUTDOWN_TIMEOUT = Duration.ofMinutes(2);
+    static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+    static final String THREAD_NAME = "reentrant-worker-";
+
+    private final JobQueue<I> queue;
+    private final Supplier<? extends RequestHandler<I, I>> handlerFactory;
+    private final int concurrency;
+    private final Duration checkpointInterval;
+    private final ExecutorService slots;
+    private volatile boolean running = false;
+
+    public ReentrantWorker(JobQueue<I> queue, Supplier<? extends RequestHandler<I, I>> handlerFactory, int concurrency) {
+        this(queue, handlerFactory, concurrency, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * @param checkpointInterval how long an iteration runs for before its continuation is checkpointed, UNBOUNDED to
+     *                           only checkpoint on close
+     */
+    public ReentrantWorker(JobQueue<I> queue,
+                           Supplier<? extends RequestHandler<I, I>> handlerFactory,
+                           int concurrency,
+                           Duration checkpointInterval) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive, got " + concurrency);
+        }
+        if (checkpointInterval.isNegative() || checkpointInterval.isZero() || checkpointInterval.compareTo(UNBOUNDED) > 0) {
+            throw new IllegalArgumentException("checkpointInterval must be positive and no more than " + UNBOUNDED + ", got " + checkpointInterval);
+        }
+        this.queue = queue;
+        this.handlerFactory = handlerFactory;
+        this.concurrency = concurrency;
+        this.checkpointInterval = checkpointInterval;
+
+        AtomicInteger threads = new AtomicInteger();
+        this.slots = Executors.newFixedThreadPool(concurrency, r -> new Thread(r, THREAD_NAME + threads.getAndIncrement()));
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        log.info("starting {} slots checkpointing {}",
+                 concurrency, checkpointInterval.equals(UNBOUNDED) ? "on close" : "every " + checkpointInterval);
+        for (int i = 0; i < concurrency; i++) {
+            slots.execute(this::poll);
+        }
+    }
+
+    /**
+     * waits up to SHUTDOWN_TIMEOUT for the slots to checkpoint and release their jobs, then interrupts them. A thread
+     * interrupted while waiting interrupts the slots straight away and keeps its interrupt.
+     */
+    @Override
+    public void close() {
+        running = false;
+        slots.shutdown();
+        Duration timeout = SHUTDOWN_TIMEOUT.plus(POLL_TIMEOUT);
+        try {
+            if (!slots.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("slots still running after {}, interrupting them", timeout);
+                slots.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            log.warn("interrupted waiting for slots to stop, interrupting them");
+            slots.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void poll() {
+        RequestHandler<I, I> handler = handlerFactory.get();
+        try {
+            while (running) {
+                Optional<I> job = queue.take(POLL_TIMEOUT);
+                if (job.isPresent()) {
+                    run(job.get(), handler);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(I job, RequestHandler<I, I> handler) {
+        String workerName = Thread.currentThread().getName();
+        long started = System.nanoTime();
+        log.info("{} running process {} from iteration {}", workerName, job.getProcessId(), job.getIteration());
+        I state = job;
+        try {
+            while (true) {
+                WorkerContext context = new WorkerContext(workerName, System.nanoTime() + checkpointInterval.toNanos(), () -> !running);
+                state = handler.handleRequest(state, context);
+                if (state.isDone()) {
+                    log.info("process {} done after {} iterations in {}ms",
+                             state.getProcessId(), state.getIteration(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+                    queue.complete(state);
+                    return;
+                }
+
+                queue.checkpoint(state);
+                if (!running) {
+                    queue.release(state);
+                    return;
+                }
+            }
+        } catch (Throwable e) {
+            // handlers sneaky throw their checked exceptions, and an Error in one job shouldn't take the slot with it
+            if (!running && Thread.currentThread().isInterrupted()) {
+                log.warn("process {} interrupted at iteration {}, releasing it", state.getProcessId(), state.getIteration());
+                queue.release(state);
+                return;
+            }
+            log.error("process {} failed at iteration {}", state.getProcessId(), state.getIteration(), e);
+            queue.fail(state, e.toString());
+        }
+    }
+}
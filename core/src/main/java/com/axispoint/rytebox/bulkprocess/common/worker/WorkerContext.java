@@ -0,0 +1,98 @@
+package com.axispoint.rytebox.bulkprocess.common.worker;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The context a handler runs an iteration with in a worker, its remaining time counting down to the job's next
+ * checkpoint rather than to a Lambda timeout, and dropping to none once the worker is stopping so the iteration winds
+ * up and hands back its continuation.
+ */
+@Slf4j
+class WorkerContext implements Context {
+    private final String workerName;
+    private final String requestId = UUID.randomUUID().toString();
+    private final long deadlineNanos;
+    private final BooleanSupplier stopping;
+
+    WorkerContext(String workerName, long deadlineNanos, BooleanSupplier stopping) {
+        this.workerName = workerName;
+        this.deadlineNanos = deadlineNanos;
+        this.stopping = stopping;
+    }
+
+    @Override
+    public int getRemainingTimeInMillis() {
+        if (stopping.getAsBoolean()) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000));
+    }
+
+    @Override
+    public String getAwsRequestId() {
+        return requestId;
+    }
+
+    @Override
+    public String getLogGroupName() {
+        return null;
+    }
+
+    @Override
+    public String getLogStreamName() {
+        return null;
+    }
+
+    @Override
+    public String getFunctionName() {
+        return workerName;
+    }
+
+    @Override
+    public String getFunctionVersion() {
+        return null;
+    }
+
+    @Override
+    public String getInvokedFunctionArn() {
+        return null;
+    }
+
+    @Override
+    public CognitoIdentity getIdentity() {
+        return null;
+    }
+
+    @Override
+    public ClientContext getClientContext() {
+        return null;
+    }
+
+    @Override
+    public int getMemoryLimitInMB() {
+        return (int) (Runtime.getRuntime().maxMemory() / (1024 * 1024));
+    }
+
+    @Override
+    public LambdaLogger getLogger() {
+        return new LambdaLogger() {
+            @Override
+            public void log(String message) {
+                log.info("[{}] {}", workerName, message);
+            }
+
+            @Override
+            public void log(byte[] message) {
+                log(new String(message, StandardCharsets.UTF_8));
+            }
+        };
+    }
+}
@@ -0,0 +1,158 @@
+package com.axispoint.rytebox.bulkprocess.common.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import com.amazonaws.services.simplesystemsmanagement.AbstractAWSSimpleSystemsManagement;
+import com.amazonaws.services.simplesystemsmanagement.model.GetParametersByPathRequest;
+import com.amazonaws.services.simplesystemsmanagement.model.GetParametersByPathResult;
+import com.amazonaws.services.simplesystemsmanagement.model.Parameter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AwsParamStoreConfigTest {
+    static final List<String> PATHS = List.of("/config/application", "/config/application_qa");
+
+    @TempDir
+    Path tmp;
+
+    private final StubSsm ssm = new StubSsm()
+            .page("/config/application", param("/config/application/db.url", "jdbc:default", 1), param("/config/application/db.user", "app", 1))
+            .page("/config/application", param("/config/application/db.password", "secret", 2))
+            .page("/config/application_qa", param("/config/application_qa/db.url", "jdbc:qa", 4));
+
+    @Test
+    void followsEveryPageOfEveryPath() {
+        AwsParamStoreConfig config = new AwsParamStoreConfig(ssm, PATHS, tmp, Duration.ZERO);
+
+        assertEquals(3, ssm.calls.get());
+        assertEquals("app", config.getValue("db.user"));
+        assertEquals("secret", config.getValue("db.password"));
+    }
+
+    @Test
+    void environmentPathOverridesApplicationPath() {
+        AwsParamStoreConfig config = new AwsParamStoreConfig(ssm, PATHS, tmp, Duration.ZERO);
+
+        assertEquals("jdbc:qa", config.getValue("db.url"));
+    }
+
+    @Test
+    void firstPathListedWinsAPriorityTie() {
+        StubSsm tied = new StubSsm()
+                .page("/config/application_qa", param("/config/application_qa/db.url", "jdbc:qa", 1))
+                .page("/config/application_uat", param("/config/application_uat/db.url", "jdbc:uat", 1));
+
+        assertEquals("jdbc:qa", new AwsParamStoreConfig(tied, List.of("/config/application_qa", "/config/application_uat"), tmp, Duration.ZERO)
+                .getValue("db.url"));
+        assertEquals("jdbc:uat", new AwsParamStoreConfig(tied, List.of("/config/application_uat", "/config/application_qa"), tmp, Duration.ZERO)
+                .getValue("db.url"));
+    }
+
+    @Test
+    void readsTheSnapshotWithinItsTtl() {
+        Map<String, String> fetched = new AwsParamStoreConfig(ssm, PATHS, tmp, Duration.ofMinutes(5)).getProperties();
+        AwsParamStoreConfig cached = new AwsParamStoreConfig(ssm, PATHS, tmp, Duration.ofMinutes(5));
+
+        assertEquals(3, ssm.calls.get());
+        assertEquals(fetched, cached.getProperties());
+    }
+
+    @Test
+    void fetchesAgainOnceTheSnapshotExpires() throws InterruptedException {
+        new AwsParamStoreConfig(ssm, PATHS, tmp, Duration.ofMillis(1));
+        Thread.sleep(10);
+        new AwsParamStoreConfig(ssm, PATHS, tmp, Duration.ofMillis(1));
+
+        assertEquals(6, ssm.calls.get());
+    }
+
+    @Test
+    void fetchesAgainForOtherPaths() {
+        new AwsParamStoreConfig(ssm, PATHS, tmp, Duration.ofMinutes(5));
+        new AwsParamStoreConfig(ssm, List.of("/config/application"), tmp, Duration.ofMinutes(5));
+
+        assertEquals(5, ssm.calls.get());
+    }
+
+    @Test
+    void keepsTheSnapshotPrivate() throws IOException {
+        new AwsParamStoreConfig(ssm, PATHS, tmp, Duration.ofMinutes(5));
+
+        Path dir = snapshotDir();
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir)));
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> assertTrue(AwsParamStoreConfig.isPrivate(file, false), file + " is private"));
+        }
+    }
+
+    @Test
+    void ignoresASnapshotOthersCanRead() throws IOException {
+        new AwsParamStoreConfig(ssm, PATHS, tmp, Duration.ofMinutes(5));
+        Files.setPosixFilePermissions(snapshotDir(), PosixFilePermissions.fromString("rwxr-xr-x"));
+
+        new AwsParamStoreConfig(ssm, PATHS, tmp, Duration.ofMinutes(5));
+
+        assertEquals(6, ssm.calls.get());
+    }
+
+    @Test
+    void ignoresASymlinkedSnapshot() throws IOException {
+        new AwsParamStoreConfig(ssm, PATHS, tmp, Duration.ofMinutes(5));
+        Path snapshot;
+        try (Stream<Path> files = Files.list(snapshotDir())) {
+            snapshot = files.findFirst().orElseThrow();
+        }
+        Path elsewhere = Files.move(snapshot, tmp.resolve("elsewhere.json"));
+        Files.createSymbolicLink(snapshot, elsewhere);
+
+        assertFalse(AwsParamStoreConfig.isPrivate(snapshot, false));
+        new AwsParamStoreConfig(ssm, PATHS, tmp, Duration.ofMinutes(5));
+
+        assertEquals(6, ssm.calls.get());
+    }
+
+    private Path snapshotDir() {
+        return tmp.resolve("aws-paramstore-" + System.getProperty("user.name"));
+    }
+
+    private static Parameter param(String name, String value, long version) {
+        return new Parameter().withName(name).withValue(value).withVersion(version);
+    }
+
+    /**
+     * serves each path's pages in the order they were added, each page's token being the index of the next
+     */
+    private static class StubSsm extends AbstractAWSSimpleSystemsManagement {
+        private final Map<String, List<List<Parameter>>> pages = new HashMap<>();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        StubSsm page(String path, Parameter... params) {
+            pages.computeIfAbsent(path, p -> new ArrayList<>()).add(List.of(params));
+            return this;
+        }
+
+        @Override
+        public GetParametersByPathResult getParametersByPath(GetParametersByPathRequest request) {
+            calls.incrementAndGet();
+            List<List<Parameter>> pathPages = pages.getOrDefault(request.getPath(), List.of(List.of()));
+            int page = request.getNextToken() == null ? 0 : Integer.parseInt(request.getNextToken());
+            return new GetParametersByPathResult()
+                    .withParameters(pathPages.get(page))
+                    .withNextToken(page + 1 < pathPages.size() ? String.valueOf(page + 1) : null);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.axispoint.rytebox.bulkprocess.common.db;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.stream.alpakka.csv.javadsl.CsvFormatting;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import io.vertx.mutiny.sqlclient.Row;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks DqiCsvEncoder against what it replaces, CsvFormatting.format() over the toString of every column, value by
+ * value, with each value in a row of its own between two plain columns.
+ */
+class DqiCsvEncoderTest {
+    static final List<String> COLUMNS = List.of("before", "value", "after");
+
+    static ActorSystem system;
+    static Materializer materializer;
+
+    @BeforeAll
+    static void setUp() {
+        system = ActorSystem.create("DqiCsvEncoderTest");
+        materializer = Materializer.createMaterializer(system);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        system.terminate();
+    }
+
+    @Test
+    void quotesAndEscapesText() {
+        assertEncodesLikeCsvFormatting("", "plain", " spaced ", "a,b", "say \"hi\"", "\"", "\"\"", "back\\slash", "\\",
+                                       "cr\r", "lf\n", "crlf\r\n", "\r\n", "all of \" \\ , \r \n", "'single'", "tab\t");
+    }
+
+    @Test
+    void encodesTextAsUtf8() {
+        assertEncodesLikeCsvFormatting("\u00E9", "\u00FC,\u00F6", "\u07FF", "\u0800", "\u20AC", "\uFFFF", "\u65E5\u672C\u8A9E",
+                                       "\uD83D\uDE00", "\uD800\uDC00", "\uDBFF\uDFFF", "a\uD83D\uDE00b", "\"\uD83D\uDE00\"", "\uD83D\uDE00\uD83D\uDE00,\uD83D\uDE00");
+    }
+
+    @Test
+    void replacesUnpairedSurrogates() {
+        assertEncodesLikeCsvFormatting("\uD83D", "\uDE00", "x\uD83D", "\uDE00x", "\uDE00\uD83D", "\uD83D\uD83D\uDE00",
+                                       "\uD83D,", "\uD83D\"\uDE00", "\uD83D\uDE00\uDE00");
+    }
+
+    @Test
+    void writesIntegers() {
+        assertEncodesLikeCsvFormatting(0L, 1L, -1L, 9L, 10L, -10L, 99L, 100L, 1234567890123L, -1234567890123L,
+                                       Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1,
+                                       0, Integer.MAX_VALUE, Integer.MIN_VALUE, (short) -32768, (short) 7, (byte) -128, (byte) 127);
+    }
+
+    @Test
+    void writesBooleansDecimalsAndNulls() {
+        assertEncodesLikeCsvFormatting(true, false, 1.5d, -0.0d, 1e21d, 0.1f, new BigDecimal("1234.5600"), new BigDecimal("1E+3"), null);
+    }
+
+    @Test
+    void writesDates() {
+        assertEncodesLikeCsvFormatting(LocalDate.of(2020, 1, 5), LocalDate.of(1999, 12, 31), LocalDate.of(0, 1, 1),
+                                       LocalDate.of(999, 6, 15), LocalDate.of(9999, 12, 31), LocalDate.of(10000, 1, 1),
+                                       LocalDate.of(-1, 1, 1), LocalDate.MIN, LocalDate.MAX);
+    }
+
+    @Test
+    void writesTimes() {
+        assertEncodesLikeCsvFormatting(LocalTime.MIDNIGHT, LocalTime.of(10, 15), LocalTime.of(10, 15, 30), LocalTime.of(23, 59, 59),
+                                       // fractions with and without seconds
+                                       LocalTime.of(10, 15, 0, 500_000_000), LocalTime.of(10, 15, 0, 120_000_000),
+                                       LocalTime.of(10, 15, 30, 1_000_000), LocalTime.of(10, 15, 0, 1_000), LocalTime.of(10, 15, 30, 123_456_000),
+                                       LocalTime.of(10, 15, 0, 1), LocalTime.of(0, 0, 0, 100), LocalTime.of(10, 15, 30, 123_456_789),
+                                       LocalTime.MAX);
+    }
+
+    @Test
+    void writesDateTimes() {
+        assertEncodesLikeCsvFormatting(LocalDateTime.of(2020, 6, 1, 12, 0), LocalDateTime.of(2020, 6, 1, 12, 0, 5),
+                                       LocalDateTime.of(2020, 6, 1, 12, 0, 0, 3_000_000), LocalDateTime.of(2020, 6, 1, 0, 0, 0, 3_000),
+                                       LocalDateTime.of(2020, 6, 1, 0, 0, 0, 3), LocalDateTime.of(10000, 1, 1, 0, 0),
+                                       LocalDateTime.of(-5, 1, 1, 8, 30, 1), LocalDateTime.MIN, LocalDateTime.MAX);
+    }
+
+    @Test
+    void neverSplitsARowAcrossChunks() {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            rows.add(row("row " + i, "x".repeat(i % 37), i));
+        }
+
+        List<ByteString> chunks = encode(List.of(rows.subList(0, 50), rows.subList(50, 200)), 64);
+
+        assertTrue(chunks.size() > 1, "the rows are spread over several chunks");
+        chunks.forEach(chunk -> assertTrue(chunk.endsWith(ByteString.fromString("\r\n")), "each chunk ends a row"));
+        assertEquals(format(rows), concat(chunks));
+    }
+
+    private static void assertEncodesLikeCsvFormatting(Object... values) {
+        List<Row> rows = Arrays.stream(values).map(value -> row("a", value, "b")).collect(toList());
+        for (int i = 0; i < values.length; i++) {
+            List<Row> row = rows.subList(i, i + 1);
+            assertEquals(format(row), concat(encode(List.of(row), DqiCsvEncoder.DEFAULT_CHUNK_SIZE)), "encoding " + describe(values[i]));
+        }
+        // and all of them together, a chunk a row
+        assertEquals(format(rows), concat(encode(List.of(rows), 1)));
+    }
+
+    private static String describe(Object value) {
+        return value == null ? "null" : value.getClass().getSimpleName() + " " + value;
+    }
+
+    private static List<ByteString> encode(List<List<Row>> pages, int chunkSize) {
+        DqiCsvEncoder encoder = new DqiCsvEncoder(DataRowUtils.of(DqiCsvEncoderTest.class).columns(COLUMNS.toArray(new String[0])), chunkSize);
+        return run(Source.from(pages).via(encoder.flow()));
+    }
+
+    /**
+     * what exports wrote before DqiCsvEncoder, a null column being an empty field
+     */
+    private static ByteString format(List<Row> rows) {
+        return concat(run(Source.from(rows)
+                                .map(row -> COLUMNS.stream()
+                                                   .map(column -> row.getValue(column) == null ? "" : row.getValue(column).toString())
+                                                   .collect(toList()))
+                                .via(CsvFormatting.format())));
+    }
+
+    private static ByteString concat(List<ByteString> chunks) {
+        return chunks.stream().reduce(ByteString.emptyByteString(), ByteString::concat);
+    }
+
+    private static List<ByteString> run(Source<ByteString, ?> source) {
+        try {
+            return source.runWith(Sink.seq(), materializer).toCompletableFuture().get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Row row(Object... values) {
+        return Row.newInstance((io.vertx.sqlclient.Row) Proxy.newProxyInstance(
+                DqiCsvEncoderTest.class.getClassLoader(),
+                new Class<?>[]{io.vertx.sqlclient.Row.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnIndex":
+                            return COLUMNS.indexOf((String) args[0]);
+                        case "getColumnName":
+                            return COLUMNS.get((Integer) args[0]);
+                        case "size":
+                            return values.length;
+                        case "getValue":
+                            return args[0] instanceof Integer ? values[(Integer) args[0]] : values[COLUMNS.indexOf((String) args[0])];
+                        case "toString":
+                            return Arrays.toString(values);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }));
+    }
+}
@@ -0,0 +1,165 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.japi.Pair;
+import akka.stream.Materializer;
+import akka.stream.alpakka.file.ArchiveMetadata;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Zips with ParallelZip and reads the archive back with the JDK, both streaming (ZipInputStream, which goes by the local
+ * headers and data descriptors) and from the central directory (ZipFile).
+ */
+class ParallelZipTest {
+    static final int BLOCK_SIZE = 32 * 1024;
+
+    static ActorSystem system;
+    static Materializer materializer;
+    static ExecutorService executor;
+
+    @TempDir
+    Path tmp;
+
+    @BeforeAll
+    static void setUp() {
+        system = ActorSystem.create("ParallelZipTest");
+        materializer = Materializer.createMaterializer(system);
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        executor.shutdown();
+        system.terminate();
+    }
+
+    @Test
+    void roundTripsEntriesOfManyBlocks() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        // text deflates across block boundaries through the dictionary, random bytes don't deflate at all
+        entries.put("export.csv", text(20 * BLOCK_SIZE + 123));
+        entries.put("random.bin", random(7 * BLOCK_SIZE, 1));
+        entries.put("exactly-one-block.bin", random(BLOCK_SIZE, 2));
+        entries.put("empty.csv", new byte[0]);
+        entries.put("one-byte.csv", new byte[]{'x'});
+        entries.put("dir/n\u00E4me \u65E5\u672C.csv", text(5000));
+
+        assertRoundTrips(entries, 64 * 1024);
+    }
+
+    @Test
+    void roundTripsEntriesArrivingInSmallChunks() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("export.csv", text(10 * BLOCK_SIZE + 7));
+
+        assertRoundTrips(entries, 1000);
+    }
+
+    @Test
+    void roundTripsMoreEntriesThanTheEndRecordCanCount() throws IOException {
+        // past 65535 entries the count only fits the zip64 end record
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 70_000; i++) {
+            entries.put("entries/" + i + ".txt", ("entry " + i + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertRoundTrips(entries, 64 * 1024);
+    }
+
+    private void assertRoundTrips(Map<String, byte[]> entries, int chunkSize) throws IOException {
+        byte[] zip = zip(entries, chunkSize);
+
+        Map<String, byte[]> streamed = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip), StandardCharsets.UTF_8)) {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                streamed.put(entry.getName(), in.readAllBytes());
+            }
+        }
+        assertEntriesEqual(entries, streamed);
+
+        Path file = Files.write(tmp.resolve("archive.zip"), zip);
+        Map<String, byte[]> listed = new LinkedHashMap<>();
+        try (ZipFile zipFile = new ZipFile(file.toFile(), StandardCharsets.UTF_8)) {
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    listed.put(entry.getName(), in.readAllBytes());
+                }
+                assertEquals(entries.get(entry.getName()).length, entry.getSize(), entry.getName());
+            }
+        }
+        assertEntriesEqual(entries, listed);
+    }
+
+    private static void assertEntriesEqual(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+        expected.forEach((name, bytes) -> assertArrayEquals(bytes, actual.get(name), name));
+    }
+
+    private static byte[] zip(Map<String, byte[]> entries, int chunkSize) {
+        List<Pair<ArchiveMetadata, Source<ByteString, NotUsed>>> sources = new ArrayList<>();
+        entries.forEach((name, bytes) -> sources.add(Pair.create(ArchiveMetadata.create(name), chunks(bytes, chunkSize))));
+
+        try {
+            return new ParallelZip(executor, 4, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION)
+                    .zip(sources)
+                    .runWith(Sink.fold(ByteString.emptyByteString(), ByteString::concat), materializer)
+                    .toCompletableFuture()
+                    .get(2, TimeUnit.MINUTES)
+                    .toArray();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Source<ByteString, NotUsed> chunks(byte[] bytes, int chunkSize) {
+        List<ByteString> chunks = new ArrayList<>();
+        for (int from = 0; from < bytes.length; from += chunkSize) {
+            chunks.add(ByteString.fromArray(bytes, from, Math.min(chunkSize, bytes.length - from)));
+        }
+        return Source.from(chunks);
+    }
+
+    private static byte[] text(int size) {
+        StringBuilder text = new StringBuilder(size + 64);
+        for (int row = 0; text.length() < size; row++) {
+            text.append(row).append(",Title ").append(row % 97).append(",USRC1").append(row * 31 % 1000).append("\r\n");
+        }
+        return text.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
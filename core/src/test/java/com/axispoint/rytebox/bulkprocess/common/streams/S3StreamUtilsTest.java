@@ -0,0 +1,74 @@
+package com.axispoint.rytebox.bulkprocess.common.streams;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The arithmetic of a server-side merge, at sizes no test could upload: how an iteration file is split into part copies
+ * and which keys are a prefix's iteration files. S3StreamUtilsMergeTest runs whole merges against a LocalS3.
+ */
+class S3StreamUtilsTest {
+    static final long GB = 1024L * 1024 * 1024;
+
+    @Test
+    void copiesUpToTheMaximumPartSizeInOnePart() {
+        assertCopiedIn(1, 100, 100 + S3StreamUtils.MIN_PART_SIZE);
+        assertCopiedIn(1, 0, S3StreamUtils.MAX_PART_SIZE);
+        assertCopiedIn(1, 3, 3 + S3StreamUtils.MAX_PART_SIZE);
+    }
+
+    @Test
+    void splitsCopiesOverTheMaximumPartSizeEvenly() {
+        assertCopiedIn(2, 0, S3StreamUtils.MAX_PART_SIZE + 1);
+        assertCopiedIn(2, 7 * 1024 * 1024, 7 * 1024 * 1024 + 2 * S3StreamUtils.MAX_PART_SIZE);
+        assertCopiedIn(3, 4 * 1024 * 1024, 12 * GB + 1);
+        // the largest object S3 holds
+        assertCopiedIn(1024, 0, 5 * 1024 * GB);
+    }
+
+    @Test
+    void keepsEveryPieceAtLeastHalfTheMaximumPartSize() {
+        for (long length = 10; length <= 1000; length++) {
+            List<long[]> ranges = S3StreamUtils.copyRanges(5, 5 + length, 10);
+            assertContiguous(5, 5 + length, ranges, 10);
+            for (long[] range : ranges) {
+                assertTrue(ranges.size() == 1 || range[1] - range[0] >= 5, length + ": " + (range[1] - range[0]));
+            }
+        }
+    }
+
+    @Test
+    void readsTheIterationOfFilesDirectlyUnderThePrefix() {
+        assertEquals(Optional.of(0L), S3StreamUtils.iterationOf("job/", "job/iteration-0"));
+        assertEquals(Optional.of(12L), S3StreamUtils.iterationOf("job/", "job/iteration-12.csv.gz"));
+        assertEquals(Optional.empty(), S3StreamUtils.iterationOf("job/", "job/shard-0000/iteration-0"));
+        assertEquals(Optional.empty(), S3StreamUtils.iterationOf("job/", "job/metrics-0.json"));
+        assertEquals(Optional.empty(), S3StreamUtils.iterationOf("job/", "job/merged-iteration-0.csv"));
+        assertEquals(Optional.empty(), S3StreamUtils.iterationOf("job/", "job-2/iteration-0"));
+    }
+
+    private static void assertCopiedIn(int copies, long from, long to) {
+        List<long[]> ranges = S3StreamUtils.copyRanges(from, to, S3StreamUtils.MAX_PART_SIZE);
+        assertEquals(copies, ranges.size());
+        assertContiguous(from, to, ranges, S3StreamUtils.MAX_PART_SIZE);
+        for (long[] range : ranges) {
+            assertTrue(range[1] - range[0] >= S3StreamUtils.MIN_PART_SIZE);
+            assertTrue(Math.abs((range[1] - range[0]) - (to - from) / copies) <= 1, "split evenly");
+        }
+    }
+
+    private static void assertContiguous(long from, long to, List<long[]> ranges, long maxPartSize) {
+        long next = from;
+        for (long[] range : ranges) {
+            assertEquals(next, range[0]);
+            assertTrue(range[1] - range[0] <= maxPartSize, "no range is over " + maxPartSize);
+            next = range[1];
+        }
+        assertEquals(to, next);
+    }
+}